@@ -0,0 +1,88 @@
+package gmjonker.math;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Combining indications with {@link IndicationMath} and {@link IndicationMathFast}, for a range of numbers of inputs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CombineBenchmark
+{
+    @Param({"2", "16", "256", "4096"})
+    public int size;
+
+    private Indication[] indications;
+    private double[] weights;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(1);
+        indications = new Indication[size];
+        weights = new double[size];
+        for (int i = 0; i < size; i++) {
+            indications[i] = new Indication(random.nextDouble() * 2 - 1, random.nextDouble());
+            weights[i] = random.nextDouble() * 2;
+        }
+    }
+
+    @Benchmark
+    public Indication combine()
+    {
+        return IndicationMath.combine(indications, null);
+    }
+
+    @Benchmark
+    public Indication combineWeighted()
+    {
+        return IndicationMath.combine(indications, weights);
+    }
+
+    @Benchmark
+    public Indication combineNoDisagreementEffect()
+    {
+        return IndicationMath.combineNoDisagreementEffect(indications, null);
+    }
+
+    @Benchmark
+    public Indication combineTightAndNoDisagreementEffect()
+    {
+        return IndicationMath.combineTightAndNoDisagreementEffect(indications, null);
+    }
+
+    @Benchmark
+    public Indication combineStrict()
+    {
+        return IndicationMath.combineStrict(indications, null, false);
+    }
+
+    @Benchmark
+    public Indication fastCombine()
+    {
+        return IndicationMathFast.combine(indications, null);
+    }
+
+    @Benchmark
+    public Indication fastCombineWeighted()
+    {
+        return IndicationMathFast.combine(indications, weights);
+    }
+}
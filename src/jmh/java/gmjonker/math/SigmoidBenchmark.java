@@ -0,0 +1,86 @@
+package gmjonker.math;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SigmoidMath#sigmoid} and {@link SigmoidMath#logit} against their fast alternatives, over arrays of inputs in
+ * the ranges that combining uses. Results are summed, so that they can't be optimized away.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SigmoidBenchmark
+{
+    private static final double RANGE_LOW = -1.1;
+    private static final double RANGE_HIGH = 1.1;
+
+    @Param({"16", "1024", "65536"})
+    public int size;
+
+    private double[] logits;
+    private double[] confidences;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(1);
+        logits = new double[size];
+        confidences = new double[size];
+        for (int i = 0; i < size; i++) {
+            logits[i] = random.nextGaussian() * 3;
+            confidences[i] = random.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public double sigmoid()
+    {
+        double sum = 0;
+        for (double x : logits)
+            sum += SigmoidMath.sigmoid(x, RANGE_LOW, RANGE_HIGH);
+        return sum;
+    }
+
+    @Benchmark
+    public double fastSigmoidAlternative()
+    {
+        double sum = 0;
+        for (double x : logits)
+            sum += SigmoidMath.fastSigmoidAlternative(x, RANGE_LOW, RANGE_HIGH);
+        return sum;
+    }
+
+    @Benchmark
+    public double logit()
+    {
+        double sum = 0;
+        for (double x : confidences)
+            sum += SigmoidMath.logit(x, RANGE_LOW, RANGE_HIGH);
+        return sum;
+    }
+
+    @Benchmark
+    public double fastLogitAlternative()
+    {
+        double sum = 0;
+        for (double x : confidences)
+            sum += SigmoidMath.fastLogitAlternative(x, RANGE_LOW, RANGE_HIGH);
+        return sum;
+    }
+}
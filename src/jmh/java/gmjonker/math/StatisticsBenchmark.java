@@ -0,0 +1,113 @@
+package gmjonker.math;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Weighted mean and variance in {@link GeneralMath} and {@link BatchMath}, {@link Correlation#correlation(List, List)},
+ * the rank correlations of {@link RankCorrelation} and {@link CosineDistance#distance(double[], double[])}, for a range
+ * of input sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatisticsBenchmark
+{
+    @Param({"16", "1024", "65536"})
+    public int size;
+
+    private double[] values;
+    private double[] weights;
+    private double[] otherValues;
+    private List<Double> series1;
+    private List<Double> series2;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(1);
+        values = new double[size];
+        weights = new double[size];
+        otherValues = new double[size];
+        series1 = new ArrayList<>(size);
+        series2 = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values[i] = random.nextDouble() * 2 - 1;
+            weights[i] = random.nextDouble();
+            otherValues[i] = values[i] * .5 + random.nextGaussian() * .5;
+            series1.add(values[i]);
+            series2.add(otherValues[i]);
+        }
+    }
+
+    @Benchmark
+    public double weightedMean()
+    {
+        return GeneralMath.weightedMean(values, weights);
+    }
+
+    @Benchmark
+    public double batchWeightedMean()
+    {
+        return BatchMath.weightedMean(values, weights);
+    }
+
+    @Benchmark
+    public double variance()
+    {
+        return GeneralMath.variance(values);
+    }
+
+    @Benchmark
+    public double weightedVariance()
+    {
+        return GeneralMath.weightedVariance(values, weights);
+    }
+
+    @Benchmark
+    public double batchWeightedVariance()
+    {
+        return BatchMath.weightedVariance(values, weights);
+    }
+
+    @Benchmark
+    public double correlation()
+    {
+        return Correlation.correlation(series1, series2);
+    }
+
+    @Benchmark
+    public double spearman()
+    {
+        return RankCorrelation.spearman(values, otherValues);
+    }
+
+    @Benchmark
+    public double kendallTauB()
+    {
+        return RankCorrelation.kendallTauB(values, otherValues);
+    }
+
+    @Benchmark
+    public double cosineDistance()
+    {
+        return CosineDistance.distance(values, otherValues);
+    }
+}
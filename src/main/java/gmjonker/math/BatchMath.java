@@ -0,0 +1,237 @@
+package gmjonker.math;
+
+import gmjonker.util.LambdaLogger;
+import org.apache.commons.math3.util.FastMath;
+
+import static gmjonker.math.IndicationBatchMath.finiteWeight;
+import static gmjonker.math.NaType.NA;
+
+/**
+ * Batch {@code double[]} versions of hot functions of {@link SigmoidMath} and {@link GeneralMath}.
+ *
+ * <p>The loops are written for the JIT: no object creation, range parameters hoisted out of the loop, and reductions
+ * split over four independent accumulators, so that they don't wait on one long chain of dependent additions. They are
+ * scalar code: the JIT doesn't vectorize loops that call FastMath.exp or FastMath.log, nor floating-point reductions,
+ * whose order of additions it must keep. Because of the different order of additions, reductions may differ from their
+ * {@link GeneralMath} counterparts in the last bits.
+ *
+ * <p>Element-wise functions write into {@code out}, which may be the input array itself.
+ */
+@SuppressWarnings("WeakerAccess")
+public class BatchMath
+{
+    protected static final LambdaLogger log = new LambdaLogger(BatchMath.class);
+
+    /** See {@link SigmoidMath#sigmoid(double, double, double)}. **/
+    public static void sigmoid(double[] xs, double rangeLow, double rangeHigh, double[] out)
+    {
+        checkLengths(xs, out);
+        double span = rangeHigh - rangeLow;
+        for (int i = 0; i < xs.length; i++)
+            out[i] = rangeLow + span / (1 + FastMath.exp(-xs[i]));
+    }
+
+    /**
+     * See {@link SigmoidMath#logit(double, double, double)}. Inputs outside (rangeLow, rangeHigh) give NaN instead of an
+     * exception.
+     **/
+    public static void logit(double[] xs, double rangeLow, double rangeHigh, double[] out)
+    {
+        checkLengths(xs, out);
+        for (int i = 0; i < xs.length; i++)
+            out[i] = FastMath.log((xs[i] - rangeLow) / (rangeHigh - xs[i]));
+    }
+
+    /** See {@link SigmoidMath#fastSigmoidAlternative(double, double, double)}. **/
+    public static void fastSigmoidAlternative(double[] xs, double rangeLow, double rangeHigh, double[] out)
+    {
+        checkLengths(xs, out);
+        double span = rangeHigh - rangeLow;
+        for (int i = 0; i < xs.length; i++) {
+            double x = xs[i];
+            out[i] = rangeLow + span * (.5 * (1 + x / (1 + Math.abs(x))));
+        }
+        // x / (1 + |x|) is NaN for infinite x
+        for (int i = 0; i < xs.length; i++)
+            if (Double.isInfinite(xs[i]))
+                out[i] = xs[i] > 0 ? rangeHigh : rangeLow;
+    }
+
+    /** See {@link SigmoidMath#fastLogitAlternative(double, double, double)}. **/
+    public static void fastLogitAlternative(double[] xs, double rangeLow, double rangeHigh, double[] out)
+    {
+        checkLengths(xs, out);
+        double middle = (rangeLow + rangeHigh) / 2;
+        // Below the middle the denominator is the distance to rangeLow, above it the distance to rangeHigh. For reversed
+        // ranges, the sides swap, which amounts to negating the comparison.
+        double sign = rangeLow > rangeHigh ? -1 : 1;
+        for (int i = 0; i < xs.length; i++) {
+            double x = xs[i];
+            double numerator = x - middle;
+            out[i] = numerator / (sign * numerator <= 0 ? x - rangeLow : rangeHigh - x);
+        }
+    }
+
+    /** See {@link GeneralMath#weightedMean(double[], double[])}. **/
+    public static double weightedMean(double[] values, double[] weights)
+    {
+        checkLengths(values, weights);
+        int n = values.length;
+        double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        double weight0 = 0, weight1 = 0, weight2 = 0, weight3 = 0;
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            double w0 = finiteWeight(weights[i]);
+            double w1 = finiteWeight(weights[i + 1]);
+            double w2 = finiteWeight(weights[i + 2]);
+            double w3 = finiteWeight(weights[i + 3]);
+            sum0 += w0 * values[i];
+            sum1 += w1 * values[i + 1];
+            sum2 += w2 * values[i + 2];
+            sum3 += w3 * values[i + 3];
+            weight0 += w0;
+            weight1 += w1;
+            weight2 += w2;
+            weight3 += w3;
+        }
+        for (; i < n; i++) {
+            double w = finiteWeight(weights[i]);
+            sum0 += w * values[i];
+            weight0 += w;
+        }
+        return IndicationBatchMath.weightedMean((sum0 + sum1) + (sum2 + sum3), (weight0 + weight1) + (weight2 + weight3));
+    }
+
+    /**
+     * Population variance with weights, like {@link GeneralMath#weightedVariance(double[], double[])}: the weights must
+     * be finite and non-negative, and at least one must be positive, otherwise an IllegalArgumentException is thrown.
+     * Uses the same corrected two-pass formula as commons-math's {@code Variance}.
+     **/
+    public static double weightedVariance(double[] values, double[] weights)
+    {
+        checkLengths(values, weights);
+        int n = values.length;
+        if (n == 0)
+            return NA;
+        checkWeights(weights, n);
+        if (n == 1)
+            return 0;
+        double mean = weightedMean(values, weights);
+        double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        double deviation0 = 0, deviation1 = 0, deviation2 = 0, deviation3 = 0;
+        double weight0 = 0, weight1 = 0, weight2 = 0, weight3 = 0;
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            double d0 = values[i] - mean;
+            double d1 = values[i + 1] - mean;
+            double d2 = values[i + 2] - mean;
+            double d3 = values[i + 3] - mean;
+            sum0 += weights[i] * d0 * d0;
+            sum1 += weights[i + 1] * d1 * d1;
+            sum2 += weights[i + 2] * d2 * d2;
+            sum3 += weights[i + 3] * d3 * d3;
+            deviation0 += weights[i] * d0;
+            deviation1 += weights[i + 1] * d1;
+            deviation2 += weights[i + 2] * d2;
+            deviation3 += weights[i + 3] * d3;
+            weight0 += weights[i];
+            weight1 += weights[i + 1];
+            weight2 += weights[i + 2];
+            weight3 += weights[i + 3];
+        }
+        for (; i < n; i++) {
+            double d = values[i] - mean;
+            sum0 += weights[i] * d * d;
+            deviation0 += weights[i] * d;
+            weight0 += weights[i];
+        }
+        double deviation = (deviation0 + deviation1) + (deviation2 + deviation3);
+        double totalWeight = (weight0 + weight1) + (weight2 + weight3);
+        // The deviation term corrects for rounding errors in the mean
+        return (((sum0 + sum1) + (sum2 + sum3)) - deviation * deviation / totalWeight) / totalWeight;
+    }
+
+    /** See {@link GeneralMath#rootWeightedMeanSquareError(double[], double[])}. **/
+    public static double rootWeightedMeanSquareError(double[] values, double[] weights)
+    {
+        checkLengths(values, weights);
+        int n = values.length;
+        double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        double weight0 = 0, weight1 = 0, weight2 = 0, weight3 = 0;
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            double e0 = 1 - values[i];
+            double e1 = 1 - values[i + 1];
+            double e2 = 1 - values[i + 2];
+            double e3 = 1 - values[i + 3];
+            sum0 += weights[i] * e0 * e0;
+            sum1 += weights[i + 1] * e1 * e1;
+            sum2 += weights[i + 2] * e2 * e2;
+            sum3 += weights[i + 3] * e3 * e3;
+            weight0 += weights[i];
+            weight1 += weights[i + 1];
+            weight2 += weights[i + 2];
+            weight3 += weights[i + 3];
+        }
+        for (; i < n; i++) {
+            double e = 1 - values[i];
+            sum0 += weights[i] * e * e;
+            weight0 += weights[i];
+        }
+        return Math.sqrt(((sum0 + sum1) + (sum2 + sum3)) / ((weight0 + weight1) + (weight2 + weight3)));
+    }
+
+    /**
+     * See {@link GeneralMath#powerMean(double[], double)}. Exponents 1 and 2 (the arithmetic mean and root mean square)
+     * avoid calling pow per element.
+     **/
+    public static double powerMean(double[] values, double exponent)
+    {
+        int n = values.length;
+        double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int i = 0;
+        if (exponent == 1) {
+            for (; i + 3 < n; i += 4) {
+                sum0 += values[i];
+                sum1 += values[i + 1];
+                sum2 += values[i + 2];
+                sum3 += values[i + 3];
+            }
+            for (; i < n; i++)
+                sum0 += values[i];
+        } else if (exponent == 2) {
+            for (; i + 3 < n; i += 4) {
+                sum0 += values[i] * values[i];
+                sum1 += values[i + 1] * values[i + 1];
+                sum2 += values[i + 2] * values[i + 2];
+                sum3 += values[i + 3] * values[i + 3];
+            }
+            for (; i < n; i++)
+                sum0 += values[i] * values[i];
+        } else {
+            for (; i < n; i++)
+                sum0 += Math.pow(values[i], exponent);
+        }
+        double mean = ((sum0 + sum1) + (sum2 + sum3)) / n;
+        return exponent == 2 ? Math.sqrt(mean) : Math.pow(mean, 1.0 / exponent);
+    }
+
+    private static void checkWeights(double[] weights, int n)
+    {
+        boolean hasPositiveWeight = false;
+        for (int i = 0; i < n; i++) {
+            if ( ! (weights[i] >= 0) || weights[i] == Double.POSITIVE_INFINITY)
+                throw new IllegalArgumentException("Weight must be finite and >= 0, got " + weights[i] + " at " + i);
+            if (weights[i] > 0)
+                hasPositiveWeight = true;
+        }
+        if ( ! hasPositiveWeight)
+            throw new IllegalArgumentException("At least one weight must be positive");
+    }
+
+    private static void checkLengths(double[] a, double[] b)
+    {
+        if (b.length < a.length)
+            throw new IllegalArgumentException("Second array is shorter than first: " + b.length + " < " + a.length);
+    }
+}
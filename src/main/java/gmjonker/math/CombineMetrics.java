@@ -0,0 +1,314 @@
+package gmjonker.math;
+
+import gmjonker.util.LambdaLogger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in metrics of the combine entry points of {@link IndicationMath}, {@link IndicationMathFast}, {@link ScoreMath} and
+ * {@link ScoreMathFast}: number of calls, and distributions of input size and latency. Disabled by default, in which case
+ * a combine only pays for reading one volatile boolean.
+ *
+ * <p>All counters are {@link LongAdder}s, so recording from many threads is safe and doesn't contend. Distributions are
+ * kept as histograms with power-of-two buckets: bucket b counts numbers in [2^(b-1), 2^b), bucket 0 counts zeros.
+ * Quantiles derived from them are upper bounds of buckets, so they are accurate within a factor 2.
+ *
+ * <p>Read the metrics with {@link #get(Operation)}, or over JMX after {@link #registerMBean()}.
+ */
+@SuppressWarnings("WeakerAccess")
+public class CombineMetrics
+{
+    public static final String OBJECT_NAME = "gmjonker.math:type=CombineMetrics";
+    public static final int NUM_BUCKETS = 65;
+
+    public enum Operation
+    {
+        INDICATION_COMBINE,
+        INDICATION_COMBINE_NO_DISAGREEMENT_EFFECT,
+        INDICATION_COMBINE_TIGHT_AND_NO_DISAGREEMENT_EFFECT,
+        INDICATION_COMBINE_STRICT,
+        INDICATION_FAST_COMBINE,
+        SCORE_COMBINE_01,
+        SCORE_COMBINE_01_TIGHT_AND_NO_DISAGREEMENT_EFFECT,
+        SCORE_COMBINE_M11,
+        SCORE_COMBINE_M11_TIGHT_AND_NO_DISAGREEMENT_EFFECT,
+        SCORE_FAST_COMBINE_01,
+    }
+
+    private static volatile boolean enabled = false;
+    private static final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+
+    static {
+        for (Operation operation : Operation.values())
+            stats.put(operation, new Stats());
+    }
+
+    protected static final LambdaLogger log = new LambdaLogger(CombineMetrics.class);
+
+    private CombineMetrics() {}
+
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled)
+    {
+        CombineMetrics.enabled = enabled;
+    }
+
+    /** Called by the combine entry points, only when enabled. **/
+    static void record(Operation operation, int size, long nanos)
+    {
+        stats.get(operation).record(size, nanos);
+    }
+
+    public static Stats get(Operation operation)
+    {
+        return stats.get(operation);
+    }
+
+    public static void reset()
+    {
+        for (Stats operationStats : stats.values())
+            operationStats.reset();
+    }
+
+    /** Registers the metrics with the platform MBean server under {@link #OBJECT_NAME}, if not registered already. **/
+    public static void registerMBean()
+    {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if ( ! server.isRegistered(name))
+                server.registerMBean(new Bean(), name);
+        } catch (JMException e) {
+            log.error("Could not register {}", OBJECT_NAME, e);
+        }
+    }
+
+    public static void unregisterMBean()
+    {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+        } catch (JMException e) {
+            log.error("Could not unregister {}", OBJECT_NAME, e);
+        }
+    }
+
+    /** Bucket of x in the histograms. **/
+    static int bucket(long x)
+    {
+        return x <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(x);
+    }
+
+    /** Largest number in the given bucket. **/
+    static long bucketUpperBound(int bucket)
+    {
+        return bucket == 0 ? 0 : bucket == 64 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    /** Metrics of one operation. **/
+    public static class Stats
+    {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder totalSize = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder[] sizeHistogram = newHistogram();
+        private final LongAdder[] latencyHistogram = newHistogram();
+
+        private Stats() {}
+
+        private void record(int size, long nanos)
+        {
+            calls.increment();
+            totalSize.add(size);
+            totalNanos.add(nanos);
+            sizeHistogram[bucket(size)].increment();
+            latencyHistogram[bucket(nanos)].increment();
+        }
+
+        public long getCalls()
+        {
+            return calls.sum();
+        }
+
+        public long getTotalNanos()
+        {
+            return totalNanos.sum();
+        }
+
+        public double getMeanSize()
+        {
+            long calls = getCalls();
+            return calls == 0 ? NaType.NA : (double) totalSize.sum() / calls;
+        }
+
+        public double getMeanNanos()
+        {
+            long calls = getCalls();
+            return calls == 0 ? NaType.NA : (double) getTotalNanos() / calls;
+        }
+
+        /** Number of calls per bucket, see {@link CombineMetrics}. **/
+        public long[] getSizeHistogram()
+        {
+            return sums(sizeHistogram);
+        }
+
+        /** Number of calls per bucket, see {@link CombineMetrics}. **/
+        public long[] getLatencyHistogram()
+        {
+            return sums(latencyHistogram);
+        }
+
+        /** Upper bound of the given quantile of input sizes, or -1 if there were no calls. **/
+        public long getSizeQuantile(double quantile)
+        {
+            return quantile(getSizeHistogram(), quantile);
+        }
+
+        /** Upper bound of the given quantile of latencies in nanoseconds, or -1 if there were no calls. **/
+        public long getLatencyQuantileNanos(double quantile)
+        {
+            return quantile(getLatencyHistogram(), quantile);
+        }
+
+        public void reset()
+        {
+            calls.reset();
+            totalSize.reset();
+            totalNanos.reset();
+            for (int b = 0; b < NUM_BUCKETS; b++) {
+                sizeHistogram[b].reset();
+                latencyHistogram[b].reset();
+            }
+        }
+
+        private static LongAdder[] newHistogram()
+        {
+            LongAdder[] histogram = new LongAdder[NUM_BUCKETS];
+            for (int b = 0; b < NUM_BUCKETS; b++)
+                histogram[b] = new LongAdder();
+            return histogram;
+        }
+
+        private static long[] sums(LongAdder[] histogram)
+        {
+            long[] counts = new long[NUM_BUCKETS];
+            for (int b = 0; b < NUM_BUCKETS; b++)
+                counts[b] = histogram[b].sum();
+            return counts;
+        }
+
+        private static long quantile(long[] histogram, double quantile)
+        {
+            long total = 0;
+            for (long count : histogram)
+                total += count;
+            if (total == 0)
+                return -1;
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long cumulative = 0;
+            for (int b = 0; b < NUM_BUCKETS; b++) {
+                cumulative += histogram[b];
+                if (cumulative >= rank)
+                    return bucketUpperBound(b);
+            }
+            return bucketUpperBound(NUM_BUCKETS - 1);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("calls=%d, meanSize=%.1f, meanNanos=%.0f, p50Nanos<=%d, p99Nanos<=%d", getCalls(),
+                    getMeanSize(), getMeanNanos(), getLatencyQuantileNanos(.5), getLatencyQuantileNanos(.99));
+        }
+    }
+
+    /** JMX view on the metrics. Maps are keyed by operation name. **/
+    public interface CombineMetricsMXBean
+    {
+        boolean isEnabled();
+        void setEnabled(boolean enabled);
+        Map<String, Long> getCalls();
+        Map<String, Double> getMeanSize();
+        Map<String, Double> getMeanNanos();
+        Map<String, Long> getP50Nanos();
+        Map<String, Long> getP99Nanos();
+        void reset();
+    }
+
+    private static class Bean implements CombineMetricsMXBean
+    {
+        @Override
+        public boolean isEnabled()
+        {
+            return CombineMetrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled)
+        {
+            CombineMetrics.setEnabled(enabled);
+        }
+
+        @Override
+        public Map<String, Long> getCalls()
+        {
+            Map<String, Long> result = new LinkedHashMap<>();
+            stats.forEach((operation, operationStats) -> result.put(operation.name(), operationStats.getCalls()));
+            return result;
+        }
+
+        @Override
+        public Map<String, Double> getMeanSize()
+        {
+            Map<String, Double> result = new LinkedHashMap<>();
+            stats.forEach((operation, operationStats) -> result.put(operation.name(), operationStats.getMeanSize()));
+            return result;
+        }
+
+        @Override
+        public Map<String, Double> getMeanNanos()
+        {
+            Map<String, Double> result = new LinkedHashMap<>();
+            stats.forEach((operation, operationStats) -> result.put(operation.name(), operationStats.getMeanNanos()));
+            return result;
+        }
+
+        @Override
+        public Map<String, Long> getP50Nanos()
+        {
+            Map<String, Long> result = new LinkedHashMap<>();
+            stats.forEach((operation, operationStats) ->
+                    result.put(operation.name(), operationStats.getLatencyQuantileNanos(.5)));
+            return result;
+        }
+
+        @Override
+        public Map<String, Long> getP99Nanos()
+        {
+            Map<String, Long> result = new LinkedHashMap<>();
+            stats.forEach((operation, operationStats) ->
+                    result.put(operation.name(), operationStats.getLatencyQuantileNanos(.99)));
+            return result;
+        }
+
+        @Override
+        public void reset()
+        {
+            CombineMetrics.reset();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package gmjonker.math;
+
+import javax.annotation.Nullable;
+
+/**
+ * Result of combining indications with comments. Carries the {@link Provenance} of the combine. Plain indications don't
+ * carry this extra reference.
+ *
+ * <p>Results of the existing comment-combining functions have their comment rendered into the public {@code comment}
+ * field right away, as before. Results of {@code IndicationMath.combineWithProvenance} and
+ * {@code combineStrictWithProvenance} are lazy: their {@code comment} field stays "", and {@link #getComment()} renders
+ * the provenance when it is first called.
+ *
+ * <p>Equals plain indications with the same value and confidence.
+ */
+class CombinedIndication extends Indication
+{
+    private Provenance provenance;
+    private final boolean lazy;
+
+    private CombinedIndication(double value, double confidence, Provenance provenance, String comment, boolean lazy)
+    {
+        super(value, confidence, comment);
+        this.provenance = provenance;
+        this.lazy = lazy;
+    }
+
+    /** Combined indication with the provenance rendered into its comment, or a plain indication if it is null. **/
+    static Indication of(double value, double confidence, @Nullable Provenance provenance)
+    {
+        if (provenance == null)
+            return new Indication(value, confidence);
+        return new CombinedIndication(value, confidence, provenance, provenance.render(), false);
+    }
+
+    /** Combined indication that renders the given provenance only when its comment is asked for. **/
+    static Indication lazy(double value, double confidence, Provenance provenance)
+    {
+        return new CombinedIndication(value, confidence, provenance, "", true);
+    }
+
+    @Override
+    public String getComment()
+    {
+        return lazy && provenance != null ? provenance.render() : comment;
+    }
+
+    @Override
+    public void setComment(String comment)
+    {
+        this.comment = comment;
+        this.provenance = null;
+    }
+
+    @Override
+    public @Nullable Provenance getProvenance()
+    {
+        return provenance;
+    }
+
+    @Override
+    Indication derive(double value, double confidence)
+    {
+        if (provenance == null)
+            return super.derive(value, confidence);
+        return new CombinedIndication(value, confidence, provenance, comment, lazy);
+    }
+
+    @Override
+    Class<?> equalityClass()
+    {
+        return Indication.class;
+    }
+}
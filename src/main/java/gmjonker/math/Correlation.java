@@ -61,6 +61,22 @@ public class Correlation
         return total / series1.size();
     }
     
+    /**
+     * Sparse version of {@link #covariance0(List, List)}. Only visits the non-zero entries of both vectors.
+     */
+    public static double covariance0(SparseVector series1, SparseVector series2)
+    {
+        return series1.dot(series2) / series1.getDimension();
+    }
+
+    /**
+     * Sparse-dense version of {@link #covariance0(List, List)}. Only visits the non-zero entries of the sparse vector.
+     */
+    public static double covariance0(SparseVector series1, double[] series2)
+    {
+        return series1.dot(series2) / series1.getDimension();
+    }
+
     /**
      * Covariance that 
      *  * uses 0 as reference point instead of mean.
@@ -126,4 +142,34 @@ public class Correlation
         
         return weightedCovariance * factor;
     }
+
+    /**
+     * Sparse version of {@link #profileCorrelation(List, List)}. Only visits the non-zero entries of both vectors.
+     */
+    public static double profileCorrelation(SparseVector series1, SparseVector series2)
+    {
+        double totalWeight = (series1.absoluteSum() + series2.absoluteSum()) / 2;
+        return profileCorrelation(series1.infoWeightedDot(series2), totalWeight, series1.getDimension());
+    }
+
+    /**
+     * Sparse-dense version of {@link #profileCorrelation(List, List)}. Only visits the non-zero entries of the sparse
+     * vector, plus the dense vector once for its sum of absolute values.
+     */
+    public static double profileCorrelation(SparseVector series1, double[] series2)
+    {
+        double absoluteSum2 = 0;
+        for (double value : series2)
+            absoluteSum2 += abs(value);
+        double totalWeight = (series1.absoluteSum() + absoluteSum2) / 2;
+        return profileCorrelation(series1.infoWeightedDot(series2), totalWeight, series1.getDimension());
+    }
+
+    private static double profileCorrelation(double totalValue, double totalWeight, int size)
+    {
+        if (totalWeight == 0)
+            return 0;
+        double weightedCovariance = totalValue / totalWeight;
+        return weightedCovariance * pow(totalWeight / size, .5);
+    }
 }
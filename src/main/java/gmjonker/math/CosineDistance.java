@@ -27,7 +27,33 @@ public class CosineDistance
             lengthSquaredp2 += p2[i] * p2[i];
             dotProduct += p1[i] * p2[i];
         }
-        double denominator = Math.sqrt(lengthSquaredp1) * Math.sqrt(lengthSquaredp2);
+        return distance(dotProduct, Math.sqrt(lengthSquaredp1), Math.sqrt(lengthSquaredp2));
+    }
+
+    /**
+     * Only visits the non-zero entries of both vectors.
+     * @return Result in (0,2)
+     */
+    public static double distance(SparseVector p1, SparseVector p2)
+    {
+        return distance(p1.dot(p2), p1.norm(), p2.norm());
+    }
+
+    /**
+     * Only visits the non-zero entries of the sparse vector, plus the dense vector once for its length.
+     * @return Result in (0,2)
+     */
+    public static double distance(SparseVector p1, double[] p2)
+    {
+        double lengthSquaredp2 = 0.0;
+        for (double value : p2)
+            lengthSquaredp2 += value * value;
+        return distance(p1.dot(p2), p1.norm(), Math.sqrt(lengthSquaredp2));
+    }
+
+    private static double distance(double dotProduct, double length1, double length2)
+    {
+        double denominator = length1 * length2;
 
         // correct for floating-point rounding errors
         if (denominator < dotProduct) {
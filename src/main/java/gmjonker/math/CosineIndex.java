@@ -0,0 +1,548 @@
+package gmjonker.math;
+
+import gmjonker.util.LambdaLogger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import static gmjonker.math.NaType.isValue;
+
+/**
+ * Index of vectors that answers top-K nearest neighbour queries by {@link CosineDistance}.
+ *
+ * <p>Vectors are stored one after the other in one array, with their norms computed once when they are added. Distances
+ * are computed exactly like {@code CosineDistance.distance}, and vectors whose distance is NA (zero vectors) are never
+ * returned.
+ *
+ * <p>Exact search is brute force, split over a {@link ForkJoinPool} in blocks of vectors. Batch search processes a
+ * group of queries per block of vectors, so that the block is read from cache for all of them, and splits over both
+ * groups of queries and ranges of vectors, so that small batches are parallel as well. After
+ * {@link #buildLsh(int, int, long)}, {@link #searchApproximate(double[], int, int)} only looks at vectors that fall in
+ * the same random-hyperplane bucket as the query in at least one of the given number of hash tables. More tables means
+ * higher recall and higher latency.
+ *
+ * <p>Not thread-safe for adding vectors while searching.
+ */
+@SuppressWarnings("WeakerAccess")
+public class CosineIndex
+{
+    /** Number of vectors a single task scans sequentially. **/
+    public static final int CHUNK_SIZE = 1 << 12;
+    /** Number of queries in a batch that scan the same block of vectors. **/
+    public static final int QUERY_BLOCK_SIZE = 16;
+    /** Approximate number of doubles in a block of vectors in batch search. **/
+    private static final int BLOCK_DOUBLES = 1 << 15;
+
+    public static class Neighbour
+    {
+        public final int id;
+        public final double distance;
+
+        public Neighbour(int id, double distance)
+        {
+            this.id = id;
+            this.distance = distance;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Neighbour neighbour = (Neighbour) o;
+            return id == neighbour.id && Double.compare(neighbour.distance, distance) == 0;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(id, distance);
+        }
+
+        @Override
+        public String toString()
+        {
+            return id + ":" + distance;
+        }
+    }
+
+    private final int dimension;
+    private final ForkJoinPool pool;
+    private double[] data;
+    private double[] norms;
+    private int size = 0;
+
+    // Random-hyperplane LSH, null until built
+    private double[][] hyperplanes;
+    private int numBits;
+    private List<Map<Integer, Bucket>> tables;
+
+    protected static final LambdaLogger log = new LambdaLogger(CosineIndex.class);
+
+    public CosineIndex(int dimension)
+    {
+        this(dimension, ForkJoinPool.commonPool());
+    }
+
+    public CosineIndex(int dimension, ForkJoinPool pool)
+    {
+        this.dimension = dimension;
+        this.pool = pool;
+        data = new double[16 * dimension];
+        norms = new double[16];
+    }
+
+    /**
+     * @return id of the vector, which is the number of vectors added before
+     */
+    public int add(double[] vector)
+    {
+        if (vector.length != dimension)
+            throw new IllegalArgumentException("Vector has length " + vector.length + ", expected " + dimension);
+        if (size == norms.length) {
+            norms = Arrays.copyOf(norms, size * 2);
+            data = Arrays.copyOf(data, size * 2 * dimension);
+        }
+        System.arraycopy(vector, 0, data, size * dimension, dimension);
+        norms[size] = norm(vector, 0);
+        if (tables != null)
+            addToTables(size);
+        return size++;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int getDimension()
+    {
+        return dimension;
+    }
+
+    public double[] get(int id)
+    {
+        return Arrays.copyOfRange(data, id * dimension, (id + 1) * dimension);
+    }
+
+    /** Same result as {@code CosineDistance.distance(get(id), query)}. **/
+    public double distance(int id, double[] query)
+    {
+        return distance(id, query, norm(query, 0));
+    }
+
+    /**
+     * Exact top-K search.
+     * @return at most k neighbours, closest first, ties by id
+     */
+    public List<Neighbour> search(double[] query, int k)
+    {
+        checkQuery(query);
+        double queryNorm = norm(query, 0);
+        return pool.invoke(new SearchTask(query, queryNorm, k, 0, size)).toList();
+    }
+
+    /** Exact top-K search for a batch of queries, see {@link #search(double[], int)}. **/
+    public List<List<Neighbour>> search(double[][] queries, int k)
+    {
+        for (double[] query : queries)
+            checkQuery(query);
+        TopK[] results = new TopK[queries.length];
+        pool.invoke(new BatchTask(queries, k, results, 0, queries.length));
+        List<List<Neighbour>> lists = new ArrayList<>(queries.length);
+        for (TopK result : results)
+            lists.add(result.toList());
+        return lists;
+    }
+
+    /**
+     * Builds random-hyperplane hash tables for approximate search. Vectors added later are hashed as well.
+     * @param numTables maximum number of tables that can be probed per query
+     * @param numBits number of hyperplanes per table; more bits means smaller buckets
+     */
+    public void buildLsh(int numTables, int numBits, long seed)
+    {
+        if (numBits < 1 || numBits > 31)
+            throw new IllegalArgumentException("numBits must be in [1,31]");
+        Random random = new Random(seed);
+        this.numBits = numBits;
+        hyperplanes = new double[numTables * numBits][dimension];
+        for (double[] hyperplane : hyperplanes)
+            for (int d = 0; d < dimension; d++)
+                hyperplane[d] = random.nextGaussian();
+        tables = new ArrayList<>(numTables);
+        for (int t = 0; t < numTables; t++)
+            tables.add(new HashMap<>());
+        for (int id = 0; id < size; id++)
+            addToTables(id);
+        log.debug("Built {} LSH tables of {} bits for {} vectors", numTables, numBits, size);
+    }
+
+    /**
+     * Approximate top-K search. Requires {@link #buildLsh(int, int, long)}.
+     * @param numProbedTables number of hash tables to look in; the recall/latency knob
+     * @return at most k neighbours, closest first, ties by id. Distances are exact.
+     */
+    public List<Neighbour> searchApproximate(double[] query, int k, int numProbedTables)
+    {
+        if (tables == null)
+            throw new IllegalStateException("Call buildLsh first");
+        checkQuery(query);
+        double queryNorm = norm(query, 0);
+        TopK topK = new TopK(k);
+        BitSet seen = new BitSet(size);
+        int probedTables = Math.min(numProbedTables, tables.size());
+        for (int t = 0; t < probedTables; t++) {
+            Bucket bucket = tables.get(t).get(signature(query, 0, t));
+            if (bucket == null)
+                continue;
+            for (int i = 0; i < bucket.size; i++) {
+                int id = bucket.ids[i];
+                if (seen.get(id))
+                    continue;
+                seen.set(id);
+                topK.offer(distance(id, query, queryNorm), id);
+            }
+        }
+        return topK.toList();
+    }
+
+    /** Approximate top-K search for a batch of queries, in parallel. **/
+    public List<List<Neighbour>> searchApproximate(double[][] queries, int k, int numProbedTables)
+    {
+        List<List<Neighbour>> results = new ArrayList<>(Collections.nCopies(queries.length, null));
+        pool.invoke(new ApproximateBatchTask(queries, k, numProbedTables, results, 0, queries.length));
+        return results;
+    }
+
+    private void checkQuery(double[] query)
+    {
+        if (query.length != dimension)
+            throw new IllegalArgumentException("Query has length " + query.length + ", expected " + dimension);
+    }
+
+    private double norm(double[] vector, int offset)
+    {
+        double lengthSquared = 0;
+        for (int d = offset; d < offset + dimension; d++)
+            lengthSquared += vector[d] * vector[d];
+        return Math.sqrt(lengthSquared);
+    }
+
+    /** Same computation as CosineDistance.distance. **/
+    private double distance(int id, double[] query, double queryNorm)
+    {
+        int offset = id * dimension;
+        double dotProduct = 0;
+        for (int d = 0; d < dimension; d++)
+            dotProduct += data[offset + d] * query[d];
+        double denominator = norms[id] * queryNorm;
+
+        // correct for floating-point rounding errors
+        if (denominator < dotProduct)
+            denominator = dotProduct;
+
+        // correct for zero-vector corner case
+        if (denominator == 0 && dotProduct == 0)
+            return NaType.NA;
+
+        return 1.0 - dotProduct / denominator;
+    }
+
+    private int signature(double[] vector, int offset, int table)
+    {
+        int signature = 0;
+        for (int b = 0; b < numBits; b++) {
+            double[] hyperplane = hyperplanes[table * numBits + b];
+            double dotProduct = 0;
+            for (int d = 0; d < dimension; d++)
+                dotProduct += hyperplane[d] * vector[offset + d];
+            if (dotProduct >= 0)
+                signature |= 1 << b;
+        }
+        return signature;
+    }
+
+    private void addToTables(int id)
+    {
+        for (int t = 0; t < tables.size(); t++)
+            tables.get(t).computeIfAbsent(signature(data, id * dimension, t), s -> new Bucket()).add(id);
+    }
+
+    private static class Bucket
+    {
+        int[] ids = new int[4];
+        int size = 0;
+
+        void add(int id)
+        {
+            if (size == ids.length)
+                ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+    }
+
+    /** Bounded max-heap of the k best (distance, id) pairs seen so far. **/
+    private static class TopK
+    {
+        private final int k;
+        private final double[] distances;
+        private final int[] ids;
+        private int size = 0;
+
+        TopK(int k)
+        {
+            this.k = k;
+            distances = new double[k];
+            ids = new int[k];
+        }
+
+        void offer(double distance, int id)
+        {
+            if ( ! isValue(distance) || k == 0)
+                return;
+            if (size < k) {
+                distances[size] = distance;
+                ids[size] = id;
+                siftUp(size++);
+            } else if (isWorse(distances[0], ids[0], distance, id)) {
+                distances[0] = distance;
+                ids[0] = id;
+                siftDown(0);
+            }
+        }
+
+        void addAll(TopK other)
+        {
+            for (int i = 0; i < other.size; i++)
+                offer(other.distances[i], other.ids[i]);
+        }
+
+        List<Neighbour> toList()
+        {
+            List<Neighbour> neighbours = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+                neighbours.add(new Neighbour(ids[i], distances[i]));
+            neighbours.sort((a, b) -> isWorse(a.distance, a.id, b.distance, b.id) ? 1 : -1);
+            return neighbours;
+        }
+
+        private static boolean isWorse(double distance1, int id1, double distance2, int id2)
+        {
+            return distance1 > distance2 || (distance1 == distance2 && id1 > id2);
+        }
+
+        private void siftUp(int i)
+        {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if ( ! isWorse(distances[i], ids[i], distances[parent], ids[parent]))
+                    return;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i)
+        {
+            while (true) {
+                int worst = i;
+                for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++)
+                    if (isWorse(distances[child], ids[child], distances[worst], ids[worst]))
+                        worst = child;
+                if (worst == i)
+                    return;
+                swap(i, worst);
+                i = worst;
+            }
+        }
+
+        private void swap(int i, int j)
+        {
+            double distance = distances[i];
+            distances[i] = distances[j];
+            distances[j] = distance;
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+    }
+
+    /** Scans vectors [from, to) for one query, splitting in halves until chunks of at most CHUNK_SIZE remain. **/
+    private class SearchTask extends RecursiveTask<TopK>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] query;
+        private final double queryNorm;
+        private final int k;
+        private final int from;
+        private final int to;
+
+        SearchTask(double[] query, double queryNorm, int k, int from, int to)
+        {
+            this.query = query;
+            this.queryNorm = queryNorm;
+            this.k = k;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected TopK compute()
+        {
+            if (to - from <= CHUNK_SIZE) {
+                TopK topK = new TopK(k);
+                for (int id = from; id < to; id++)
+                    topK.offer(distance(id, query, queryNorm), id);
+                return topK;
+            }
+            int middle = (from + to) >>> 1;
+            SearchTask left = new SearchTask(query, queryNorm, k, from, middle);
+            left.fork();
+            TopK right = new SearchTask(query, queryNorm, k, middle, to).compute();
+            TopK result = left.join();
+            result.addAll(right);
+            return result;
+        }
+    }
+
+    /** Searches queries [from, to), splitting until blocks of at most QUERY_BLOCK_SIZE queries remain. **/
+    private class BatchTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] queries;
+        private final int k;
+        private final TopK[] results;
+        private final int from;
+        private final int to;
+
+        BatchTask(double[][] queries, int k, TopK[] results, int from, int to)
+        {
+            this.queries = queries;
+            this.k = k;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > QUERY_BLOCK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BatchTask(queries, k, results, from, middle),
+                        new BatchTask(queries, k, results, middle, to));
+                return;
+            }
+            double[] queryNorms = new double[to - from];
+            for (int q = from; q < to; q++)
+                queryNorms[q - from] = norm(queries[q], 0);
+            // A block of queries is also split over ranges of vectors, so that small batches run in parallel too
+            TopK[] topKs = new BlockTask(queries, queryNorms, k, from, to, 0, size).compute();
+            System.arraycopy(topKs, 0, results, from, to - from);
+        }
+    }
+
+    /**
+     * Scans vectors [vectorFrom, vectorTo) for queries [queryFrom, queryTo), splitting the vectors in halves until chunks
+     * of at most CHUNK_SIZE remain. Returns the top-K of every query, indexed from queryFrom.
+     */
+    private class BlockTask extends RecursiveTask<TopK[]>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] queries;
+        private final double[] queryNorms;
+        private final int k;
+        private final int queryFrom;
+        private final int queryTo;
+        private final int vectorFrom;
+        private final int vectorTo;
+
+        BlockTask(double[][] queries, double[] queryNorms, int k, int queryFrom, int queryTo, int vectorFrom, int vectorTo)
+        {
+            this.queries = queries;
+            this.queryNorms = queryNorms;
+            this.k = k;
+            this.queryFrom = queryFrom;
+            this.queryTo = queryTo;
+            this.vectorFrom = vectorFrom;
+            this.vectorTo = vectorTo;
+        }
+
+        @Override
+        protected TopK[] compute()
+        {
+            if (vectorTo - vectorFrom > CHUNK_SIZE) {
+                int middle = (vectorFrom + vectorTo) >>> 1;
+                BlockTask left = new BlockTask(queries, queryNorms, k, queryFrom, queryTo, vectorFrom, middle);
+                left.fork();
+                TopK[] right = new BlockTask(queries, queryNorms, k, queryFrom, queryTo, middle, vectorTo).compute();
+                TopK[] result = left.join();
+                for (int q = 0; q < result.length; q++)
+                    result[q].addAll(right[q]);
+                return result;
+            }
+            TopK[] topKs = new TopK[queryTo - queryFrom];
+            for (int q = 0; q < topKs.length; q++)
+                topKs[q] = new TopK(k);
+            int blockSize = Math.max(1, BLOCK_DOUBLES / Math.max(1, dimension));
+            for (int blockStart = vectorFrom; blockStart < vectorTo; blockStart += blockSize) {
+                int blockEnd = Math.min(blockStart + blockSize, vectorTo);
+                for (int q = queryFrom; q < queryTo; q++)
+                    for (int id = blockStart; id < blockEnd; id++)
+                        topKs[q - queryFrom].offer(distance(id, queries[q], queryNorms[q - queryFrom]), id);
+            }
+            return topKs;
+        }
+    }
+
+    /** Searches queries [from, to) approximately, splitting until blocks of at most QUERY_BLOCK_SIZE queries remain. **/
+    private class ApproximateBatchTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] queries;
+        private final int k;
+        private final int numProbedTables;
+        private final List<List<Neighbour>> results;
+        private final int from;
+        private final int to;
+
+        ApproximateBatchTask(double[][] queries, int k, int numProbedTables, List<List<Neighbour>> results, int from,
+                int to)
+        {
+            this.queries = queries;
+            this.k = k;
+            this.numProbedTables = numProbedTables;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > QUERY_BLOCK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ApproximateBatchTask(queries, k, numProbedTables, results, from, middle),
+                        new ApproximateBatchTask(queries, k, numProbedTables, results, middle, to));
+                return;
+            }
+            for (int q = from; q < to; q++)
+                results.set(q, searchApproximate(queries[q], k, numProbedTables));
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package gmjonker.math;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.NaType.isValue;
+
+/**
+ * Exponentially time-decayed mean and variance of a stream of values, updated in O(1) per value. The weight of a value
+ * halves every {@code halfLife} units of time, so the mean is an exponential moving average over time instead of over
+ * the number of values, and timestamps can be irregular. Unlike {@link GeneralMath#exponentialMovingAverageV4(double[],
+ * double, double)} it needs no seed: the mean is normalized by the total decayed weight, so the first value is the mean.
+ *
+ * <p>Values may come out of order: a value with a timestamp before the latest one is added with its weight decayed by
+ * its age. NA values are ignored. Mean and variance don't change by the mere passing of time; {@link #getWeight(double)}
+ * shows how much recent data they are based on.
+ *
+ * <p>Updates are lock-free: the state is an immutable array that is replaced with compare-and-set. For many entities,
+ * use a {@link DecayedStatisticsMap}, which stores the same state in primitive arrays.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DecayedStatistics
+{
+    // Layout of a state: time of the latest value, decayed weight as of that time, mean, decayed sum of squared deviations
+    static final int TIME = 0;
+    static final int WEIGHT = 1;
+    static final int MEAN = 2;
+    static final int M2 = 3;
+    static final int STATE_SIZE = 4;
+
+    public final double halfLife;
+    private final double decayRate;
+    private final AtomicReference<double[]> state = new AtomicReference<>(emptyState());
+
+    /** @param halfLife in the unit of the timestamps, for instance milliseconds **/
+    public DecayedStatistics(double halfLife)
+    {
+        this.halfLife = halfLife;
+        this.decayRate = decayRate(halfLife);
+    }
+
+    public void add(double time, double value)
+    {
+        add(time, value, 1);
+    }
+
+    /** @param weight weight of the value at its own time, > 0 **/
+    public void add(double time, double value, double weight)
+    {
+        checkWeight(weight);
+        if ( ! isValue(value) || ! isValue(time))
+            return;
+        while (true) {
+            double[] current = state.get();
+            double[] next = current.clone();
+            add(next, 0, decayRate, time, value, weight);
+            if (state.compareAndSet(current, next))
+                return;
+        }
+    }
+
+    /** Decayed mean, or NA if no values were added. **/
+    public double getMean()
+    {
+        double[] s = state.get();
+        return s[WEIGHT] == 0 ? NA : s[MEAN];
+    }
+
+    /** Decayed population variance, or NA if no values were added. **/
+    public double getVariance()
+    {
+        return variance(state.get(), 0);
+    }
+
+    public double getStandardDeviation()
+    {
+        return Math.sqrt(getVariance());
+    }
+
+    /** Total weight of the values, decayed up to the given time. With weights 1, the decayed number of values. **/
+    public double getWeight(double now)
+    {
+        return weight(state.get(), 0, decayRate, now);
+    }
+
+    /** Time of the latest value, or -infinity if no values were added. **/
+    public double getLatestTime()
+    {
+        return state.get()[TIME];
+    }
+
+    public void reset()
+    {
+        state.set(emptyState());
+    }
+
+    static double decayRate(double halfLife)
+    {
+        if ( ! (halfLife > 0))
+            throw new IllegalArgumentException("Half-life must be positive: " + halfLife);
+        return Math.log(2) / halfLife;
+    }
+
+    static void checkWeight(double weight)
+    {
+        if ( ! (weight > 0) || Double.isInfinite(weight))
+            throw new IllegalArgumentException("Weight must be positive and finite: " + weight);
+    }
+
+    private static double[] emptyState()
+    {
+        double[] s = new double[STATE_SIZE];
+        s[TIME] = Double.NEGATIVE_INFINITY;
+        return s;
+    }
+
+    /** Initializes the state at {@code offset} to no values. **/
+    static void clear(double[] s, int offset)
+    {
+        s[offset + TIME] = Double.NEGATIVE_INFINITY;
+        s[offset + WEIGHT] = 0;
+        s[offset + MEAN] = 0;
+        s[offset + M2] = 0;
+    }
+
+    /** Adds a value to the state at {@code offset}, with West's weighted update on decayed weights. **/
+    static void add(double[] s, int offset, double decayRate, double time, double value, double weight)
+    {
+        double latest = s[offset + TIME];
+        if (time >= latest) {
+            // Decay what we have to the new time. For an empty state, the decay is 0.
+            double decay = Math.exp(-decayRate * (time - latest));
+            s[offset + WEIGHT] *= decay;
+            s[offset + M2] *= decay;
+            s[offset + TIME] = time;
+        } else {
+            weight *= Math.exp(-decayRate * (latest - time));
+            if (weight == 0)
+                return;
+        }
+        double totalWeight = s[offset + WEIGHT] + weight;
+        double delta = value - s[offset + MEAN];
+        double mean = s[offset + MEAN] + weight / totalWeight * delta;
+        s[offset + M2] += weight * delta * (value - mean);
+        s[offset + MEAN] = mean;
+        s[offset + WEIGHT] = totalWeight;
+    }
+
+    static double variance(double[] s, int offset)
+    {
+        double weight = s[offset + WEIGHT];
+        return weight == 0 ? NA : Math.max(0, s[offset + M2] / weight);
+    }
+
+    static double weight(double[] s, int offset, double decayRate, double now)
+    {
+        double weight = s[offset + WEIGHT];
+        if (weight == 0)
+            return 0;
+        double latest = s[offset + TIME];
+        return now >= latest ? weight * Math.exp(-decayRate * (now - latest)) : weight;
+    }
+
+    @Override
+    public String toString()
+    {
+        double[] s = state.get();
+        return String.format("DecayedStatistics{halfLife=%s, mean=%s, variance=%s, weight=%s}", halfLife, getMean(),
+                variance(s, 0), s[WEIGHT]);
+    }
+}
@@ -0,0 +1,306 @@
+package gmjonker.math;
+
+import java.util.Arrays;
+
+import static gmjonker.math.DecayedStatistics.MEAN;
+import static gmjonker.math.DecayedStatistics.STATE_SIZE;
+import static gmjonker.math.DecayedStatistics.TIME;
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.NaType.NA_L;
+import static gmjonker.math.NaType.isValue;
+
+/**
+ * Map from entity id to {@link DecayedStatistics}, for millions of entities. Ids are primitive longs, and the state of
+ * every entity is four doubles in a shared array, so an entity takes about 40 bytes, or 60 including the free slots of
+ * the hash tables, instead of a few hundred for a {@code Map<Long, DecayedStatistics>}. All entities share one
+ * half-life.
+ *
+ * <p>Ids are spread over segments, each an open-addressing hash table with linear probing and its own lock, so that
+ * updates of different segments don't contend. {@link NaType#NA_L} can't be used as id.
+ *
+ * <p>Entities are never removed implicitly; use {@link #removeOlderThan(double)} to drop entities without recent
+ * values.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DecayedStatisticsMap
+{
+    public static final int DEFAULT_NUM_SEGMENTS = 64;
+    private static final double MAX_LOAD = .75;
+
+    public final double halfLife;
+    private final double decayRate;
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    public DecayedStatisticsMap(double halfLife)
+    {
+        this(halfLife, 0, DEFAULT_NUM_SEGMENTS);
+    }
+
+    /**
+     * @param expectedSize number of entities to allocate room for upfront
+     * @param numSegments rounded up to a power of two
+     */
+    public DecayedStatisticsMap(double halfLife, int expectedSize, int numSegments)
+    {
+        if (numSegments < 1)
+            throw new IllegalArgumentException("numSegments must be > 0");
+        this.halfLife = halfLife;
+        this.decayRate = DecayedStatistics.decayRate(halfLife);
+        int n = Integer.highestOneBit(numSegments - 1) << 1;
+        if (numSegments == 1)
+            n = 1;
+        segments = new Segment[n];
+        segmentMask = n - 1;
+        int segmentCapacity = tableSize((int) Math.ceil((double) expectedSize / n / MAX_LOAD));
+        for (int i = 0; i < n; i++)
+            segments[i] = new Segment(segmentCapacity);
+    }
+
+    public void add(long id, double time, double value)
+    {
+        add(id, time, value, 1);
+    }
+
+    /** @param weight weight of the value at its own time, > 0 **/
+    public void add(long id, double time, double value, double weight)
+    {
+        checkId(id);
+        DecayedStatistics.checkWeight(weight);
+        if ( ! isValue(value) || ! isValue(time))
+            return;
+        long hash = mix(id);
+        segment(hash).add(id, hash, time, value, weight, decayRate);
+    }
+
+    public boolean contains(long id)
+    {
+        long hash = mix(id);
+        return segment(hash).contains(id, hash);
+    }
+
+    /** Decayed mean of the entity, or NA if it has no values. **/
+    public double getMean(long id)
+    {
+        long hash = mix(id);
+        return segment(hash).get(id, hash, MEAN);
+    }
+
+    /** Decayed population variance of the entity, or NA if it has no values. **/
+    public double getVariance(long id)
+    {
+        long hash = mix(id);
+        double[] state = segment(hash).getState(id, hash);
+        return state == null ? NA : DecayedStatistics.variance(state, 0);
+    }
+
+    /** Total weight of the values of the entity, decayed up to the given time, 0 if it has no values. **/
+    public double getWeight(long id, double now)
+    {
+        long hash = mix(id);
+        double[] state = segment(hash).getState(id, hash);
+        return state == null ? 0 : DecayedStatistics.weight(state, 0, decayRate, now);
+    }
+
+    /** Time of the latest value of the entity, or NA if it has no values. **/
+    public double getLatestTime(long id)
+    {
+        long hash = mix(id);
+        return segment(hash).get(id, hash, TIME);
+    }
+
+    /** Number of entities. **/
+    public int size()
+    {
+        int size = 0;
+        for (Segment segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    /** Ids of all entities, in no particular order. **/
+    public long[] getIds()
+    {
+        long[][] ids = new long[segments.length][];
+        int total = 0;
+        for (int i = 0; i < segments.length; i++) {
+            ids[i] = segments[i].getIds();
+            total += ids[i].length;
+        }
+        long[] result = new long[total];
+        int position = 0;
+        for (long[] segmentIds : ids) {
+            System.arraycopy(segmentIds, 0, result, position, segmentIds.length);
+            position += segmentIds.length;
+        }
+        return result;
+    }
+
+    /**
+     * Removes all entities whose latest value is older than the given time.
+     * @return number of entities removed
+     */
+    public int removeOlderThan(double time)
+    {
+        int removed = 0;
+        for (Segment segment : segments)
+            removed += segment.removeOlderThan(time);
+        return removed;
+    }
+
+    public void clear()
+    {
+        for (Segment segment : segments)
+            segment.clear();
+    }
+
+    private Segment segment(long hash)
+    {
+        return segments[(int) (hash >>> 32) & segmentMask];
+    }
+
+    private static void checkId(long id)
+    {
+        if (id == NA_L)
+            throw new IllegalArgumentException("NA_L can't be used as id");
+    }
+
+    /** Finalizer of MurmurHash3, so that consecutive ids spread over segments and slots. **/
+    private static long mix(long id)
+    {
+        long h = id;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** Smallest power of two that is at least 16 and at least n. **/
+    private static int tableSize(int n)
+    {
+        return Math.max(16, Integer.highestOneBit(Math.max(n, 1) - 1) << 1);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DecayedStatisticsMap{halfLife=" + halfLife + ", size=" + size() + "}";
+    }
+
+    private static class Segment
+    {
+        private long[] ids;
+        private double[] states;
+        private int size = 0;
+
+        Segment(int capacity)
+        {
+            allocate(capacity);
+        }
+
+        synchronized void add(long id, long hash, double time, double value, double weight, double decayRate)
+        {
+            int slot = find(id, hash);
+            if (ids[slot] == NA_L) {
+                if (size + 1 > ids.length * MAX_LOAD) {
+                    rehash(ids.length * 2);
+                    slot = find(id, hash);
+                }
+                ids[slot] = id;
+                DecayedStatistics.clear(states, slot * STATE_SIZE);
+                size++;
+            }
+            DecayedStatistics.add(states, slot * STATE_SIZE, decayRate, time, value, weight);
+        }
+
+        synchronized boolean contains(long id, long hash)
+        {
+            return ids[find(id, hash)] != NA_L;
+        }
+
+        /** Single field of the state of id, or NA if absent. **/
+        synchronized double get(long id, long hash, int field)
+        {
+            int slot = find(id, hash);
+            return ids[slot] == NA_L ? NA : states[slot * STATE_SIZE + field];
+        }
+
+        synchronized double[] getState(long id, long hash)
+        {
+            int slot = find(id, hash);
+            if (ids[slot] == NA_L)
+                return null;
+            return Arrays.copyOfRange(states, slot * STATE_SIZE, (slot + 1) * STATE_SIZE);
+        }
+
+        synchronized int size()
+        {
+            return size;
+        }
+
+        synchronized long[] getIds()
+        {
+            long[] result = new long[size];
+            int position = 0;
+            for (long id : ids)
+                if (id != NA_L)
+                    result[position++] = id;
+            return result;
+        }
+
+        synchronized int removeOlderThan(double time)
+        {
+            long[] oldIds = ids;
+            double[] oldStates = states;
+            int oldSize = size;
+            allocate(ids.length);
+            for (int slot = 0; slot < oldIds.length; slot++)
+                if (oldIds[slot] != NA_L && oldStates[slot * STATE_SIZE + TIME] >= time)
+                    insert(oldIds[slot], oldStates, slot);
+            return oldSize - size;
+        }
+
+        synchronized void clear()
+        {
+            allocate(16);
+        }
+
+        /** Slot of id, or the free slot where it would go. **/
+        private int find(long id, long hash)
+        {
+            int mask = ids.length - 1;
+            int slot = (int) hash & mask;
+            while (ids[slot] != NA_L && ids[slot] != id)
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        private void rehash(int capacity)
+        {
+            long[] oldIds = ids;
+            double[] oldStates = states;
+            allocate(capacity);
+            for (int slot = 0; slot < oldIds.length; slot++)
+                if (oldIds[slot] != NA_L)
+                    insert(oldIds[slot], oldStates, slot);
+        }
+
+        private void insert(long id, double[] fromStates, int fromSlot)
+        {
+            int slot = find(id, mix(id));
+            ids[slot] = id;
+            System.arraycopy(fromStates, fromSlot * STATE_SIZE, states, slot * STATE_SIZE, STATE_SIZE);
+            size++;
+        }
+
+        private void allocate(int capacity)
+        {
+            ids = new long[capacity];
+            Arrays.fill(ids, NA_L);
+            states = new double[capacity * STATE_SIZE];
+            size = 0;
+        }
+    }
+}
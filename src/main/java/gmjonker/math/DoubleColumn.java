@@ -0,0 +1,259 @@
+package gmjonker.math;
+
+import gmjonker.util.LambdaLogger;
+
+import static gmjonker.math.IndicationBatchMath.finiteWeight;
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.NaType.isValue;
+
+/**
+ * Fixed-size column of doubles with a separate {@link ValidityMask}, like an Apache Arrow float64 vector. An element is
+ * NA when its validity bit is unset, instead of when it is NaN; {@link #get(int)} returns NA for such elements.
+ *
+ * <p>The aggregate kernels walk the validity mask a word of 64 elements at a time. Words without valid elements are
+ * skipped at once, words in which all elements are valid are summed without any checks, and in other words only the set
+ * bits are visited. With few NAs, or with long runs of NAs, this is much cheaper than checking every element with
+ * {@link NaType#isValue(double)}, as the {@code IgnoreNAs} functions of {@link GeneralMath} do. The kernels give the
+ * same results as those functions, up to rounding.
+ *
+ * <p>NA slots hold 0, which is what dense loops rely on. Not thread-safe.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DoubleColumn
+{
+    private final double[] values;
+    private final ValidityMask validity;
+
+    protected static final LambdaLogger log = new LambdaLogger(DoubleColumn.class);
+
+    /** Column of NAs. **/
+    public DoubleColumn(int size)
+    {
+        values = new double[size];
+        validity = new ValidityMask(size);
+    }
+
+    /** Column with the given values, where NaN (NA) becomes invalid. **/
+    public static DoubleColumn of(double[] values)
+    {
+        DoubleColumn column = new DoubleColumn(values.length);
+        for (int i = 0; i < values.length; i++)
+            if (isValue(values[i]))
+                column.set(i, values[i]);
+        return column;
+    }
+
+    public int size()
+    {
+        return values.length;
+    }
+
+    /** The value at i, or NA. **/
+    public double get(int i)
+    {
+        return validity.get(i) ? values[i] : NA;
+    }
+
+    public boolean isValid(int i)
+    {
+        return validity.get(i);
+    }
+
+    /** Sets the value at i. NaN (NA) makes the element invalid. **/
+    public void set(int i, double value)
+    {
+        if (isValue(value)) {
+            values[i] = value;
+            validity.set(i);
+        } else {
+            setNa(i);
+        }
+    }
+
+    public void setNa(int i)
+    {
+        values[i] = 0;
+        validity.clear(i);
+    }
+
+    public int getValueCount()
+    {
+        return validity.cardinality();
+    }
+
+    public int getNaCount()
+    {
+        return size() - getValueCount();
+    }
+
+    /** Copy of the validity mask. **/
+    public ValidityMask getValidity()
+    {
+        return validity.copy();
+    }
+
+    /** Values with NA for invalid elements. **/
+    public double[] toArray()
+    {
+        double[] result = new double[values.length];
+        for (int i = 0; i < values.length; i++)
+            result[i] = get(i);
+        return result;
+    }
+
+    /** Sum of the valid values, 0 if there are none. **/
+    public double sum()
+    {
+        long[] words = validity.words;
+        double sum = 0;
+        for (int w = 0; w < words.length; w++) {
+            long word = words[w];
+            if (word == 0)
+                continue;
+            int base = w << 6;
+            if (word == -1L) {
+                for (int i = base; i < base + 64; i++)
+                    sum += values[i];
+            } else {
+                // NA slots hold 0, so all elements up to the last valid one can be summed densely
+                int end = base + 64 - Long.numberOfLeadingZeros(word);
+                for (int i = base + Long.numberOfTrailingZeros(word); i < end; i++)
+                    sum += values[i];
+            }
+        }
+        return sum;
+    }
+
+    /** Mean of the valid values, NA if there are none. **/
+    public double mean()
+    {
+        int count = getValueCount();
+        return count == 0 ? NA : sum() / count;
+    }
+
+    /**
+     * Like {@link GeneralMath#weightedMeanIgnoreNAs(double[], double[])}: elements where either the value or the weight is
+     * NA are ignored, and infinite weights are replaced by a very large (or small) number.
+     */
+    public double weightedMean(DoubleColumn weights)
+    {
+        checkSize(weights);
+        long[] valueWords = validity.words;
+        long[] weightWords = weights.validity.words;
+        double[] ws = weights.values;
+        double sum = 0;
+        double totalWeight = 0;
+        for (int w = 0; w < valueWords.length; w++) {
+            long word = valueWords[w] & weightWords[w];
+            if (word == 0)
+                continue;
+            int base = w << 6;
+            if (word == -1L) {
+                for (int i = base; i < base + 64; i++) {
+                    double weight = finiteWeight(ws[i]);
+                    sum += weight * values[i];
+                    totalWeight += weight;
+                }
+            } else {
+                for (; word != 0; word &= word - 1) {
+                    int i = base + Long.numberOfTrailingZeros(word);
+                    double weight = finiteWeight(ws[i]);
+                    sum += weight * values[i];
+                    totalWeight += weight;
+                }
+            }
+        }
+        return IndicationBatchMath.weightedMean(sum, totalWeight);
+    }
+
+    /**
+     * Like {@link GeneralMath#rootWeightedMeanSquareErrorIgnoreNAs(double[], double[])}: elements where either the value
+     * or the weight is NA are ignored.
+     */
+    public double rootWeightedMeanSquareError(DoubleColumn weights)
+    {
+        checkSize(weights);
+        long[] valueWords = validity.words;
+        long[] weightWords = weights.validity.words;
+        double[] ws = weights.values;
+        double sum = 0;
+        double totalWeight = 0;
+        for (int w = 0; w < valueWords.length; w++) {
+            long word = valueWords[w] & weightWords[w];
+            if (word == 0)
+                continue;
+            int base = w << 6;
+            if (word == -1L) {
+                for (int i = base; i < base + 64; i++) {
+                    double error = 1 - values[i];
+                    sum += ws[i] * error * error;
+                    totalWeight += ws[i];
+                }
+            } else {
+                for (; word != 0; word &= word - 1) {
+                    int i = base + Long.numberOfTrailingZeros(word);
+                    double error = 1 - values[i];
+                    sum += ws[i] * error * error;
+                    totalWeight += ws[i];
+                }
+            }
+        }
+        return Math.sqrt(sum / totalWeight);
+    }
+
+    /**
+     * Like {@link GeneralMath#weightedMeanWithDefaults(double[], double[], boolean[], double[])}: only elements in
+     * {@code include} count, and for those that are NA, the default value is used.
+     */
+    public double weightedMeanWithDefaults(double[] weights, ValidityMask include, double[] defaultValues)
+    {
+        if (weights.length < size() || defaultValues.length < size())
+            throw new IllegalArgumentException("Weights or default values are shorter than column");
+        validity.checkSize(include);
+        long[] valueWords = validity.words;
+        long[] includeWords = include.words;
+        double sum = 0;
+        double totalWeight = 0;
+        for (int w = 0; w < includeWords.length; w++) {
+            long included = includeWords[w];
+            if (included == 0)
+                continue;
+            int base = w << 6;
+            long valid = included & valueWords[w];
+            long missing = included & ~valueWords[w];
+            if (valid == -1L) {
+                for (int i = base; i < base + 64; i++) {
+                    double weight = finiteWeight(weights[i]);
+                    sum += weight * values[i];
+                    totalWeight += weight;
+                }
+            } else {
+                for (; valid != 0; valid &= valid - 1) {
+                    int i = base + Long.numberOfTrailingZeros(valid);
+                    double weight = finiteWeight(weights[i]);
+                    sum += weight * values[i];
+                    totalWeight += weight;
+                }
+                for (; missing != 0; missing &= missing - 1) {
+                    int i = base + Long.numberOfTrailingZeros(missing);
+                    double weight = finiteWeight(weights[i]);
+                    sum += weight * defaultValues[i];
+                    totalWeight += weight;
+                }
+            }
+        }
+        return IndicationBatchMath.weightedMean(sum, totalWeight);
+    }
+
+    private void checkSize(DoubleColumn other)
+    {
+        if (other.size() != size())
+            throw new IllegalArgumentException("Sizes differ: " + size() + " != " + other.size());
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DoubleColumn{size=" + size() + ", na=" + getNaCount() + "}";
+    }
+}
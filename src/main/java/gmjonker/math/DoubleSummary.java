@@ -0,0 +1,203 @@
+package gmjonker.math;
+
+import java.util.stream.DoubleStream;
+
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.NaType.isValue;
+
+/**
+ * One-pass summary of a series of (optionally weighted) values: count, sum, mean, variance, standard deviation, root
+ * mean square, min and max. Replaces separate calls to the corresponding {@link GeneralMath} functions, each of which
+ * makes one or more passes over the data.
+ *
+ * <p>Sums use Neumaier's compensated summation. Variance is kept as a running sum of squared deviations (West's weighted
+ * update), and summaries of parts of the data can be combined with {@link #merge(DoubleSummary)} (Chan et al.), for
+ * instance in parallel streams. NA values and NA weights are skipped, and counted. Values with weight 0 only count for
+ * min and max. All statistics of an empty summary are NA.
+ *
+ * <p>Variance is the population variance, like {@link GeneralMath#variance(double...)} and
+ * {@link GeneralMath#weightedVariance(double[], double[])}. Not thread-safe.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DoubleSummary
+{
+    private long count = 0;
+    private long naCount = 0;
+    private final CompensatedSum weightSum = new CompensatedSum();
+    private final CompensatedSum weightedSum = new CompensatedSum();
+    private final CompensatedSum weightedSquareSum = new CompensatedSum();
+    private final CompensatedSum squaredDeviations = new CompensatedSum();
+    private double runningMean = 0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public static DoubleSummary of(double... values)
+    {
+        DoubleSummary summary = new DoubleSummary();
+        for (double value : values)
+            summary.add(value);
+        return summary;
+    }
+
+    public static DoubleSummary of(double[] values, double[] weights)
+    {
+        assert values.length == weights.length;
+        DoubleSummary summary = new DoubleSummary();
+        for (int i = 0; i < values.length; i++)
+            summary.add(values[i], weights[i]);
+        return summary;
+    }
+
+    /** Works for parallel streams too. **/
+    public static DoubleSummary of(DoubleStream values)
+    {
+        return values.collect(DoubleSummary::new, DoubleSummary::add, DoubleSummary::merge);
+    }
+
+    public void add(double value)
+    {
+        add(value, 1);
+    }
+
+    public void add(double value, double weight)
+    {
+        if ( ! isValue(value) || ! isValue(weight)) {
+            naCount++;
+            return;
+        }
+        if (weight < 0)
+            throw new IllegalArgumentException("Weight must not be negative: " + weight);
+        count++;
+        if (value < min)
+            min = value;
+        if (value > max)
+            max = value;
+        if (weight == 0)
+            return;
+        double oldWeightSum = weightSum.get();
+        weightSum.add(weight);
+        weightedSum.add(weight * value);
+        weightedSquareSum.add(weight * value * value);
+        double delta = value - runningMean;
+        runningMean = oldWeightSum == 0 ? value : runningMean + delta * weight / weightSum.get();
+        squaredDeviations.add(weight * delta * (value - runningMean));
+    }
+
+    /**
+     * Adds the data of the other summary to this one.
+     * @return this
+     */
+    public DoubleSummary merge(DoubleSummary other)
+    {
+        count += other.count;
+        naCount += other.naCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        double weight1 = weightSum.get();
+        double weight2 = other.weightSum.get();
+        if (weight2 == 0)
+            return this;
+        if (weight1 == 0) {
+            runningMean = other.runningMean;
+        } else {
+            double delta = other.runningMean - runningMean;
+            double totalWeight = weight1 + weight2;
+            runningMean += delta * weight2 / totalWeight;
+            squaredDeviations.add(delta * delta * weight1 * weight2 / totalWeight);
+        }
+        weightSum.add(other.weightSum);
+        weightedSum.add(other.weightedSum);
+        weightedSquareSum.add(other.weightedSquareSum);
+        squaredDeviations.add(other.squaredDeviations);
+        return this;
+    }
+
+    /** Number of non-NA values. **/
+    public long getCount()
+    {
+        return count;
+    }
+
+    /** Number of skipped NA values. **/
+    public long getNaCount()
+    {
+        return naCount;
+    }
+
+    public double getSumOfWeights()
+    {
+        return weightSum.get();
+    }
+
+    /** Sum of weight * value. **/
+    public double getSum()
+    {
+        return count == 0 ? NA : weightedSum.get();
+    }
+
+    public double getMean()
+    {
+        return weightSum.get() == 0 ? NA : weightedSum.get() / weightSum.get();
+    }
+
+    public double getVariance()
+    {
+        return weightSum.get() == 0 ? NA : Math.max(0, squaredDeviations.get()) / weightSum.get();
+    }
+
+    public double getStandardDeviation()
+    {
+        return Math.sqrt(getVariance());
+    }
+
+    /** Like {@link GeneralMath#rootMeanSquare(double[])} and {@link GeneralMath#rootWeightedMeanSquare(double[], double[])}. **/
+    public double getRootMeanSquare()
+    {
+        return weightSum.get() == 0 ? NA : Math.sqrt(weightedSquareSum.get() / weightSum.get());
+    }
+
+    public double getMin()
+    {
+        return count == 0 ? NA : min;
+    }
+
+    public double getMax()
+    {
+        return count == 0 ? NA : max;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("DoubleSummary{count=%d, naCount=%d, mean=%s, sd=%s, rms=%s, min=%s, max=%s}", count,
+                naCount, getMean(), getStandardDeviation(), getRootMeanSquare(), getMin(), getMax());
+    }
+
+    /** Neumaier's variant of Kahan summation. **/
+    private static class CompensatedSum
+    {
+        private double sum = 0;
+        private double compensation = 0;
+
+        void add(double x)
+        {
+            double t = sum + x;
+            if (Math.abs(sum) >= Math.abs(x))
+                compensation += (sum - t) + x;
+            else
+                compensation += (x - t) + sum;
+            sum = t;
+        }
+
+        void add(CompensatedSum other)
+        {
+            add(other.sum);
+            add(other.compensation);
+        }
+
+        double get()
+        {
+            return sum + compensation;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package gmjonker.math;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.NaType.isValue;
+
+/**
+ * Reduces a series of y values of any length to at most {@code width} columns, keeping the min, max and mean of every
+ * column, in one pass and O(width) memory. Used by {@link TextPlot} to plot very long series.
+ *
+ * <p>Values go into buckets of equal size. If the length of the series is not known in advance, buckets start with
+ * size 1, and whenever 8 * width buckets are full, adjacent buckets are merged and the bucket size doubles. At the end,
+ * every column gets the same number of buckets, so that all columns cover the same span of the x axis (except for the
+ * last, which may be partial). That can leave fewer than width columns: with 8 * width buckets, at least 3/4 of width
+ * once the series is that long. NA values are skipped, but they do take up their position on the x axis.
+ */
+@SuppressWarnings("WeakerAccess")
+public class Downsampler
+{
+    private final int width;
+    private final double[] mins;
+    private final double[] maxs;
+    private final double[] sums;
+    private final long[] counts;
+    private long bucketSize;
+    private int numBuckets = 0;
+    private long positionInBucket = 0;
+    private long n = 0;
+
+    /** For series of unknown length. **/
+    public Downsampler(int width)
+    {
+        this(width, 1, 8 * width);
+    }
+
+    /** For series of known length, which are split into exactly as many buckets as possible, up to width. **/
+    public Downsampler(int width, long expectedLength)
+    {
+        this(width, Math.max(1, (expectedLength + width - 1) / width), 2 * width);
+    }
+
+    private Downsampler(int width, long bucketSize, int capacity)
+    {
+        if (width < 1)
+            throw new IllegalArgumentException("Width must be at least 1");
+        this.width = width;
+        this.bucketSize = bucketSize;
+        mins = new double[capacity];
+        maxs = new double[capacity];
+        sums = new double[capacity];
+        counts = new long[capacity];
+    }
+
+    public static Downsampler of(double[] values, int width)
+    {
+        Downsampler downsampler = new Downsampler(width, values.length);
+        for (double value : values)
+            downsampler.add(value);
+        return downsampler;
+    }
+
+    /** Reads the buffer from its position to its limit, without changing the position. Works with memory-mapped files. **/
+    public static Downsampler of(DoubleBuffer values, int width)
+    {
+        Downsampler downsampler = new Downsampler(width, values.remaining());
+        for (int i = values.position(); i < values.limit(); i++)
+            downsampler.add(values.get(i));
+        return downsampler;
+    }
+
+    public static Downsampler of(PrimitiveIterator.OfDouble values, int width)
+    {
+        Downsampler downsampler = new Downsampler(width);
+        while (values.hasNext())
+            downsampler.add(values.nextDouble());
+        return downsampler;
+    }
+
+    public void add(double value)
+    {
+        if (numBuckets == 0 || positionInBucket == bucketSize) {
+            if (numBuckets == mins.length)
+                mergeAdjacentBuckets();
+            int b = numBuckets++;
+            mins[b] = Double.POSITIVE_INFINITY;
+            maxs[b] = Double.NEGATIVE_INFINITY;
+            sums[b] = 0;
+            counts[b] = 0;
+            positionInBucket = 0;
+        }
+        positionInBucket++;
+        n++;
+        if ( ! isValue(value))
+            return;
+        int b = numBuckets - 1;
+        if (value < mins[b])
+            mins[b] = value;
+        if (value > maxs[b])
+            maxs[b] = value;
+        sums[b] += value;
+        counts[b]++;
+    }
+
+    /** Number of values seen, including NAs. **/
+    public long getN()
+    {
+        return n;
+    }
+
+    /** Number of columns in the result, which is at most width. **/
+    public int getNumColumns()
+    {
+        int bucketsPerColumn = getBucketsPerColumn();
+        return (numBuckets + bucketsPerColumn - 1) / bucketsPerColumn;
+    }
+
+    /** Per column, the smallest value, or NA if the column only has NAs. **/
+    public double[] getMins()
+    {
+        return group((from, to) -> {
+            double min = Double.POSITIVE_INFINITY;
+            for (int b = from; b < to; b++)
+                min = Math.min(min, mins[b]);
+            return min == Double.POSITIVE_INFINITY ? NA : min;
+        });
+    }
+
+    /** Per column, the largest value, or NA if the column only has NAs. **/
+    public double[] getMaxs()
+    {
+        return group((from, to) -> {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int b = from; b < to; b++)
+                max = Math.max(max, maxs[b]);
+            return max == Double.NEGATIVE_INFINITY ? NA : max;
+        });
+    }
+
+    /** Per column, the mean value, or NA if the column only has NAs. **/
+    public double[] getMeans()
+    {
+        return group((from, to) -> {
+            double sum = 0;
+            long count = 0;
+            for (int b = from; b < to; b++) {
+                sum += sums[b];
+                count += counts[b];
+            }
+            return count == 0 ? NA : sum / count;
+        });
+    }
+
+    private interface BucketRange
+    {
+        double reduce(int from, int to);
+    }
+
+    /** Smallest number of buckets per column that gives at most width columns. **/
+    private int getBucketsPerColumn()
+    {
+        return Math.max(1, (numBuckets + width - 1) / width);
+    }
+
+    /** Groups the buckets into at most width columns of equal numbers of buckets, except for the last column. **/
+    private double[] group(BucketRange reducer)
+    {
+        int bucketsPerColumn = getBucketsPerColumn();
+        int numColumns = getNumColumns();
+        double[] columns = new double[numColumns];
+        for (int c = 0; c < numColumns; c++) {
+            int from = c * bucketsPerColumn;
+            columns[c] = reducer.reduce(from, Math.min(from + bucketsPerColumn, numBuckets));
+        }
+        return columns;
+    }
+
+    private void mergeAdjacentBuckets()
+    {
+        for (int b = 0; b < numBuckets / 2; b++) {
+            mins[b] = Math.min(mins[2 * b], mins[2 * b + 1]);
+            maxs[b] = Math.max(maxs[2 * b], maxs[2 * b + 1]);
+            sums[b] = sums[2 * b] + sums[2 * b + 1];
+            counts[b] = counts[2 * b] + counts[2 * b + 1];
+        }
+        numBuckets /= 2;
+        bucketSize *= 2;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Downsampler{n=" + n + ", bucketSize=" + bucketSize + ", means=" + Arrays.toString(getMeans()) + "}";
+    }
+}
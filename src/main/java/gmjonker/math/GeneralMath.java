@@ -3,6 +3,7 @@ package gmjonker.math;
 import com.google.common.primitives.Doubles;
 import com.google.common.primitives.Ints;
 import com.google.common.primitives.Longs;
+import gmjonker.util.DoubleList;
 import gmjonker.util.LambdaLogger;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.math3.stat.StatUtils;
@@ -10,12 +11,14 @@ import org.apache.commons.math3.stat.descriptive.moment.Variance;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.Function;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.ToDoubleFunction;
 import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
 import java.util.stream.StreamSupport;
 
 import static gmjonker.math.NaType.NA;
@@ -186,10 +189,16 @@ public class GeneralMath
     }
 
     public static <V> double maxBy(Iterable<V> iterable, Function<V, Double> valueExtractor)
+    {
+        return maxByD(iterable, valueExtractor::apply);
+    }
+
+    /** Like {@link #maxBy(Iterable, Function)}, but without boxing the extracted values. **/
+    public static <V> double maxByD(Iterable<V> iterable, ToDoubleFunction<V> valueExtractor)
     {
         double max = Double.MIN_VALUE;
         for (V v : iterable) {
-            double value = valueExtractor.apply(v);
+            double value = valueExtractor.applyAsDouble(v);
             if (value > max)
                 max = value;
         }
@@ -241,10 +250,16 @@ public class GeneralMath
     }
 
     public static <V> double minBy(Iterable<V> iterable, Function<V, Double> valueExtractor)
+    {
+        return minByD(iterable, valueExtractor::apply);
+    }
+
+    /** Like {@link #minBy(Iterable, Function)}, but without boxing the extracted values. **/
+    public static <V> double minByD(Iterable<V> iterable, ToDoubleFunction<V> valueExtractor)
     {
         double min = Double.MAX_VALUE;
         for (V v : iterable) {
-            double value = valueExtractor.apply(v);
+            double value = valueExtractor.applyAsDouble(v);
             if (value < min)
                 min = value;
         }
@@ -277,15 +292,26 @@ public class GeneralMath
         return StatUtils.sum(values);
     }
 
+    /** Unboxes every element; in hot loops, use {@link #sum(DoubleList)}. **/
     public static double sum(Collection<Double> values)
     {
-        double sum = NA;
-        if ( ! isEmpty(values) ) {
-            sum = 0.0;
-            for (Double value : values)
-                sum += value;
-        }
-        return sum;
+        if (isEmpty(values))
+            return NA;
+        return sumByD(values, Double::doubleValue);
+    }
+
+    public static double sum(DoubleList values)
+    {
+        if (values.isEmpty())
+            return NA;
+        return StatUtils.sum(values.elements(), 0, values.size());
+    }
+
+    /** Works for parallel streams too. **/
+    public static double sum(DoubleStream values)
+    {
+        double[] sumAndCount = sumAndCount(values);
+        return sumAndCount[1] == 0 ? NA : sumAndCount[0];
     }
 
     public static int sum_i(Collection<Integer> values)
@@ -303,10 +329,7 @@ public class GeneralMath
     {
         if (isEmpty(values) ) 
             return defaultValue;
-        double sum = 0.0;
-        for (Double value : values)
-            sum += value;
-        return sum;
+        return sumByD(values, Double::doubleValue);
     }
 
     public static <T> int sum_i(Collection<T> coll, Function<T,Integer> mapper)
@@ -318,10 +341,16 @@ public class GeneralMath
     }
 
     public static <T> double sumBy(Collection<T> coll, Function<T, Double> mapper)
+    {
+        return sumByD(coll, mapper::apply);
+    }
+
+    /** Like {@link #sumBy(Collection, Function)}, but without boxing the mapped values. **/
+    public static <T> double sumByD(Collection<T> coll, ToDoubleFunction<T> mapper)
     {
         double sum = 0.0;
         for (T el : coll)
-            sum += mapper.apply(el);
+            sum += mapper.applyAsDouble(el);
         return sum;
     }
     
@@ -337,10 +366,7 @@ public class GeneralMath
     {
         if (isEmpty(coll) )
             return defaultValue;
-        double sum = 0.0;
-        for (T el : coll)
-            sum += mapper.apply(el);
-        return sum;
+        return sumByD(coll, mapper::apply);
     }
     
     public static double mean(double... values)
@@ -350,14 +376,33 @@ public class GeneralMath
         return StatUtils.mean(values);
     }
 
+    /** Unboxes every element; in hot loops, use {@link #mean(DoubleList)}. **/
     public static double mean(Collection<Double> values)
     {
         if (isEmpty(values))
             return NA;
-        double sum = 0;
-        for (Double value : values)
-            sum += value;
-        return sum / values.size();
+        return sumByD(values, Double::doubleValue) / values.size();
+    }
+
+    public static double mean(DoubleList values)
+    {
+        if (values.isEmpty())
+            return NA;
+        return StatUtils.mean(values.elements(), 0, values.size());
+    }
+
+    /** Works for parallel streams too. **/
+    public static double mean(DoubleStream values)
+    {
+        double[] sumAndCount = sumAndCount(values);
+        return sumAndCount[1] == 0 ? NA : sumAndCount[0] / sumAndCount[1];
+    }
+
+    private static double[] sumAndCount(DoubleStream values)
+    {
+        return values.collect(() -> new double[2],
+                (sumAndCount, value) -> { sumAndCount[0] += value; sumAndCount[1]++; },
+                (left, right) -> { left[0] += right[0]; left[1] += right[1]; });
     }
 
     /**
@@ -371,11 +416,7 @@ public class GeneralMath
         double totalWeight = 0;
         for (int i = 0; i < values.length; i++) {
             double value = values[i];
-            double weight = weights[i];
-            if (weight == Double.POSITIVE_INFINITY)
-                weight = Double.MAX_VALUE / 1000;
-            else if (weight == Double.NEGATIVE_INFINITY)
-                weight = Double.MIN_VALUE * 1000;
+            double weight = IndicationBatchMath.finiteWeight(weights[i]);
             sum += weight * value;
             totalWeight += weight;
         }
@@ -454,29 +495,49 @@ public class GeneralMath
             if (!include[i])
                 continue;
             double value = values[i];
-            double weight = weights[i];
-            if (weight == Double.POSITIVE_INFINITY)
-                weight = Double.MAX_VALUE / 1000;
-            else if (weight == Double.NEGATIVE_INFINITY)
-                weight = Double.MIN_VALUE * 1000;
+            double weight = IndicationBatchMath.finiteWeight(weights[i]);
             if (isValue(value))
                 sum += weight * value;
             else
                 sum += weight * defaultValues[i];
             totalWeight += weight;
         }
-        if (totalWeight < 0) {
-            log.error("sum(weights) must be positive");
-            return NA;
-        }
-        return sum / totalWeight;
+        return IndicationBatchMath.weightedMean(sum, totalWeight);
+    }
+
+    /**
+     * Same as {@link #weightedMeanWithDefaults(double[], double[], boolean[], double[])}, with a packed mask, of which
+     * excluded values are skipped 64 at a time.
+     */
+    public static double weightedMeanWithDefaults(double[] values, double[] weights, ValidityMask include,
+            double[] defaultValues)
+    {
+        // The mask only holds bits up to its size, so a shorter mask would silently exclude the rest
+        if (include.size() != values.length)
+            throw new IllegalArgumentException("Mask size differs from values: " + include.size() + " != " + values.length);
+        if (weights.length < values.length || defaultValues.length < values.length)
+            throw new IllegalArgumentException("Weights or default values are shorter than values");
+        double sum = 0;
+        double totalWeight = 0;
+        long[] words = include.words;
+        for (int w = 0; w < words.length; w++) {
+            for (long word = words[w]; word != 0; word &= word - 1) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(word);
+                double value = values[i];
+                double weight = IndicationBatchMath.finiteWeight(weights[i]);
+                if (isValue(value))
+                    sum += weight * value;
+                else
+                    sum += weight * defaultValues[i];
+                totalWeight += weight;
+            }
+        }
+        return IndicationBatchMath.weightedMean(sum, totalWeight);
     }
 
     public static double weightedMeanWithDefaults(double[] values, double[] weights, double[] defaultValues)
     {
-        boolean[] include = new boolean[values.length];
-        Arrays.fill(include, true);
-        return weightedMeanWithDefaults(values, weights, include, defaultValues);
+        return weightedMeanWithDefaults(values, weights, ValidityMask.allSet(values.length), defaultValues);
     }
 
     /* Streams are cool and all, but not performance-wise. Kept for reference. */
@@ -557,12 +618,33 @@ public class GeneralMath
     }
 
     public static double rootWeightedMeanSquare(List<Double> values, List<Double> weights)
+    {
+        return rootWeightedMeanSquare(values.size(), values::get, weights::get);
+    }
+
+    public static double rootWeightedMeanSquare(double[] values, double[] weights)
+    {
+        return rootWeightedMeanSquare(values.length, i -> values[i], i -> weights[i]);
+    }
+
+    public static double rootWeightedMeanSquare(DoubleList values, DoubleList weights)
+    {
+        // The backing arrays can be longer than the lists, so a shorter weights list would read stale slots
+        if (weights.size() != values.size())
+            throw new IllegalArgumentException("Sizes differ: " + values.size() + " != " + weights.size());
+        double[] valueArray = values.elements();
+        double[] weightArray = weights.elements();
+        return rootWeightedMeanSquare(values.size(), i -> valueArray[i], i -> weightArray[i]);
+    }
+
+    private static double rootWeightedMeanSquare(int size, IntToDoubleFunction values, IntToDoubleFunction weights)
     {
         double temp = 0;
         double weightsSum = 0;
-        for (int i = 0; i < values.size(); i++) {
-            temp += weights.get(i) * Math.pow(values.get(i), 2);
-            weightsSum += weights.get(i);
+        for (int i = 0; i < size; i++) {
+            double weight = weights.applyAsDouble(i);
+            temp += weight * Math.pow(values.applyAsDouble(i), 2);
+            weightsSum += weight;
         }
         return Math.sqrt(temp / weightsSum);
     }
@@ -715,9 +797,20 @@ public class GeneralMath
 
     public static double standardDeviation(Collection<Double> values)
     {
-        double[] array = Doubles.toArray(values);
+        return standardDeviation(Doubles.toArray(values));
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    public static double standardDeviation(DoubleList values)
+    {
         boolean isBiasCorrected = false;
-        return sqrt(new Variance(isBiasCorrected).evaluate(array));
+        return sqrt(new Variance(isBiasCorrected).evaluate(values.elements(), 0, values.size()));
+    }
+
+    /** Buffers the stream in a {@link DoubleList}, as standard deviation needs two passes. **/
+    public static double standardDeviation(DoubleStream values)
+    {
+        return standardDeviation(DoubleList.of(values));
     }
 
     @SuppressWarnings("ConstantConditions")
@@ -777,7 +870,7 @@ public class GeneralMath
 
     /**
      * The one exponentialMovingAverage to rule them all. Supply your own S_1.
-     * See OnlineMovingExponentialAverage for an online/incremental variant.
+     * See {@link DecayedStatistics} for an online/incremental variant, with decay over time.
      * TODO: remove others
      * TODO: PERFORMANCE: provide option to skip the first part of values, those values that hardly contribute to the result
      **/
@@ -8,6 +8,8 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import javax.annotation.Nullable;
+
 import java.util.List;
 
 import static gmjonker.math.GeneralMath.abs;
@@ -56,8 +58,6 @@ public class Indication implements Comparable<Indication>
     @Setter
     public double confidence;
 
-    @Getter
-    @Setter
     @JsonIgnore
     @org.springframework.data.annotation.Transient
     public String comment; // can be handy for explanations
@@ -75,6 +75,24 @@ public class Indication implements Comparable<Indication>
     {
         this(value, confidence, "");
     }
+
+    /** Comment. For results of {@link IndicationMath#combineWithProvenance}, it is rendered from the provenance. **/
+    public String getComment()
+    {
+        return comment;
+    }
+
+    public void setComment(String comment)
+    {
+        this.comment = comment;
+    }
+
+    /** Explanation of an indication that was combined with comments, null for other indications. **/
+    @JsonIgnore
+    public @Nullable Provenance getProvenance()
+    {
+        return null;
+    }
     
     public Indication correct()
     {
@@ -126,7 +144,7 @@ public class Indication implements Comparable<Indication>
 
     public Indication withConfidence(double confidence)
     {
-        return new Indication(this.value, confidence, this.comment);
+        return derive(this.value, confidence);
     }
 
     public Indication withComment(String comment)
@@ -136,12 +154,12 @@ public class Indication implements Comparable<Indication>
 
     public Indication multiplyConfidence(double factor)
     {
-        return new Indication(value, confidence * factor, this.comment);
+        return derive(value, confidence * factor);
     }
 
     public Indication multiply(double valueFactor, double confidenceFactor)
     {
-        return new Indication(this.value * valueFactor, this.confidence * confidenceFactor, this.comment);
+        return derive(this.value * valueFactor, this.confidence * confidenceFactor);
     }
 
     public void multiplyInPlace(double valueFactor, double confidenceFactor)
@@ -155,7 +173,7 @@ public class Indication implements Comparable<Indication>
      */
     public Indication multiplyWith(Indication indication)
     {
-        return new Indication(this.value * indication.value, this.confidence * indication.confidence, this.comment);
+        return derive(this.value * indication.value, this.confidence * indication.confidence);
     }
     
     public Indication diffWith(Indication indication)
@@ -264,8 +282,9 @@ public class Indication implements Comparable<Indication>
     public boolean equals(Object o)
     {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if ( ! (o instanceof Indication)) return false;
         Indication indication = (Indication) o;
+        if (equalityClass() != indication.equalityClass()) return false;
         return scoreValueEquals(indication.value, value) && scoreValueEquals(indication.confidence, confidence);
     }
 
@@ -291,12 +310,12 @@ public class Indication implements Comparable<Indication>
 
     public String toFullString()
     {
-        return String.format("%.22f/%.22f->%f (%s)", value, confidence, deriveDouble(), comment);
+        return String.format("%.22f/%.22f->%f (%s)", value, confidence, deriveDouble(), getComment());
     }
 
     public String toLongString()
     {
-        return String.format("%.5f/%.5f->%.5f (%s)", value, confidence, deriveDouble(), comment);
+        return String.format("%.5f/%.5f->%.5f (%s)", value, confidence, deriveDouble(), getComment());
     }
 
     public String toShortString()
@@ -317,7 +336,7 @@ public class Indication implements Comparable<Indication>
 
     public String toShortStringWithComment()
     {
-        return toShortString() + " (" + comment + ")";
+        return toShortString() + " (" + getComment() + ")";
     }
 
     /** 4A, 9F **/
@@ -328,7 +347,7 @@ public class Indication implements Comparable<Indication>
 
     public String toMicroStringWithComment()
     {
-        return toMicroFormatM11(value) + toMicroFormatABC(confidence) + "(" + comment + ")";
+        return toMicroFormatM11(value) + toMicroFormatABC(confidence) + "(" + getComment() + ")";
     }
 
     /** 1, 6 **/
@@ -396,10 +415,22 @@ public class Indication implements Comparable<Indication>
     }
 
     public Indication copy()
+    {
+        return derive(value, confidence);
+    }
+
+    /** New indication with the comment or provenance of this one. **/
+    Indication derive(double value, double confidence)
     {
         return new Indication(value, confidence, comment);
     }
 
+    /** Class that equals() compares, so that subclasses that only add an explanation equal plain indications. **/
+    Class<?> equalityClass()
+    {
+        return getClass();
+    }
+
     public Score toScore01()
     {
         if (isNa())
@@ -0,0 +1,327 @@
+package gmjonker.math;
+
+import gmjonker.util.LambdaLogger;
+
+import java.util.Arrays;
+import java.util.stream.Collector;
+
+import static gmjonker.math.GeneralMath.abs;
+import static gmjonker.math.GeneralMath.limit;
+import static gmjonker.math.Indication.NA_INDICATION;
+import static gmjonker.math.IndicationBatchMath.COMBINE_RANGE_HIGH;
+import static gmjonker.math.IndicationBatchMath.COMBINE_RANGE_LOW;
+import static gmjonker.math.IndicationBatchMath.NO_DISAGREEMENT_RANGE_HIGH;
+import static gmjonker.math.IndicationBatchMath.NO_DISAGREEMENT_RANGE_LOW;
+import static gmjonker.math.IndicationBatchMath.finiteWeight;
+import static gmjonker.math.IndicationBatchMath.logit;
+import static gmjonker.math.IndicationBatchMath.sigmoid;
+import static gmjonker.math.IndicationBatchMath.weightedMean;
+import static gmjonker.math.NaType.isValue;
+
+/**
+ * Combines indications one at a time, with bounded memory, like {@link IndicationMath#combine(Indication[], double[])}
+ * and {@link IndicationMath#combineNoDisagreementEffect(Indication[], double[])} do. Accumulators can be merged, so they
+ * can be used in (parallel) stream reductions, see {@link #combining()}.
+ *
+ * <p>The accumulator starts in exact mode, in which the indications are kept in a buffer of at most {@code exactCapacity}
+ * indications, and results are exactly those of {@code IndicationMath} (see {@link IndicationBatchMath#TOLERANCE}). When
+ * the buffer overflows, the accumulator switches to approximate mode, in which memory is bounded by {@code numBins}. An
+ * exact capacity of 0 means approximate mode from the start.
+ *
+ * <p>In approximate mode, the combined value and the no-disagreement-effect confidence are still exact. The confidence of
+ * {@link #getCombined()} is approximated: the disagreement term {@code sum(logit(c_i) * (1 - |v_i - mean|)^2)} is
+ * accumulated through value bins of width {@code 2 / numBins}, and only the bin that contains the weighted mean
+ * contributes error. {@link #getConfidenceErrorBound()} returns a guaranteed bound on the absolute confidence error for
+ * the current state, for values in (-1,1). With the default of 256 bins, the error is typically below .001.
+ *
+ * <p>Weights are not rescaled like {@code IndicationMath} does when the max weight is above 1, because the max weight is
+ * not known upfront when streaming. Weights must therefore be in [0,1]; divide by the max weight upfront if needed.
+ *
+ * <p>Not thread-safe. Use one accumulator per thread and {@link #merge(IndicationAccumulator)} them.
+ */
+@SuppressWarnings("WeakerAccess")
+public class IndicationAccumulator
+{
+    public static final int DEFAULT_EXACT_CAPACITY = 1024;
+    public static final int DEFAULT_NUM_BINS = 256;
+
+    private final int exactCapacity;
+    private final int numBins;
+
+    // Exact mode
+    private double[] values;
+    private double[] confidences;
+    private int size = 0;
+
+    // Approximate mode
+    private boolean exact;
+    private double[] binLogits;       // sum of logit(c) per value bin
+    private double[] binLogitValues;  // sum of logit(c) * v per value bin
+    private double logitValueSquares; // sum of logit(c) * v^2
+    private double noDisagreementLogits;
+    private double weightedValueSum;
+    private double totalWeight;
+    private double sumConfidences;
+    private double sumValues;
+    private long count;
+    private long naCount;
+
+    private final double[] outValue = new double[1];
+    private final double[] outConfidence = new double[1];
+
+    protected static final LambdaLogger log = new LambdaLogger(IndicationAccumulator.class);
+
+    public IndicationAccumulator()
+    {
+        this(DEFAULT_EXACT_CAPACITY, DEFAULT_NUM_BINS);
+    }
+
+    public IndicationAccumulator(int exactCapacity, int numBins)
+    {
+        if (exactCapacity < 0)
+            throw new IllegalArgumentException("exactCapacity must be >= 0");
+        if (numBins < 1)
+            throw new IllegalArgumentException("numBins must be > 0");
+        this.exactCapacity = exactCapacity;
+        this.numBins = numBins;
+        this.exact = exactCapacity > 0;
+        if (exact) {
+            values = new double[Math.min(exactCapacity, 16)];
+            confidences = new double[values.length];
+        } else {
+            binLogits = new double[numBins];
+            binLogitValues = new double[numBins];
+        }
+    }
+
+    /** Collector that combines a stream of indications like {@link IndicationMath#combine(Indication...)}. **/
+    public static Collector<Indication, IndicationAccumulator, Indication> combining()
+    {
+        return Collector.of(IndicationAccumulator::new, IndicationAccumulator::add, IndicationAccumulator::merge,
+                IndicationAccumulator::getCombined);
+    }
+
+    /** Collector that combines a stream of indications like {@link IndicationMath#combineNoDisagreementEffect(Indication...)}. **/
+    public static Collector<Indication, IndicationAccumulator, Indication> combiningNoDisagreementEffect()
+    {
+        return Collector.of(IndicationAccumulator::new, IndicationAccumulator::add, IndicationAccumulator::merge,
+                IndicationAccumulator::getCombinedNoDisagreementEffect);
+    }
+
+    public void add(Indication indication)
+    {
+        add(indication.value, indication.confidence, 1);
+    }
+
+    public void add(Indication indication, double weight)
+    {
+        add(indication.value, indication.confidence, weight);
+    }
+
+    public void add(double value, double confidence)
+    {
+        add(value, confidence, 1);
+    }
+
+    /**
+     * @param weight in [0,1]
+     */
+    public void add(double value, double confidence, double weight)
+    {
+        if ( ! (weight >= 0 && weight <= 1))
+            throw new IllegalArgumentException("Weight must be in [0,1], got " + weight);
+        double weightedConfidence = confidence * weight;
+        if (exact) {
+            if (size < exactCapacity) {
+                if (size == values.length) {
+                    int newLength = Math.min(values.length * 2, exactCapacity);
+                    values = Arrays.copyOf(values, newLength);
+                    confidences = Arrays.copyOf(confidences, newLength);
+                }
+                values[size] = value;
+                confidences[size] = weightedConfidence;
+                size++;
+                return;
+            }
+            switchToApproximate();
+        }
+        addApproximate(value, confidence, weightedConfidence);
+    }
+
+    /**
+     * Merges the indications of {@code other} into this accumulator. {@code other} is not changed.
+     * @return this
+     */
+    public IndicationAccumulator merge(IndicationAccumulator other)
+    {
+        if (other.numBins != numBins)
+            throw new IllegalArgumentException("Cannot merge accumulators with different numbers of bins");
+        if (exact && other.exact && size + other.size <= exactCapacity) {
+            for (int i = 0; i < other.size; i++)
+                add(other.values[i], other.confidences[i], 1);
+            return this;
+        }
+        if (exact)
+            switchToApproximate();
+        if (other.exact) {
+            for (int i = 0; i < other.size; i++)
+                addApproximate(other.values[i], other.confidences[i], other.confidences[i]);
+            return this;
+        }
+        for (int b = 0; b < numBins; b++) {
+            binLogits[b] += other.binLogits[b];
+            binLogitValues[b] += other.binLogitValues[b];
+        }
+        logitValueSquares += other.logitValueSquares;
+        noDisagreementLogits += other.noDisagreementLogits;
+        weightedValueSum += other.weightedValueSum;
+        totalWeight += other.totalWeight;
+        sumConfidences += other.sumConfidences;
+        sumValues += other.sumValues;
+        count += other.count;
+        naCount += other.naCount;
+        return this;
+    }
+
+    /** Result of combining all indications so far like {@link IndicationMath#combine(Indication[], double[])}. **/
+    public Indication getCombined()
+    {
+        if (exact) {
+            IndicationBatchMath.combine(values, confidences, null, 0, size, outValue, outConfidence, 0);
+            return toIndication(outValue[0], outConfidence[0]);
+        }
+        if (naCount == count)
+            return NA_INDICATION;
+        if (sumConfidences == 0)
+            return new Indication(sumValues / count, 0);
+        double weightedMean = weightedMean(weightedValueSum, totalWeight);
+        double totalConf = approximateTotalLogitConfidence(weightedMean);
+        return new Indication(weightedMean, limit(sigmoid(totalConf, COMBINE_RANGE_LOW, COMBINE_RANGE_HIGH), 0, 1));
+    }
+
+    /**
+     * Result of combining all indications so far like {@link IndicationMath#combineNoDisagreementEffect(Indication[], double[])}.
+     * This is exact in both modes.
+     **/
+    public Indication getCombinedNoDisagreementEffect()
+    {
+        if (exact) {
+            IndicationBatchMath.combineNoDisagreementEffect(values, confidences, null, 0, size, outValue, outConfidence, 0);
+            return toIndication(outValue[0], outConfidence[0]);
+        }
+        if (naCount == count)
+            return NA_INDICATION;
+        if (sumConfidences == 0)
+            return new Indication(sumValues / count, 0);
+        double totalConf = sigmoid(noDisagreementLogits, NO_DISAGREEMENT_RANGE_LOW, NO_DISAGREEMENT_RANGE_HIGH);
+        return new Indication(weightedMean(weightedValueSum, totalWeight), limit(totalConf, 0, 1));
+    }
+
+    /**
+     * Bound on the absolute difference between the confidence of {@link #getCombined()} and that of
+     * {@link IndicationMath#combine(Indication[], double[])}. Zero in exact mode.
+     */
+    public double getConfidenceErrorBound()
+    {
+        if (exact || naCount == count || sumConfidences == 0)
+            return 0;
+        double weightedMean = weightedMean(weightedValueSum, totalWeight);
+        // Only the bin of the weighted mean can contain values on both sides of the mean. For those, sum(l_i * |v_i - m|)
+        // is off by at most twice the bin width times the logit mass of the bin. The disagreement term has factor -2.
+        double binWidth = 2.0 / numBins;
+        double logitError = 2 * 2 * binWidth * abs(binLogits[bin(weightedMean)]);
+        double totalConf = approximateTotalLogitConfidence(weightedMean);
+        // Bound the slope of the sigmoid over [totalConf - logitError, totalConf + logitError]
+        double closestToZero = totalConf - logitError <= 0 && totalConf + logitError >= 0
+                ? 0
+                : Math.min(abs(totalConf - logitError), abs(totalConf + logitError));
+        double s = 1 / (1 + Math.exp(-closestToZero));
+        double maxSlope = (COMBINE_RANGE_HIGH - COMBINE_RANGE_LOW) * s * (1 - s);
+        return maxSlope * logitError;
+    }
+
+    public boolean isExact()
+    {
+        return exact;
+    }
+
+    /** Number of indications added so far. **/
+    public long getN()
+    {
+        return exact ? size : count;
+    }
+
+    private void switchToApproximate()
+    {
+        log.trace("Switching to approximate mode after {} indications", size);
+        exact = false;
+        binLogits = new double[numBins];
+        binLogitValues = new double[numBins];
+        for (int i = 0; i < size; i++)
+            addApproximate(values[i], confidences[i], confidences[i]);
+        values = null;
+        confidences = null;
+        size = 0;
+    }
+
+    /**
+     * @param rawConfidence confidence before weighting, only used for NA detection
+     */
+    private void addApproximate(double value, double rawConfidence, double confidence)
+    {
+        count++;
+        if ( ! isValue(value) && ! isValue(rawConfidence))
+            naCount++;
+        sumConfidences += confidence;
+        sumValues += value;
+        if ( ! isValue(value) || ! isValue(confidence))
+            return;
+        double weight = finiteWeight(confidence);
+        weightedValueSum += weight * value;
+        totalWeight += weight;
+        double logitConfidence = logit(confidence, COMBINE_RANGE_LOW, COMBINE_RANGE_HIGH);
+        int bin = bin(value);
+        binLogits[bin] += logitConfidence;
+        binLogitValues[bin] += logitConfidence * value;
+        logitValueSquares += logitConfidence * value * value;
+        noDisagreementLogits += logit(confidence, NO_DISAGREEMENT_RANGE_LOW, NO_DISAGREEMENT_RANGE_HIGH);
+    }
+
+    /**
+     * sum(l_i * (1 - |v_i - m|)^2) = sum(l_i) - 2 * sum(l_i * |v_i - m|) + sum(l_i * v_i^2) - 2m * sum(l_i * v_i) + m^2 * sum(l_i)
+     * where sum(l_i * |v_i - m|) is computed per bin, which is exact for all bins that lie entirely on one side of m.
+     */
+    private double approximateTotalLogitConfidence(double weightedMean)
+    {
+        double logits = 0;
+        double logitValues = 0;
+        double absoluteDeviations = 0;
+        for (int b = 0; b < numBins; b++) {
+            logits += binLogits[b];
+            logitValues += binLogitValues[b];
+            absoluteDeviations += abs(binLogitValues[b] - weightedMean * binLogits[b]);
+        }
+        return logits - 2 * absoluteDeviations + logitValueSquares - 2 * weightedMean * logitValues
+                + weightedMean * weightedMean * logits;
+    }
+
+    private int bin(double value)
+    {
+        int bin = (int) ((value + 1) / 2 * numBins);
+        return bin < 0 ? 0 : bin >= numBins ? numBins - 1 : bin;
+    }
+
+    private static Indication toIndication(double value, double confidence)
+    {
+        if ( ! isValue(value) && ! isValue(confidence))
+            return NA_INDICATION;
+        return new Indication(value, confidence);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "IndicationAccumulator{" + (exact ? "exact" : "approximate") + ", n=" + getN() + ", combined=" + getCombined()
+                + "}";
+    }
+}
@@ -0,0 +1,182 @@
+package gmjonker.math;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Many groups of indications stored as parallel primitive arrays (structure-of-arrays), so that they can be combined
+ * by the kernels in {@link IndicationBatchMath} without creating any {@code Indication} objects or scratch arrays.
+ *
+ * <p>Indications are appended to the current group, a new group is started with {@link #newGroup()}. The backing arrays
+ * grow as needed, and can be reused for a next batch with {@link #clear()}.
+ *
+ * <p>Indications that are added without a weight get weight 1, which gives the same results as passing no weights at all.
+ *
+ * <p>Not thread-safe.
+ */
+@SuppressWarnings("WeakerAccess")
+public class IndicationBatch
+{
+    private double[] values;
+    private double[] confidences;
+    private double[] weights;
+    private int[] offsets;
+    private int[] lengths;
+    private int size = 0;
+    private int groupCount = 0;
+
+    public IndicationBatch()
+    {
+        this(64, 8);
+    }
+
+    public IndicationBatch(int expectedIndications, int expectedGroups)
+    {
+        values = new double[Math.max(expectedIndications, 1)];
+        confidences = new double[values.length];
+        weights = new double[values.length];
+        offsets = new int[Math.max(expectedGroups, 1)];
+        lengths = new int[offsets.length];
+    }
+
+    /**
+     * Starts a new group. Indications that are added after this call will belong to the new group.
+     * @return the index of the new group
+     */
+    public int newGroup()
+    {
+        if (groupCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            lengths = Arrays.copyOf(lengths, lengths.length * 2);
+        }
+        offsets[groupCount] = size;
+        lengths[groupCount] = 0;
+        return groupCount++;
+    }
+
+    public void add(double value, double confidence)
+    {
+        add(value, confidence, 1);
+    }
+
+    public void add(double value, double confidence, double weight)
+    {
+        if (groupCount == 0)
+            throw new IllegalStateException("Call newGroup() before adding indications");
+        if (size == values.length) {
+            int newLength = values.length * 2;
+            values = Arrays.copyOf(values, newLength);
+            confidences = Arrays.copyOf(confidences, newLength);
+            weights = Arrays.copyOf(weights, newLength);
+        }
+        values[size] = value;
+        confidences[size] = confidence;
+        weights[size] = weight;
+        size++;
+        lengths[groupCount - 1]++;
+    }
+
+    public void add(Indication indication)
+    {
+        add(indication.value, indication.confidence, 1);
+    }
+
+    public void add(Indication indication, double weight)
+    {
+        add(indication.value, indication.confidence, weight);
+    }
+
+    /**
+     * Adds all indications as a new group.
+     * @return the index of the new group
+     */
+    public int addGroup(Indication[] indications, @Nullable double[] weights)
+    {
+        int group = newGroup();
+        for (int i = 0; i < indications.length; i++)
+            add(indications[i].value, indications[i].confidence, weights == null ? 1 : weights[i]);
+        return group;
+    }
+
+    /**
+     * Adds all indications as a new group.
+     * @return the index of the new group
+     */
+    public int addGroup(Collection<Indication> indications)
+    {
+        int group = newGroup();
+        for (Indication indication : indications)
+            add(indication.value, indication.confidence, 1);
+        return group;
+    }
+
+    /** Removes all groups and indications, but keeps the backing arrays for reuse. **/
+    public void clear()
+    {
+        size = 0;
+        groupCount = 0;
+    }
+
+    /** Total number of indications over all groups. **/
+    public int size()
+    {
+        return size;
+    }
+
+    public int getGroupCount()
+    {
+        return groupCount;
+    }
+
+    public int getOffset(int group)
+    {
+        return offsets[group];
+    }
+
+    public int getLength(int group)
+    {
+        return lengths[group];
+    }
+
+    /** Backing array, only the first {@link #size()} elements are in use. **/
+    public double[] getValues()
+    {
+        return values;
+    }
+
+    /** Backing array, only the first {@link #size()} elements are in use. **/
+    public double[] getConfidences()
+    {
+        return confidences;
+    }
+
+    /** Backing array, only the first {@link #size()} elements are in use. **/
+    public double[] getWeights()
+    {
+        return weights;
+    }
+
+    public Indication get(int index)
+    {
+        return new Indication(values[index], confidences[index]);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("IndicationBatch{");
+        for (int g = 0; g < groupCount; g++) {
+            if (g > 0)
+                sb.append(", ");
+            sb.append('[');
+            for (int i = offsets[g]; i < offsets[g] + lengths[g]; i++) {
+                if (i > offsets[g])
+                    sb.append(' ');
+                sb.append(get(i).toShortString());
+            }
+            sb.append(']');
+        }
+        return sb.append('}').toString();
+    }
+}
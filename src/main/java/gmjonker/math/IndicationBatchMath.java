@@ -0,0 +1,500 @@
+package gmjonker.math;
+
+import gmjonker.util.LambdaLogger;
+import org.apache.commons.math3.exception.OutOfRangeException;
+import org.apache.commons.math3.util.FastMath;
+
+import javax.annotation.Nullable;
+import java.nio.DoubleBuffer;
+
+import static gmjonker.math.GeneralMath.abs;
+import static gmjonker.math.GeneralMath.limit;
+import static gmjonker.math.GeneralMath.max;
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.NaType.isValue;
+import static gmjonker.math.SigmoidMath.fastLogitAlternative;
+import static gmjonker.math.SigmoidMath.fastSigmoidAlternative;
+
+/**
+ * Allocation-free variants of the combine functions of {@link IndicationMath} and {@link IndicationMathFast}, working on
+ * columnar data such as an {@link IndicationBatch}. Results are written into caller-provided output arrays, nothing is
+ * allocated on the heap.
+ *
+ * <p>Results are equal to those of the corresponding {@code IndicationMath}/{@code IndicationMathFast} functions within
+ * {@link #TOLERANCE}. The only difference is the plain mean that is returned when all confidences are zero, which is
+ * computed as sum/n here instead of with the correction term of {@code StatUtils.mean}. A group that is empty, or in which
+ * all values and confidences are NA, results in NA/NA, just like an array of {@code NA_INDICATION}s does. The kernels
+ * use the same sigmoid and logit as the default overloads of those functions; there are no kernels that take a
+ * {@link SigmoidStrategy}.
+ *
+ * <p>The {@code combine} and {@code combineNoDisagreementEffect} kernels also come in a variant that reads from
+ * {@link DoubleBuffer}s, for instance zero-copy views on an {@link IndicationStore}. It copies each group into scratch
+ * arrays of the calling thread and runs the array kernel on those; the scratch arrays are only allocated when a group is
+ * larger than any before on that thread, and stay as large.
+ *
+ * <p>All methods are thread-safe, as long as different threads don't write to the same output positions.
+ */
+@SuppressWarnings("WeakerAccess")
+public class IndicationBatchMath
+{
+    /** Maximum absolute difference in value and confidence with the results of IndicationMath and IndicationMathFast. **/
+    public static final double TOLERANCE = 1e-12;
+
+    static final double COMBINE_RANGE_LOW = -1.1;
+    static final double COMBINE_RANGE_HIGH = 1.1;
+    static final double NO_DISAGREEMENT_RANGE_LOW = -1.2;
+    static final double NO_DISAGREEMENT_RANGE_HIGH = 1.2;
+    private static final double STRICT_RANGE_LOW = -1;
+    private static final double STRICT_RANGE_HIGH = 1;
+    private static final double LOGIT_ONE_NO_DISAGREEMENT = logit(1, NO_DISAGREEMENT_RANGE_LOW, NO_DISAGREEMENT_RANGE_HIGH);
+
+    // Values, confidences and weights of a group read from DoubleBuffers
+    private static final ThreadLocal<double[][]> scratch = ThreadLocal.withInitial(() -> new double[3][0]);
+
+    protected static final LambdaLogger log = new LambdaLogger(IndicationBatchMath.class);
+
+    /**
+     * Combines every group of the batch like {@link IndicationMath#combine(Indication[], double[])} does.
+     * The result of group {@code g} is written to {@code outValues[g]} and {@code outConfidences[g]}.
+     */
+    public static void combine(IndicationBatch batch, double[] outValues, double[] outConfidences)
+    {
+        for (int g = 0; g < batch.getGroupCount(); g++)
+            combine(batch.getValues(), batch.getConfidences(), batch.getWeights(), batch.getOffset(g), batch.getLength(g),
+                    outValues, outConfidences, g);
+    }
+
+    /**
+     * Combines every group of the batch like {@link IndicationMath#combineNoDisagreementEffect(Indication[], double[])} does.
+     * The result of group {@code g} is written to {@code outValues[g]} and {@code outConfidences[g]}.
+     */
+    public static void combineNoDisagreementEffect(IndicationBatch batch, double[] outValues, double[] outConfidences)
+    {
+        for (int g = 0; g < batch.getGroupCount(); g++)
+            combineNoDisagreementEffect(batch.getValues(), batch.getConfidences(), batch.getWeights(), batch.getOffset(g),
+                    batch.getLength(g), outValues, outConfidences, g);
+    }
+
+    /**
+     * Combines every group of the batch like {@link IndicationMath#combineTightAndNoDisagreementEffect(Indication[], double[])}
+     * does. The result of group {@code g} is written to {@code outValues[g]} and {@code outConfidences[g]}.
+     */
+    public static void combineTightAndNoDisagreementEffect(IndicationBatch batch, double[] outValues, double[] outConfidences)
+    {
+        for (int g = 0; g < batch.getGroupCount(); g++)
+            combineTightAndNoDisagreementEffect(batch.getValues(), batch.getConfidences(), batch.getWeights(),
+                    batch.getOffset(g), batch.getLength(g), outValues, outConfidences, g);
+    }
+
+    /**
+     * Combines every group of the batch like {@link IndicationMath#combineStrict(Indication[], double[], boolean)} does.
+     * The result of group {@code g} is written to {@code outValues[g]} and {@code outConfidences[g]}.
+     */
+    public static void combineStrict(IndicationBatch batch, double[] outValues, double[] outConfidences)
+    {
+        for (int g = 0; g < batch.getGroupCount(); g++)
+            combineStrict(batch.getValues(), batch.getConfidences(), batch.getWeights(), batch.getOffset(g),
+                    batch.getLength(g), outValues, outConfidences, g);
+    }
+
+    /**
+     * Combines every group of the batch like {@link IndicationMathFast#combine(Indication[], double[])} does.
+     * The result of group {@code g} is written to {@code outValues[g]} and {@code outConfidences[g]}.
+     */
+    public static void combineFast(IndicationBatch batch, double[] outValues, double[] outConfidences)
+    {
+        for (int g = 0; g < batch.getGroupCount(); g++)
+            combineFast(batch.getValues(), batch.getConfidences(), batch.getWeights(), batch.getOffset(g),
+                    batch.getLength(g), outValues, outConfidences, g);
+    }
+
+    /**
+     * Combines the indications in {@code [offset, offset + length)} like {@link IndicationMath#combine(Indication[], double[])}
+     * does, and writes the result to {@code outValues[outIndex]} and {@code outConfidences[outIndex]}.
+     * @param weights may be null, which means that all weights are 1
+     */
+    public static void combine(double[] values, double[] confidences, @Nullable double[] weights, int offset, int length,
+            double[] outValues, double[] outConfidences, int outIndex)
+    {
+        if (isNaGroup(values, confidences, offset, length)) {
+            outValues[outIndex] = NA;
+            outConfidences[outIndex] = NA;
+            return;
+        }
+        int end = offset + length;
+        double maxWeight = maxWeight(weights, offset, end);
+
+        double sumConfidences = 0;
+        double sumValues = 0;
+        double weightedSum = 0;
+        double totalWeight = 0;
+        for (int i = offset; i < end; i++) {
+            double value = values[i];
+            double confidence = confidences[i] * adjustedWeight(weights, i, maxWeight);
+            sumConfidences += confidence;
+            sumValues += value;
+            if (isValue(value) && isValue(confidence)) {
+                double weight = finiteWeight(confidence);
+                weightedSum += weight * value;
+                totalWeight += weight;
+            }
+        }
+        if (sumConfidences == 0) {
+            outValues[outIndex] = sumValues / length;
+            outConfidences[outIndex] = 0;
+            return;
+        }
+        double weightedMean = weightedMean(weightedSum, totalWeight);
+
+        double totalConf = 0;
+        for (int i = offset; i < end; i++) {
+            double value = values[i];
+            double confidence = confidences[i] * adjustedWeight(weights, i, maxWeight);
+            if ( ! isValue(value) || ! isValue(confidence))
+                continue;
+            double agreement = 1 - abs(value - weightedMean);
+            totalConf += logit(confidence, COMBINE_RANGE_LOW, COMBINE_RANGE_HIGH) * agreement * agreement;
+        }
+        outValues[outIndex] = weightedMean;
+        outConfidences[outIndex] = limit(sigmoid(totalConf, COMBINE_RANGE_LOW, COMBINE_RANGE_HIGH), 0, 1);
+    }
+
+    /**
+     * Combines the indications in {@code [offset, offset + length)} like
+     * {@link IndicationMath#combineNoDisagreementEffect(Indication[], double[])} does, and writes the result to
+     * {@code outValues[outIndex]} and {@code outConfidences[outIndex]}.
+     * @param weights may be null, which means that all weights are 1
+     */
+    public static void combineNoDisagreementEffect(double[] values, double[] confidences, @Nullable double[] weights,
+            int offset, int length, double[] outValues, double[] outConfidences, int outIndex)
+    {
+        if (isNaGroup(values, confidences, offset, length)) {
+            outValues[outIndex] = NA;
+            outConfidences[outIndex] = NA;
+            return;
+        }
+        int end = offset + length;
+        double maxWeight = maxWeight(weights, offset, end);
+
+        double sumConfidences = 0;
+        double sumValues = 0;
+        double weightedSum = 0;
+        double totalWeight = 0;
+        double totalConf = 0;
+        for (int i = offset; i < end; i++) {
+            double value = values[i];
+            double confidence = confidences[i] * adjustedWeight(weights, i, maxWeight);
+            sumConfidences += confidence;
+            sumValues += value;
+            if (isValue(value) && isValue(confidence)) {
+                double weight = finiteWeight(confidence);
+                weightedSum += weight * value;
+                totalWeight += weight;
+                totalConf += logit(confidence, NO_DISAGREEMENT_RANGE_LOW, NO_DISAGREEMENT_RANGE_HIGH);
+            }
+        }
+        if (sumConfidences == 0) {
+            outValues[outIndex] = sumValues / length;
+            outConfidences[outIndex] = 0;
+            return;
+        }
+        outValues[outIndex] = weightedMean(weightedSum, totalWeight);
+        outConfidences[outIndex] = limit(sigmoid(totalConf, NO_DISAGREEMENT_RANGE_LOW, NO_DISAGREEMENT_RANGE_HIGH), 0, 1);
+    }
+
+    /**
+     * Like {@link #combine(double[], double[], double[], int, int, double[], double[], int)}, reading from buffers with
+     * absolute gets, so their positions don't change.
+     * @param weights may be null, which means that all weights are 1
+     */
+    public static void combine(DoubleBuffer values, DoubleBuffer confidences, @Nullable DoubleBuffer weights, int offset,
+            int length, double[] outValues, double[] outConfidences, int outIndex)
+    {
+        double[][] arrays = copyToScratch(values, confidences, weights, offset, length);
+        combine(arrays[0], arrays[1], weights == null ? null : arrays[2], 0, length, outValues, outConfidences, outIndex);
+    }
+
+    /** Like {@link #combine(DoubleBuffer, DoubleBuffer, DoubleBuffer, int, int, double[], double[], int)} without weights. **/
+    public static void combine(DoubleBuffer values, DoubleBuffer confidences, int offset, int length,
+            double[] outValues, double[] outConfidences, int outIndex)
+    {
+        combine(values, confidences, null, offset, length, outValues, outConfidences, outIndex);
+    }
+
+    /**
+     * Like {@link #combineNoDisagreementEffect(double[], double[], double[], int, int, double[], double[], int)}, reading
+     * from buffers with absolute gets, so their positions don't change.
+     * @param weights may be null, which means that all weights are 1
+     */
+    public static void combineNoDisagreementEffect(DoubleBuffer values, DoubleBuffer confidences,
+            @Nullable DoubleBuffer weights, int offset, int length, double[] outValues, double[] outConfidences,
+            int outIndex)
+    {
+        double[][] arrays = copyToScratch(values, confidences, weights, offset, length);
+        combineNoDisagreementEffect(arrays[0], arrays[1], weights == null ? null : arrays[2], 0, length, outValues,
+                outConfidences, outIndex);
+    }
+
+    /**
+     * Like {@link #combineNoDisagreementEffect(DoubleBuffer, DoubleBuffer, DoubleBuffer, int, int, double[], double[], int)}
+     * without weights.
+     */
+    public static void combineNoDisagreementEffect(DoubleBuffer values, DoubleBuffer confidences, int offset, int length,
+            double[] outValues, double[] outConfidences, int outIndex)
+    {
+        combineNoDisagreementEffect(values, confidences, null, offset, length, outValues, outConfidences, outIndex);
+    }
+
+    /**
+     * Combines the indications in {@code [offset, offset + length)} like
+     * {@link IndicationMath#combineTightAndNoDisagreementEffect(Indication[], double[])} does, and writes the result to
+     * {@code outValues[outIndex]} and {@code outConfidences[outIndex]}.
+     * @param weights may be null, which means that all weights are 1
+     */
+    public static void combineTightAndNoDisagreementEffect(double[] values, double[] confidences, @Nullable double[] weights,
+            int offset, int length, double[] outValues, double[] outConfidences, int outIndex)
+    {
+        if (isNaGroup(values, confidences, offset, length)) {
+            outValues[outIndex] = NA;
+            outConfidences[outIndex] = NA;
+            return;
+        }
+        int end = offset + length;
+        double weightAdjustment = 1.0;
+        if (weights != null) {
+            double maxWeight = maxWeight(weights, offset, end);
+            weightAdjustment = maxWeight > 1 ? 1.0 / maxWeight : 1.0;
+        }
+
+        double sumMaxLogits = 0;
+        double sumConfidences = 0;
+        double sumValues = 0;
+        double weightedSum = 0;
+        double totalWeight = 0;
+        for (int i = offset; i < end; i++) {
+            double value = values[i];
+            double confidence = weights == null ? confidences[i] : confidences[i] * weights[i] * weightAdjustment;
+            sumMaxLogits += weights == null
+                    ? LOGIT_ONE_NO_DISAGREEMENT
+                    : logit(weights[i] * weightAdjustment, NO_DISAGREEMENT_RANGE_LOW, NO_DISAGREEMENT_RANGE_HIGH);
+            sumConfidences += confidence;
+            sumValues += value;
+            if (isValue(value) && isValue(confidence)) {
+                double weight = finiteWeight(confidence);
+                weightedSum += weight * value;
+                totalWeight += weight;
+            }
+        }
+        // The max total logit we can get is sumMaxLogits. We want that to be logit(1), so that if all indications are
+        // 1/1, the end result is 1/1.
+        double logitAdjustment = LOGIT_ONE_NO_DISAGREEMENT / sumMaxLogits;
+        if (sumConfidences == 0) {
+            outValues[outIndex] = sumValues / length;
+            outConfidences[outIndex] = 0;
+            return;
+        }
+        double weightedMean = weightedMean(weightedSum, totalWeight);
+
+        double totalLogitConf = 0;
+        for (int i = offset; i < end; i++) {
+            double value = values[i];
+            double confidence = weights == null ? confidences[i] : confidences[i] * weights[i] * weightAdjustment;
+            double adjustedLogitConfidence = logitAdjustment
+                    * logit(confidence, NO_DISAGREEMENT_RANGE_LOW, NO_DISAGREEMENT_RANGE_HIGH);
+            if ( ! isValue(value) || ! isValue(confidence) || ! isValue(adjustedLogitConfidence))
+                continue;
+            totalLogitConf += adjustedLogitConfidence;
+        }
+        outValues[outIndex] = weightedMean;
+        outConfidences[outIndex] =
+                limit(sigmoid(totalLogitConf, NO_DISAGREEMENT_RANGE_LOW, NO_DISAGREEMENT_RANGE_HIGH), 0, 1);
+    }
+
+    /**
+     * Combines the indications in {@code [offset, offset + length)} like
+     * {@link IndicationMath#combineStrict(Indication[], double[], boolean)} does, and writes the result to
+     * {@code outValues[outIndex]} and {@code outConfidences[outIndex]}.
+     * @param weights may be null, which means that all weights are 1
+     */
+    public static void combineStrict(double[] values, double[] confidences, @Nullable double[] weights, int offset,
+            int length, double[] outValues, double[] outConfidences, int outIndex)
+    {
+        if (isNaGroup(values, confidences, offset, length)) {
+            outValues[outIndex] = NA;
+            outConfidences[outIndex] = NA;
+            return;
+        }
+        int end = offset + length;
+        double maxWeight = maxWeight(weights, offset, end);
+
+        double sumConfidences = 0;
+        double sumValues = 0;
+        double weightedSum = 0;
+        double totalWeight = 0;
+        for (int i = offset; i < end; i++) {
+            double value = values[i];
+            double confidence = confidences[i] * adjustedWeight(weights, i, maxWeight);
+            double logitConfidence = fastLogitAlternative(confidence, STRICT_RANGE_LOW, STRICT_RANGE_HIGH);
+            sumConfidences += confidence;
+            sumValues += value;
+            // Strict uses the logit confidences as weights for the mean
+            if (isValue(value) && isValue(logitConfidence)) {
+                double weight = finiteWeight(logitConfidence);
+                weightedSum += weight * value;
+                totalWeight += weight;
+            }
+        }
+        if (sumConfidences == 0) {
+            outValues[outIndex] = sumValues / length;
+            outConfidences[outIndex] = 0;
+            return;
+        }
+        double weightedMean = weightedMean(weightedSum, totalWeight);
+
+        double totalLogitConf = 0;
+        for (int i = offset; i < end; i++) {
+            double value = values[i];
+            double confidence = confidences[i] * adjustedWeight(weights, i, maxWeight);
+            if ( ! isValue(value) || ! isValue(confidence))
+                continue;
+            double agreement = max(0, 1 - abs(value - weightedMean));
+            if (agreement == 0)
+                continue; // needed to deal with the case that the logit confidence is infinite
+            totalLogitConf += fastLogitAlternative(confidence, STRICT_RANGE_LOW, STRICT_RANGE_HIGH) * agreement * agreement;
+        }
+        outValues[outIndex] = weightedMean;
+        outConfidences[outIndex] = limit(fastSigmoidAlternative(totalLogitConf, STRICT_RANGE_LOW, STRICT_RANGE_HIGH), 0, 1);
+    }
+
+    /**
+     * Combines the indications in {@code [offset, offset + length)} like
+     * {@link IndicationMathFast#combine(Indication[], double[])} does, and writes the result to
+     * {@code outValues[outIndex]} and {@code outConfidences[outIndex]}.
+     * @param weights may be null, which means that all weights are 1
+     */
+    public static void combineFast(double[] values, double[] confidences, @Nullable double[] weights, int offset,
+            int length, double[] outValues, double[] outConfidences, int outIndex)
+    {
+        int end = offset + length;
+        double maxWeight = maxWeight(weights, offset, end);
+
+        double sumConfidences = 0;
+        double sumValues = 0;
+        double weightedSum = 0;
+        double totalWeight = 0;
+        for (int i = offset; i < end; i++) {
+            double value = values[i];
+            double confidence = confidences[i] * adjustedWeight(weights, i, maxWeight);
+            double weight = finiteWeight(confidence);
+            sumConfidences += confidence;
+            sumValues += value;
+            weightedSum += weight * value;
+            totalWeight += weight;
+        }
+        if (sumConfidences == 0) {
+            outValues[outIndex] = length == 0 ? NA : sumValues / length;
+            outConfidences[outIndex] = 0;
+            return;
+        }
+        double weightedMean = weightedMean(weightedSum, totalWeight);
+
+        double totalConf = 0;
+        for (int i = offset; i < end; i++) {
+            double confidence = confidences[i] * adjustedWeight(weights, i, maxWeight);
+            double agreement = 1 - abs(values[i] - weightedMean);
+            double agreementSquared = agreement * agreement;
+            totalConf += fastLogitAlternative(confidence, COMBINE_RANGE_LOW, COMBINE_RANGE_HIGH)
+                    * agreementSquared * agreementSquared;
+        }
+        outValues[outIndex] = weightedMean;
+        outConfidences[outIndex] = limit(fastSigmoidAlternative(totalConf, COMBINE_RANGE_LOW, COMBINE_RANGE_HIGH), 0, 1);
+    }
+
+    /** Empty, or all values and confidences NA. **/
+    private static boolean isNaGroup(double[] values, double[] confidences, int offset, int length)
+    {
+        for (int i = offset; i < offset + length; i++)
+            if (isValue(values[i]) || isValue(confidences[i]))
+                return false;
+        return true;
+    }
+
+    /**
+     * Copies {@code [offset, offset + length)} of the buffers to the start of the scratch arrays of this thread, which
+     * grow to the largest group seen. Weights are only copied if they are given.
+     */
+    private static double[][] copyToScratch(DoubleBuffer values, DoubleBuffer confidences, @Nullable DoubleBuffer weights,
+            int offset, int length)
+    {
+        double[][] arrays = scratch.get();
+        if (arrays[0].length < length) {
+            arrays[0] = new double[length];
+            arrays[1] = new double[length];
+            arrays[2] = new double[length];
+        }
+        copy(values, offset, length, arrays[0]);
+        copy(confidences, offset, length, arrays[1]);
+        if (weights != null)
+            copy(weights, offset, length, arrays[2]);
+        return arrays;
+    }
+
+    private static void copy(DoubleBuffer buffer, int offset, int length, double[] target)
+    {
+        for (int i = 0; i < length; i++)
+            target[i] = buffer.get(offset + i);
+    }
+
+    /** Max of the weights, ignoring NAs, like StatUtils.max. NA if there are no weights. **/
+    private static double maxWeight(@Nullable double[] weights, int offset, int end)
+    {
+        if (weights == null)
+            return NA;
+        double max = NA;
+        for (int i = offset; i < end; i++)
+            if ( ! isValue(max) || weights[i] > max)
+                max = weights[i];
+        return max;
+    }
+
+    /** If max weight > 1, adjusts all weights such that max weight == 1, otherwise just leaves the weights as is. **/
+    private static double adjustedWeight(@Nullable double[] weights, int i, double maxWeight)
+    {
+        if (weights == null)
+            return 1;
+        return maxWeight > 1 ? weights[i] * 1 / maxWeight : weights[i];
+    }
+
+    /** Positive (or negative) infinity is replaced for a very large (or small) number, like GeneralMath.weightedMean does. **/
+    static double finiteWeight(double weight)
+    {
+        if (weight == Double.POSITIVE_INFINITY)
+            return Double.MAX_VALUE / 1000;
+        if (weight == Double.NEGATIVE_INFINITY)
+            return Double.MIN_VALUE * 1000;
+        return weight;
+    }
+
+    static double weightedMean(double weightedSum, double totalWeight)
+    {
+        if (totalWeight < 0) {
+            log.error("sum(weights) must be positive");
+            return NA;
+        }
+        return weightedSum / totalWeight;
+    }
+
+    /** Same as SigmoidMath.logit(x, rangeLow, rangeHigh), without creating a Logit object. **/
+    static double logit(double x, double rangeLow, double rangeHigh)
+    {
+        if (x < rangeLow || x > rangeHigh)
+            throw new OutOfRangeException(x, rangeLow, rangeHigh);
+        return FastMath.log((x - rangeLow) / (rangeHigh - x));
+    }
+
+    /** Same as SigmoidMath.sigmoid(x, rangeLow, rangeHigh), without creating a Sigmoid object. **/
+    static double sigmoid(double x, double rangeLow, double rangeHigh)
+    {
+        return rangeLow + (rangeHigh - rangeLow) / (1 + FastMath.exp(-x));
+    }
+}
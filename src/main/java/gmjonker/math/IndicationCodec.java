@@ -0,0 +1,231 @@
+package gmjonker.math;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.NaType.isValue;
+
+/**
+ * Binary encoding of {@link Indication}s and {@link Score}s, as a faster and smaller alternative to
+ * {@link Indication#serialize()} and {@link Indication#deserialize(String)}. Comments are not encoded.
+ *
+ * <p>Layouts, all fixed width:
+ * <ul>
+ *     <li>{@link Layout#DOUBLE}: value and confidence as doubles, lossless</li>
+ *     <li>{@link Layout#FLOAT}: value and confidence as floats</li>
+ *     <li>{@link Layout#QUANTIZED}: value and confidence as 16-bit integers. The value range of indications (-1,1) and
+ *     of scores (0,1), and the confidence range (0,1), are divided in 65534 steps, so the rounding error is below
+ *     1.6e-5 for values and 7.7e-6 for confidences. Out-of-range numbers are clamped. NA is kept.</li>
+ * </ul>
+ * The codec itself does not write a header or a count; ByteBuffers use their own byte order.
+ */
+@SuppressWarnings("WeakerAccess")
+public class IndicationCodec
+{
+    public enum Layout
+    {
+        DOUBLE(16), FLOAT(8), QUANTIZED(4);
+
+        public final int bytesPerItem;
+
+        Layout(int bytesPerItem)
+        {
+            this.bytesPerItem = bytesPerItem;
+        }
+    }
+
+    private static final int QUANTIZED_STEPS = 65534;
+    private static final int QUANTIZED_NA = 65535;
+
+    private final Layout layout;
+
+    public IndicationCodec(Layout layout)
+    {
+        this.layout = layout;
+    }
+
+    public Layout getLayout()
+    {
+        return layout;
+    }
+
+    public int getBytesPerItem()
+    {
+        return layout.bytesPerItem;
+    }
+
+    public void encode(Indication indication, ByteBuffer buffer)
+    {
+        put(indication.value, -1, indication.confidence, buffer);
+    }
+
+    public Indication decodeIndication(ByteBuffer buffer)
+    {
+        double value = getValue(-1, buffer);
+        return new Indication(value, getConfidence(buffer));
+    }
+
+    @SuppressWarnings("deprecation")
+    public void encode(Score score, ByteBuffer buffer)
+    {
+        put(score.value, 0, score.confidence, buffer);
+    }
+
+    @SuppressWarnings("deprecation")
+    public Score decodeScore(ByteBuffer buffer)
+    {
+        double value = getValue(0, buffer);
+        return new Score(value, getConfidence(buffer));
+    }
+
+    public void encode(Indication[] indications, ByteBuffer buffer)
+    {
+        for (Indication indication : indications)
+            encode(indication, buffer);
+    }
+
+    public Indication[] decodeIndications(ByteBuffer buffer, int count)
+    {
+        Indication[] indications = new Indication[count];
+        for (int i = 0; i < count; i++)
+            indications[i] = decodeIndication(buffer);
+        return indications;
+    }
+
+    /** Encodes indications in columnar form, as in {@link IndicationBatch}. **/
+    public void encode(double[] values, double[] confidences, int offset, int length, ByteBuffer buffer)
+    {
+        for (int i = offset; i < offset + length; i++)
+            put(values[i], -1, confidences[i], buffer);
+    }
+
+    /** Decodes indications into columnar form, as in {@link IndicationBatch}. **/
+    public void decode(ByteBuffer buffer, double[] values, double[] confidences, int offset, int length)
+    {
+        for (int i = offset; i < offset + length; i++) {
+            values[i] = getValue(-1, buffer);
+            confidences[i] = getConfidence(buffer);
+        }
+    }
+
+    public void write(Indication indication, DataOutput out) throws IOException
+    {
+        write(indication.value, -1, indication.confidence, out);
+    }
+
+    public Indication readIndication(DataInput in) throws IOException
+    {
+        double value = readValue(-1, in);
+        return new Indication(value, readConfidence(in));
+    }
+
+    @SuppressWarnings("deprecation")
+    public void write(Score score, DataOutput out) throws IOException
+    {
+        write(score.value, 0, score.confidence, out);
+    }
+
+    @SuppressWarnings("deprecation")
+    public Score readScore(DataInput in) throws IOException
+    {
+        double value = readValue(0, in);
+        return new Score(value, readConfidence(in));
+    }
+
+    public void write(Indication[] indications, DataOutput out) throws IOException
+    {
+        for (Indication indication : indications)
+            write(indication, out);
+    }
+
+    public Indication[] readIndications(DataInput in, int count) throws IOException
+    {
+        Indication[] indications = new Indication[count];
+        for (int i = 0; i < count; i++)
+            indications[i] = readIndication(in);
+        return indications;
+    }
+
+    private void put(double value, double low, double confidence, ByteBuffer buffer)
+    {
+        switch (layout) {
+            case DOUBLE:
+                buffer.putDouble(value);
+                buffer.putDouble(confidence);
+                break;
+            case FLOAT:
+                buffer.putFloat((float) value);
+                buffer.putFloat((float) confidence);
+                break;
+            case QUANTIZED:
+                buffer.putChar((char) quantize(value, low));
+                buffer.putChar((char) quantize(confidence, 0));
+                break;
+        }
+    }
+
+    private double getValue(double low, ByteBuffer buffer)
+    {
+        switch (layout) {
+            case DOUBLE: return buffer.getDouble();
+            case FLOAT: return buffer.getFloat();
+            default: return dequantize(buffer.getChar(), low);
+        }
+    }
+
+    private double getConfidence(ByteBuffer buffer)
+    {
+        return getValue(0, buffer);
+    }
+
+    private void write(double value, double low, double confidence, DataOutput out) throws IOException
+    {
+        switch (layout) {
+            case DOUBLE:
+                out.writeDouble(value);
+                out.writeDouble(confidence);
+                break;
+            case FLOAT:
+                out.writeFloat((float) value);
+                out.writeFloat((float) confidence);
+                break;
+            case QUANTIZED:
+                out.writeChar(quantize(value, low));
+                out.writeChar(quantize(confidence, 0));
+                break;
+        }
+    }
+
+    private double readValue(double low, DataInput in) throws IOException
+    {
+        switch (layout) {
+            case DOUBLE: return in.readDouble();
+            case FLOAT: return in.readFloat();
+            default: return dequantize(in.readChar(), low);
+        }
+    }
+
+    private double readConfidence(DataInput in) throws IOException
+    {
+        return readValue(0, in);
+    }
+
+    /** Maps [low,1] to [0,65534], and NA to 65535. **/
+    static int quantize(double x, double low)
+    {
+        if ( ! isValue(x))
+            return QUANTIZED_NA;
+        double clamped = GeneralMath.limit(x, low, 1);
+        return (int) Math.round((clamped - low) / (1 - low) * QUANTIZED_STEPS);
+    }
+
+    static double dequantize(int q, double low)
+    {
+        if (q == QUANTIZED_NA)
+            return NA;
+        return low + q * (1 - low) / QUANTIZED_STEPS;
+    }
+}
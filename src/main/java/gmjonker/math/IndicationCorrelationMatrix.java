@@ -0,0 +1,279 @@
+package gmjonker.math;
+
+import gmjonker.util.LambdaLogger;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static gmjonker.math.GeneralMath.abs;
+import static gmjonker.math.GeneralMath.sqrt;
+
+/**
+ * Computes correlations between all pairs of N aligned indication series, in one go and using all cores.
+ *
+ * <p>The series are stored in columnar form: one flat array of values and one of confidences, series after series. The
+ * upper triangle of the N x N matrix is computed in square tiles of {@link #TILE_SIZE} series, where each tile walks
+ * through the series in blocks of {@link #BLOCK_LENGTH} data points so that the data of a tile stays in cache. Tiles are
+ * distributed over a {@link ForkJoinPool}. Every pair is summed in data point order, so results are deterministic.
+ *
+ * <p>Results can be streamed out row by row with {@link #forEachRow(Measure, RowConsumer)}, which only keeps
+ * {@code TILE_SIZE} rows in memory, or collected in a full matrix with {@link #computeMatrix(Measure)}.
+ *
+ * <p>Measures:
+ * <ul>
+ *     <li>{@link Measure#COVARIANCE0}: as {@link IndicationCorrelationOnline#getCovariance0()}</li>
+ *     <li>{@link Measure#PEARSON}: as {@link IndicationCorrelationOnline#getPearsonSimilarity()}</li>
+ *     <li>{@link Measure#PROFILE_CORRELATION}: as {@link Correlation#profileCorrelation(List, List)} on
+ *     {@code value * confidence}</li>
+ * </ul>
+ */
+@SuppressWarnings("WeakerAccess")
+public class IndicationCorrelationMatrix
+{
+    public static final int TILE_SIZE = 64;
+    public static final int BLOCK_LENGTH = 256;
+
+    public enum Measure { COVARIANCE0, PEARSON, PROFILE_CORRELATION }
+
+    public interface RowConsumer
+    {
+        /**
+         * @param row measures for series pairs (i, i), (i, i + 1), ..., (i, n - 1), so {@code row[k]} belongs to pair
+         *            (i, i + k). The array is only valid during this call.
+         */
+        void accept(int i, double[] row);
+    }
+
+    private final int numSeries;
+    private final int length;
+    private final double[] confidences;
+    private final double[] weightedValues;          // v * c
+    private final double[] signedSquaredValues;     // (v * c) * |v * c|
+    private final double[] standardDeviations;      // per series, values weighted by confidences
+    private final double[] absoluteSums;            // per series, sum(|v * c|)
+    private final ForkJoinPool pool;
+
+    protected static final LambdaLogger log = new LambdaLogger(IndicationCorrelationMatrix.class);
+
+    /**
+     * @param values values of series 0, then those of series 1, etc. Length must be numSeries * length.
+     * @param confidences confidences, in the same layout as values
+     */
+    public IndicationCorrelationMatrix(int numSeries, int length, double[] values, double[] confidences)
+    {
+        this(numSeries, length, values, confidences, ForkJoinPool.commonPool());
+    }
+
+    public IndicationCorrelationMatrix(int numSeries, int length, double[] values, double[] confidences, ForkJoinPool pool)
+    {
+        if (values.length != numSeries * length || confidences.length != numSeries * length)
+            throw new IllegalArgumentException("values and confidences must have length numSeries * length");
+        this.numSeries = numSeries;
+        this.length = length;
+        this.confidences = confidences;
+        this.pool = pool;
+        weightedValues = new double[values.length];
+        signedSquaredValues = new double[values.length];
+        standardDeviations = new double[numSeries];
+        absoluteSums = new double[numSeries];
+        for (int s = 0; s < numSeries; s++) {
+            int offset = s * length;
+            double weightSum = 0;
+            double weightedSum = 0;
+            double absoluteSum = 0;
+            for (int t = offset; t < offset + length; t++) {
+                double x = values[t] * confidences[t];
+                weightedValues[t] = x;
+                signedSquaredValues[t] = x * abs(x);
+                absoluteSum += abs(x);
+                weightSum += confidences[t];
+                weightedSum += x;
+            }
+            absoluteSums[s] = absoluteSum;
+            double mean = weightedSum / weightSum;
+            double squaredDeviations = 0;
+            double deviations = 0;
+            for (int t = offset; t < offset + length; t++) {
+                double deviation = values[t] - mean;
+                squaredDeviations += confidences[t] * deviation * deviation;
+                deviations += confidences[t] * deviation;
+            }
+            // Same (corrected two-pass) formula as commons-math's weighted Variance
+            standardDeviations[s] = sqrt((squaredDeviations - deviations * deviations / weightSum) / weightSum);
+        }
+    }
+
+    /** Converts a list of equally long series into columnar form. **/
+    public static IndicationCorrelationMatrix fromSeries(List<List<Indication>> series)
+    {
+        int numSeries = series.size();
+        int length = numSeries == 0 ? 0 : series.get(0).size();
+        double[] values = new double[numSeries * length];
+        double[] confidences = new double[numSeries * length];
+        for (int s = 0; s < numSeries; s++) {
+            List<Indication> indications = series.get(s);
+            if (indications.size() != length)
+                throw new IllegalArgumentException("All series must have the same length");
+            for (int t = 0; t < length; t++) {
+                values[s * length + t] = indications.get(t).value;
+                confidences[s * length + t] = indications.get(t).confidence;
+            }
+        }
+        return new IndicationCorrelationMatrix(numSeries, length, values, confidences);
+    }
+
+    public int getNumSeries()
+    {
+        return numSeries;
+    }
+
+    /** Computes the full, symmetric, N x N matrix. **/
+    public double[][] computeMatrix(Measure measure)
+    {
+        double[][] matrix = new double[numSeries][numSeries];
+        forEachRow(measure, (i, row) -> {
+            for (int k = 0; k < row.length; k++) {
+                matrix[i][i + k] = row[k];
+                matrix[i + k][i] = row[k];
+            }
+        });
+        return matrix;
+    }
+
+    /**
+     * Computes the upper triangle of the matrix, and hands it to the consumer row by row, in order of i. Only
+     * {@link #TILE_SIZE} rows are kept in memory at any time. The consumer is called from the calling thread.
+     */
+    public void forEachRow(Measure measure, RowConsumer consumer)
+    {
+        double[][] rows = new double[TILE_SIZE][];
+        for (int rowStart = 0; rowStart < numSeries; rowStart += TILE_SIZE) {
+            int rowEnd = Math.min(rowStart + TILE_SIZE, numSeries);
+            for (int i = rowStart; i < rowEnd; i++)
+                rows[i - rowStart] = new double[numSeries - i];
+            log.trace("Computing rows {} to {}", rowStart, rowEnd);
+            int numColumnTiles = (numSeries - rowStart + TILE_SIZE - 1) / TILE_SIZE;
+            pool.invoke(new TileTask(measure, rowStart, rowEnd, 0, numColumnTiles, rows));
+            for (int i = rowStart; i < rowEnd; i++) {
+                consumer.accept(i, rows[i - rowStart]);
+                rows[i - rowStart] = null;
+            }
+        }
+    }
+
+    /** Computes the measure for a single pair of series. **/
+    public double compute(Measure measure, int i, int j)
+    {
+        if (j < i)
+            return compute(measure, j, i);
+        double[] sums = new double[2];
+        computeTile(measure, i, i + 1, j, j + 1, (ii, jj, sum1, sum2) -> {
+            sums[0] = sum1;
+            sums[1] = sum2;
+        });
+        return finish(measure, i, j, sums[0], sums[1]);
+    }
+
+    private interface PairSink
+    {
+        void accept(int i, int j, double sum1, double sum2);
+    }
+
+    /**
+     * Computes two dot products for all pairs in the tile: for (co)variance sum(x_i * x_j) and sum(c_i * c_j), for
+     * profile correlation sum(y_i * x_j) and sum(x_i * y_j), where x = v * c and y = x * |x|.
+     */
+    private void computeTile(Measure measure, int rowStart, int rowEnd, int columnStart, int columnEnd, PairSink sink)
+    {
+        boolean profile = measure == Measure.PROFILE_CORRELATION;
+        double[] rowData1 = profile ? signedSquaredValues : weightedValues;
+        double[] columnData1 = weightedValues;
+        double[] rowData2 = profile ? weightedValues : confidences;
+        double[] columnData2 = profile ? signedSquaredValues : confidences;
+
+        int rows = rowEnd - rowStart;
+        int columns = columnEnd - columnStart;
+        double[] sums1 = new double[rows * columns];
+        double[] sums2 = new double[rows * columns];
+        for (int blockStart = 0; blockStart < length; blockStart += BLOCK_LENGTH) {
+            int blockEnd = Math.min(blockStart + BLOCK_LENGTH, length);
+            for (int i = rowStart; i < rowEnd; i++) {
+                int iOffset = i * length;
+                for (int j = Math.max(columnStart, i); j < columnEnd; j++) {
+                    int jOffset = j * length;
+                    double sum1 = 0;
+                    double sum2 = 0;
+                    for (int t = blockStart; t < blockEnd; t++) {
+                        sum1 += rowData1[iOffset + t] * columnData1[jOffset + t];
+                        sum2 += rowData2[iOffset + t] * columnData2[jOffset + t];
+                    }
+                    int index = (i - rowStart) * columns + (j - columnStart);
+                    sums1[index] += sum1;
+                    sums2[index] += sum2;
+                }
+            }
+        }
+        for (int i = rowStart; i < rowEnd; i++)
+            for (int j = Math.max(columnStart, i); j < columnEnd; j++) {
+                int index = (i - rowStart) * columns + (j - columnStart);
+                sink.accept(i, j, sums1[index], sums2[index]);
+            }
+    }
+
+    private double finish(Measure measure, int i, int j, double sum1, double sum2)
+    {
+        switch (measure) {
+            case COVARIANCE0:
+                return sum1 / sum2;
+            case PEARSON:
+                return sum1 / sum2 / (standardDeviations[i] * standardDeviations[j]);
+            case PROFILE_CORRELATION:
+                double totalWeight = (absoluteSums[i] + absoluteSums[j]) / 2;
+                if (totalWeight == 0)
+                    return 0;
+                double weightedCovariance = (sum1 + sum2) / 2 / totalWeight;
+                return weightedCovariance * Math.pow(totalWeight / length, .5);
+            default:
+                throw new IllegalArgumentException("Unknown measure " + measure);
+        }
+    }
+
+    /** Computes the column tiles [fromTile, toTile) of one row of tiles. **/
+    private class TileTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Measure measure;
+        private final int rowStart;
+        private final int rowEnd;
+        private final int fromTile;
+        private final int toTile;
+        private final double[][] rows;
+
+        TileTask(Measure measure, int rowStart, int rowEnd, int fromTile, int toTile, double[][] rows)
+        {
+            this.measure = measure;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+            this.fromTile = fromTile;
+            this.toTile = toTile;
+            this.rows = rows;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (toTile - fromTile > 1) {
+                int middle = (fromTile + toTile) >>> 1;
+                invokeAll(new TileTask(measure, rowStart, rowEnd, fromTile, middle, rows),
+                        new TileTask(measure, rowStart, rowEnd, middle, toTile, rows));
+                return;
+            }
+            int columnStart = rowStart + fromTile * TILE_SIZE;
+            int columnEnd = Math.min(columnStart + TILE_SIZE, numSeries);
+            computeTile(measure, rowStart, rowEnd, columnStart, columnEnd,
+                    (i, j, sum1, sum2) -> rows[i - rowStart][j - i] = finish(measure, i, j, sum1, sum2));
+        }
+    }
+}
@@ -1,33 +1,166 @@
 package gmjonker.math;
 
 import gmjonker.util.LambdaLogger;
-import lombok.AllArgsConstructor;
-import lombok.Getter;
-import lombok.NoArgsConstructor;
 
 import java.util.ArrayList;
 import java.util.List;
 
-@NoArgsConstructor
-@AllArgsConstructor
+import static gmjonker.math.GeneralMath.sqrt;
+import static gmjonker.math.NaType.NA;
+
 /**
  * Note that covariance, Pearson similarity and cosine similarity are conceptually similar. One could say that consine similarity
  * is covariance normalized for scale, and Pearson is centered covariance.
  * 
  * Note that the covariance/cosine similarity/Pearson similarity of two vectors that are all zeros is zero or undefined.
  * This may or may not be desired. If not, one could opt for someting based on euclidean distance instead.
+ *
+ * <p>By default all data points are kept. An instance created with {@link #streaming()} only keeps running
+ * confidence-weighted moments (updated Welford-style), so memory use and the cost of each query are O(1). Instances can be
+ * merged with {@link #merge(IndicationCorrelationOnline)}, for instance to combine per-thread partial correlations.
  */
 public class IndicationCorrelationOnline
 {
-    @Getter private List<Indication> series1 = new ArrayList<>();
-    @Getter private List<Indication> series2 = new ArrayList<>();
+    private List<Indication> series1 = new ArrayList<>();
+    private List<Indication> series2 = new ArrayList<>();
+
+    // Running moments, only used in streaming mode
+    private boolean streaming = false;
+    private long n = 0;
+    private double sumJointConfidence = 0;  // sum(c1 * c2)
+    private double sumJointProduct = 0;     // sum(v1 * v2 * c1 * c2)
+    private double weight1 = 0;             // sum(c1)
+    private double mean1 = 0;               // weighted mean of v1, with weights c1
+    private double squaredDeviations1 = 0;  // sum(c1 * (v1 - mean1)^2)
+    private double weight2 = 0;
+    private double mean2 = 0;
+    private double squaredDeviations2 = 0;
 
     private static final LambdaLogger log = new LambdaLogger(IndicationCorrelationOnline.class);
-    
+
+    public IndicationCorrelationOnline()
+    {
+    }
+
+    public IndicationCorrelationOnline(List<Indication> series1, List<Indication> series2)
+    {
+        this.series1 = series1;
+        this.series2 = series2;
+    }
+
+    /** Creates an instance that doesn't keep data points, but only running moments. **/
+    public static IndicationCorrelationOnline streaming()
+    {
+        IndicationCorrelationOnline indicationCorrelationOnline = new IndicationCorrelationOnline(null, null);
+        indicationCorrelationOnline.streaming = true;
+        return indicationCorrelationOnline;
+    }
+
+    public boolean isStreaming()
+    {
+        return streaming;
+    }
+
+    /** The first series, or null in streaming mode. **/
+    public List<Indication> getSeries1()
+    {
+        return series1;
+    }
+
+    /** The second series, or null in streaming mode. **/
+    public List<Indication> getSeries2()
+    {
+        return series2;
+    }
+
     public void addDataPoint(Indication indication1, Indication indication2)
     {
-        series1.add(indication1);
-        series2.add(indication2);
+        if (streaming) {
+            addMoments(indication1.value, indication1.confidence, indication2.value, indication2.confidence);
+        } else {
+            series1.add(indication1);
+            series2.add(indication2);
+        }
+    }
+
+    /**
+     * Merges the data points of {@code other} into this instance. {@code other} is not changed. If either instance is
+     * streaming, this instance becomes (or stays) streaming.
+     * @return this
+     */
+    public IndicationCorrelationOnline merge(IndicationCorrelationOnline other)
+    {
+        if ( ! streaming && ! other.streaming) {
+            series1.addAll(other.series1);
+            series2.addAll(other.series2);
+            return this;
+        }
+        if ( ! streaming)
+            switchToStreaming();
+        if ( ! other.streaming) {
+            for (int i = 0; i < other.series1.size(); i++)
+                addDataPoint(other.series1.get(i), other.series2.get(i));
+            return this;
+        }
+        n += other.n;
+        sumJointConfidence += other.sumJointConfidence;
+        sumJointProduct += other.sumJointProduct;
+        double[] merged1 = mergeMoments(weight1, mean1, squaredDeviations1, other.weight1, other.mean1, other.squaredDeviations1);
+        weight1 = merged1[0];
+        mean1 = merged1[1];
+        squaredDeviations1 = merged1[2];
+        double[] merged2 = mergeMoments(weight2, mean2, squaredDeviations2, other.weight2, other.mean2, other.squaredDeviations2);
+        weight2 = merged2[0];
+        mean2 = merged2[1];
+        squaredDeviations2 = merged2[2];
+        return this;
+    }
+
+    private void switchToStreaming()
+    {
+        List<Indication> oldSeries1 = series1;
+        List<Indication> oldSeries2 = series2;
+        streaming = true;
+        series1 = null;
+        series2 = null;
+        for (int i = 0; i < oldSeries1.size(); i++)
+            addDataPoint(oldSeries1.get(i), oldSeries2.get(i));
+    }
+
+    private void addMoments(double value1, double confidence1, double value2, double confidence2)
+    {
+        n++;
+        double jointConfidence = confidence1 * confidence2;
+        sumJointConfidence += jointConfidence;
+        sumJointProduct += value1 * value2 * jointConfidence;
+        // West's weighted incremental algorithm
+        if (confidence1 != 0) {
+            weight1 += confidence1;
+            double delta = value1 - mean1;
+            mean1 += delta * confidence1 / weight1;
+            squaredDeviations1 += confidence1 * delta * (value1 - mean1);
+        }
+        if (confidence2 != 0) {
+            weight2 += confidence2;
+            double delta = value2 - mean2;
+            mean2 += delta * confidence2 / weight2;
+            squaredDeviations2 += confidence2 * delta * (value2 - mean2);
+        }
+    }
+
+    /** Chan et al.'s parallel algorithm. @return weight, mean, squared deviations **/
+    private static double[] mergeMoments(double weightA, double meanA, double squaredDeviationsA,
+            double weightB, double meanB, double squaredDeviationsB)
+    {
+        if (weightB == 0)
+            return new double[] {weightA, meanA, squaredDeviationsA};
+        if (weightA == 0)
+            return new double[] {weightB, meanB, squaredDeviationsB};
+        double weight = weightA + weightB;
+        double delta = meanB - meanA;
+        double mean = meanA + delta * weightB / weight;
+        double squaredDeviations = squaredDeviationsA + squaredDeviationsB + delta * delta * weightA * weightB / weight;
+        return new double[] {weight, mean, squaredDeviations};
     }
 
     public double getCovariance0Simpleton()
@@ -45,6 +178,8 @@ public class IndicationCorrelationOnline
 
     public double getCovariance0()
     {
+        if (streaming)
+            return sumJointProduct / sumJointConfidence;
         assert series1.size() == series2.size();
         double total = 0;
         double n = 0;
@@ -71,6 +206,8 @@ public class IndicationCorrelationOnline
      */
     public Indication getCovariance0AsIndication()
     {
+        if (streaming)
+            return new Indication(sumJointProduct / sumJointConfidence, sumJointConfidence / n);
         assert series1.size() == series2.size();
 
         int numPairs = series1.size();
@@ -127,22 +264,34 @@ public class IndicationCorrelationOnline
     public double getPearsonSimilarity()
     {
         double cov = getCovariance0();
-        double sd1 = IndicationStats.standardDeviation(series1);
-        double sd2 = IndicationStats.standardDeviation(series2);
+        double sd1 = streaming ? weightedStandardDeviation(weight1, squaredDeviations1)
+                               : IndicationStats.standardDeviation(series1);
+        double sd2 = streaming ? weightedStandardDeviation(weight2, squaredDeviations2)
+                               : IndicationStats.standardDeviation(series2);
         log.trace("cov = {}", cov);
         log.trace("sd1 = {}", sd1);
         log.trace("sd2 = {}", sd2);
         return cov / (sd1 * sd2);
     }
     
+    /** Population standard deviation, like GeneralMath.weightedStandardDeviation. **/
+    private static double weightedStandardDeviation(double weight, double squaredDeviations)
+    {
+        if (weight == 0)
+            return NA;
+        return sqrt(squaredDeviations / weight);
+    }
+
     public long getN()
     {
-        return series1.size();
+        return streaming ? n : series1.size();
     }
 
     @Override
     public String toString()
     {
+        if (streaming)
+            return "Cov{n=" + n + ", cov0=" + getCovariance0AsIndication() + "}";
         return "Cov{" +
                 "s1=" + series1 +
                 ", s2=" + series2 +
@@ -0,0 +1,369 @@
+package gmjonker.math;
+
+import gmjonker.util.LambdaLogger;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collector;
+
+import static gmjonker.math.Indication.NA_INDICATION;
+import static gmjonker.math.NaType.isValue;
+
+/**
+ * Combines indications per key, from a stream of (key, indication, weight) triples. Does the same as building a
+ * {@code Multimap<K, Indication>} and reducing it with {@link IndicationMath#combine(Indication[], double[])} (or one of
+ * the other {@link Strategy}s), without creating a collection of boxed indications per key.
+ *
+ * <p>This is a hash aggregation: every key gets a group, and the values, confidences and weights of its triples are
+ * appended to primitive arrays, chained per group. Keys are spread over a number of partitions by hash, and every
+ * partition has its own groups, so that {@link #combine(ForkJoinPool)} can combine the partitions in parallel without
+ * any coordination. Each group is copied into a contiguous scratch slice and combined by an {@link IndicationBatchMath}
+ * kernel, so results equal those of {@code IndicationMath} within {@link IndicationBatchMath#TOLERANCE}.
+ *
+ * <p>Memory is about 28 bytes per triple plus a map entry per key, and nothing is spilled to disk. To bound it, the
+ * number of keys can be limited: adding a triple for a new key beyond {@code maxKeys} throws an
+ * {@link IllegalStateException}. To bound memory per key as well, at the cost of approximated confidences, use an
+ * {@link IndicationAccumulator} per key instead.
+ *
+ * <p>Comments are not combined. Not thread-safe: use one combiner per thread and {@link #merge(IndicationGroupCombiner)}
+ * them, as {@link #combiningByKey(Function, Function, ToDoubleFunction, Strategy)} does for parallel streams.
+ */
+@SuppressWarnings("WeakerAccess")
+public class IndicationGroupCombiner<K>
+{
+    /**
+     * Combines the indications in {@code [offset, offset + length)} and writes the result to {@code outValues[outIndex]}
+     * and {@code outConfidences[outIndex]}, with the signature of the {@link IndicationBatchMath} kernels.
+     */
+    @FunctionalInterface
+    public interface Strategy
+    {
+        /** See {@link IndicationMath#combine(Indication[], double[])}. **/
+        Strategy COMBINE = IndicationBatchMath::combine;
+        /** See {@link IndicationMath#combineNoDisagreementEffect(Indication[], double[])}. **/
+        Strategy COMBINE_NO_DISAGREEMENT_EFFECT = IndicationBatchMath::combineNoDisagreementEffect;
+        /** See {@link IndicationMath#combineStrict(Indication[], double[], boolean)}. **/
+        Strategy COMBINE_STRICT = IndicationBatchMath::combineStrict;
+
+        void combine(double[] values, double[] confidences, @Nullable double[] weights, int offset, int length,
+                double[] outValues, double[] outConfidences, int outIndex);
+    }
+
+    public static final int DEFAULT_NUM_PARTITIONS = Runtime.getRuntime().availableProcessors();
+
+    private final Strategy strategy;
+    private final int maxKeys;
+    private final Partition<K>[] partitions;
+    private int numKeys = 0;
+
+    protected static final LambdaLogger log = new LambdaLogger(IndicationGroupCombiner.class);
+
+    public IndicationGroupCombiner(Strategy strategy)
+    {
+        this(strategy, DEFAULT_NUM_PARTITIONS, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param numPartitions number of partitions that can be combined in parallel
+     * @param maxKeys largest number of keys that may be added
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public IndicationGroupCombiner(Strategy strategy, int numPartitions, int maxKeys)
+    {
+        if (numPartitions < 1)
+            throw new IllegalArgumentException("numPartitions must be > 0");
+        if (maxKeys < 0)
+            throw new IllegalArgumentException("maxKeys must be >= 0");
+        this.strategy = strategy;
+        this.maxKeys = maxKeys;
+        partitions = new Partition[numPartitions];
+        for (int p = 0; p < numPartitions; p++)
+            partitions[p] = new Partition<>();
+    }
+
+    /**
+     * Collector that combines the indications of a stream per key. Parallel streams accumulate into one combiner per
+     * thread, which are merged before combining.
+     * @param weightMapper weights have no constraints, like in IndicationMath
+     */
+    public static <T, K> Collector<T, IndicationGroupCombiner<K>, Map<K, Indication>> combiningByKey(
+            Function<? super T, ? extends K> keyMapper, Function<? super T, Indication> indicationMapper,
+            ToDoubleFunction<? super T> weightMapper, Strategy strategy)
+    {
+        return Collector.of(
+                () -> new IndicationGroupCombiner<>(strategy),
+                (combiner, t) -> combiner.add(keyMapper.apply(t), indicationMapper.apply(t), weightMapper.applyAsDouble(t)),
+                IndicationGroupCombiner::merge,
+                IndicationGroupCombiner::combine);
+    }
+
+    /** Collector that combines the indications of a stream per key, with weights 1. **/
+    public static <T, K> Collector<T, IndicationGroupCombiner<K>, Map<K, Indication>> combiningByKey(
+            Function<? super T, ? extends K> keyMapper, Function<? super T, Indication> indicationMapper, Strategy strategy)
+    {
+        return combiningByKey(keyMapper, indicationMapper, t -> 1, strategy);
+    }
+
+    public void add(K key, Indication indication)
+    {
+        add(key, indication.value, indication.confidence, 1);
+    }
+
+    public void add(K key, Indication indication, double weight)
+    {
+        add(key, indication.value, indication.confidence, weight);
+    }
+
+    public void add(K key, double value, double confidence, double weight)
+    {
+        Partition<K> partition = partitions[partition(key)];
+        Integer group = partition.groups.get(key);
+        if (group == null) {
+            if (numKeys == maxKeys)
+                throw new IllegalStateException("More than " + maxKeys + " keys");
+            group = partition.newGroup(key);
+            numKeys++;
+        }
+        partition.append(group, value, confidence, weight);
+    }
+
+    /**
+     * Adds all triples of {@code other} to this combiner. {@code other} is not changed. If both have the same number of
+     * partitions, which is the case in {@link #combiningByKey}, the triples of every partition are appended at once and
+     * only the keys are looked up, not every triple.
+     * @return this
+     */
+    public IndicationGroupCombiner<K> merge(IndicationGroupCombiner<K> other)
+    {
+        if (other.partitions.length != partitions.length) {
+            for (Partition<K> otherPartition : other.partitions)
+                for (int g = 0; g < otherPartition.keys.size(); g++) {
+                    K key = otherPartition.keys.get(g);
+                    for (int i = otherPartition.heads[g]; i >= 0; i = otherPartition.next[i])
+                        add(key, otherPartition.values[i], otherPartition.confidences[i], otherPartition.weights[i]);
+                }
+            return this;
+        }
+        // Keys are partitioned by the same hash, so partition p of other only has keys of partition p of this
+        for (int p = 0; p < partitions.length; p++) {
+            Partition<K> partition = partitions[p];
+            Partition<K> otherPartition = other.partitions[p];
+            int base = partition.appendAll(otherPartition);
+            for (int g = 0; g < otherPartition.keys.size(); g++) {
+                K key = otherPartition.keys.get(g);
+                Integer group = partition.groups.get(key);
+                if (group == null) {
+                    if (numKeys == maxKeys)
+                        throw new IllegalStateException("More than " + maxKeys + " keys");
+                    group = partition.newGroup(key);
+                    numKeys++;
+                }
+                partition.appendChain(group, base + otherPartition.heads[g], base + otherPartition.tails[g],
+                        otherPartition.lengths[g]);
+            }
+        }
+        return this;
+    }
+
+    /** Combines the indications of every key, one partition per task on the common pool. **/
+    public Map<K, Indication> combine()
+    {
+        return combine(ForkJoinPool.commonPool());
+    }
+
+    /** Combines the indications of every key, one partition per task on the given pool. **/
+    public Map<K, Indication> combine(ForkJoinPool pool)
+    {
+        log.trace("combine({} keys) in {} partitions", numKeys, partitions.length);
+        List<Callable<Map<K, Indication>>> tasks = new ArrayList<>(partitions.length);
+        for (Partition<K> partition : partitions)
+            if ( ! partition.keys.isEmpty())
+                tasks.add(() -> partition.combine(strategy));
+        Map<K, Indication> result = new HashMap<>(numKeys * 4 / 3 + 1);
+        for (Future<Map<K, Indication>> future : pool.invokeAll(tasks))
+            result.putAll(join(future));
+        return result;
+    }
+
+    /** Combines the indications of every key on the calling thread. **/
+    public Map<K, Indication> combineSequentially()
+    {
+        Map<K, Indication> result = new HashMap<>(numKeys * 4 / 3 + 1);
+        for (Partition<K> partition : partitions)
+            result.putAll(partition.combine(strategy));
+        return result;
+    }
+
+    public int getNumKeys()
+    {
+        return numKeys;
+    }
+
+    /** Number of triples added. **/
+    public long getSize()
+    {
+        long size = 0;
+        for (Partition<K> partition : partitions)
+            size += partition.size;
+        return size;
+    }
+
+    public Strategy getStrategy()
+    {
+        return strategy;
+    }
+
+    private int partition(K key)
+    {
+        int h = key == null ? 0 : key.hashCode();
+        h ^= h >>> 16;
+        return Math.floorMod(h, partitions.length);
+    }
+
+    private static <V> V join(Future<V> future)
+    {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "IndicationGroupCombiner{keys=" + numKeys + ", size=" + getSize() + ", partitions=" + partitions.length
+                + "}";
+    }
+
+    /** Groups of one partition. The triples of a group are chained from heads[g] through next, in order of adding. **/
+    private static class Partition<K>
+    {
+        final Map<K, Integer> groups = new HashMap<>();
+        final List<K> keys = new ArrayList<>();
+        int[] heads = new int[16];
+        int[] tails = new int[16];
+        int[] lengths = new int[16];
+        double[] values = new double[64];
+        double[] confidences = new double[64];
+        double[] weights = new double[64];
+        int[] next = new int[64];
+        int size = 0;
+
+        int newGroup(K key)
+        {
+            int group = keys.size();
+            if (group == heads.length) {
+                heads = Arrays.copyOf(heads, group * 2);
+                tails = Arrays.copyOf(tails, group * 2);
+                lengths = Arrays.copyOf(lengths, group * 2);
+            }
+            heads[group] = -1;
+            tails[group] = -1;
+            lengths[group] = 0;
+            keys.add(key);
+            groups.put(key, group);
+            return group;
+        }
+
+        void append(int group, double value, double confidence, double weight)
+        {
+            if (size == values.length) {
+                int newLength = size * 2;
+                values = Arrays.copyOf(values, newLength);
+                confidences = Arrays.copyOf(confidences, newLength);
+                weights = Arrays.copyOf(weights, newLength);
+                next = Arrays.copyOf(next, newLength);
+            }
+            values[size] = value;
+            confidences[size] = confidence;
+            weights[size] = weight;
+            next[size] = -1;
+            if (tails[group] < 0)
+                heads[group] = size;
+            else
+                next[tails[group]] = size;
+            tails[group] = size;
+            lengths[group]++;
+            size++;
+        }
+
+        /**
+         * Appends the triples of other, with their chains, but without linking them to any group.
+         * @return the index in this partition of the first triple of other
+         */
+        int appendAll(Partition<K> other)
+        {
+            int base = size;
+            int newSize = size + other.size;
+            if (newSize > values.length) {
+                int newLength = Math.max(newSize, values.length * 2);
+                values = Arrays.copyOf(values, newLength);
+                confidences = Arrays.copyOf(confidences, newLength);
+                weights = Arrays.copyOf(weights, newLength);
+                next = Arrays.copyOf(next, newLength);
+            }
+            System.arraycopy(other.values, 0, values, base, other.size);
+            System.arraycopy(other.confidences, 0, confidences, base, other.size);
+            System.arraycopy(other.weights, 0, weights, base, other.size);
+            for (int i = 0; i < other.size; i++)
+                next[base + i] = other.next[i] < 0 ? -1 : base + other.next[i];
+            size = newSize;
+            return base;
+        }
+
+        /** Links a chain of appended triples, from head to tail, to the end of the group. **/
+        void appendChain(int group, int head, int tail, int length)
+        {
+            if (tails[group] < 0)
+                heads[group] = head;
+            else
+                next[tails[group]] = head;
+            tails[group] = tail;
+            lengths[group] += length;
+        }
+
+        Map<K, Indication> combine(Strategy strategy)
+        {
+            int maxLength = 0;
+            for (int g = 0; g < keys.size(); g++)
+                maxLength = Math.max(maxLength, lengths[g]);
+            double[] groupValues = new double[maxLength];
+            double[] groupConfidences = new double[maxLength];
+            double[] groupWeights = new double[maxLength];
+            double[] outValue = new double[1];
+            double[] outConfidence = new double[1];
+
+            Map<K, Indication> result = new HashMap<>(keys.size() * 4 / 3 + 1);
+            for (int g = 0; g < keys.size(); g++) {
+                int length = 0;
+                for (int i = heads[g]; i >= 0; i = next[i]) {
+                    groupValues[length] = values[i];
+                    groupConfidences[length] = confidences[i];
+                    groupWeights[length] = weights[i];
+                    length++;
+                }
+                strategy.combine(groupValues, groupConfidences, groupWeights, 0, length, outValue, outConfidence, 0);
+                result.put(keys.get(g), ! isValue(outValue[0]) && ! isValue(outConfidence[0])
+                        ? NA_INDICATION
+                        : new Indication(outValue[0], outConfidence[0]));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package gmjonker.math;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static gmjonker.math.NaType.isValue;
+
+/**
+ * Flyweight factory for {@link ImmutableIndication}s. Indications whose value and confidence lie on a quantization grid
+ * are shared: the first one for a grid point is kept, and returned for every later request for that point. Indications
+ * off the grid are allocated as usual. NA/NA and NA/0 give {@link Indication#NA_INDICATION} and
+ * {@link Indication#UNKNOWN}.
+ *
+ * <p>The grid divides value range (-1,1) in steps of {@code valueStep} and confidence range (0,1) in steps of
+ * {@code confidenceStep}, so with steps .25 it holds 9 x 5 indications. A number is on the grid if it is within
+ * {@link #TOLERANCE} of a grid point. Cache slots are filled lazily and thread-safely.
+ *
+ * <p>Interned instances are shared, so their public fields must not be written to. Note that ImmutableIndications are
+ * not {@link Indication#equals(Object)} to plain Indications.
+ *
+ * <p>Hits and misses are counted, so the hit rate and the heap saved in steady state can be measured.
+ */
+@SuppressWarnings("WeakerAccess")
+public class IndicationInterner
+{
+    public static final double TOLERANCE = 1e-12;
+    /** Shallow size of an Indication on a 64-bit JVM with compressed oops. **/
+    public static final int INDICATION_BYTES = 32;
+    private static final int MAX_GRID_SIZE = 1 << 22;
+
+    private final double valueStep;
+    private final double confidenceStep;
+    private final int numValues;
+    private final int numConfidences;
+    private final AtomicReferenceArray<ImmutableIndication> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public IndicationInterner(double valueStep, double confidenceStep)
+    {
+        this.valueStep = valueStep;
+        this.confidenceStep = confidenceStep;
+        numValues = numSteps(2, valueStep) + 1;
+        numConfidences = numSteps(1, confidenceStep) + 1;
+        if ((long) numValues * numConfidences > MAX_GRID_SIZE)
+            throw new IllegalArgumentException("Grid of " + numValues + " x " + numConfidences + " is too large");
+        cache = new AtomicReferenceArray<>(numValues * numConfidences);
+    }
+
+    public Indication intern(double value, double confidence)
+    {
+        if ( ! isValue(value)) {
+            if ( ! isValue(confidence)) {
+                hits.increment();
+                return Indication.NA_INDICATION;
+            }
+            if (confidence == 0) {
+                hits.increment();
+                return Indication.UNKNOWN;
+            }
+        }
+        int valueIndex = gridIndex(value + 1, valueStep, numValues);
+        int confidenceIndex = gridIndex(confidence, confidenceStep, numConfidences);
+        if (valueIndex < 0 || confidenceIndex < 0) {
+            misses.increment();
+            return new ImmutableIndication(value, confidence);
+        }
+        int slot = valueIndex * numConfidences + confidenceIndex;
+        ImmutableIndication cached = cache.get(slot);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        // The first indication for a grid point is kept, so it may not be the one of a competing thread
+        ImmutableIndication indication = new ImmutableIndication(value, confidence);
+        if ( ! cache.compareAndSet(slot, null, indication))
+            indication = cache.get(slot);
+        misses.increment();
+        return indication;
+    }
+
+    /** The comment of the indication is dropped. **/
+    public Indication intern(Indication indication)
+    {
+        return intern(indication.value, indication.confidence);
+    }
+
+    public double getValueStep()
+    {
+        return valueStep;
+    }
+
+    public double getConfidenceStep()
+    {
+        return confidenceStep;
+    }
+
+    /** Number of requests that returned a shared instance. **/
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /** Number of requests that allocated, including the first request for every grid point. **/
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    public double getHitRate()
+    {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /** Estimate of the heap that allocating every hit would have taken. **/
+    public long getBytesSaved()
+    {
+        return getHits() * INDICATION_BYTES;
+    }
+
+    /** Number of grid points that have a shared instance. **/
+    public int getCachedCount()
+    {
+        int count = 0;
+        for (int i = 0; i < cache.length(); i++)
+            if (cache.get(i) != null)
+                count++;
+        return count;
+    }
+
+    public void resetStatistics()
+    {
+        hits.reset();
+        misses.reset();
+    }
+
+    /** Index of the grid point of x in [0, numPoints), or -1 if x is not on the grid or NA. **/
+    private static int gridIndex(double x, double step, int numPoints)
+    {
+        // Math.round(NaN) is 0, which would put NA on the first grid point
+        if ( ! isValue(x))
+            return -1;
+        double position = x / step;
+        long index = Math.round(position);
+        if (index < 0 || index >= numPoints || Math.abs(index * step - x) > TOLERANCE)
+            return -1;
+        return (int) index;
+    }
+
+    private static int numSteps(double range, double step)
+    {
+        if ( ! (step > 0))
+            throw new IllegalArgumentException("Step must be positive: " + step);
+        double numSteps = range / step;
+        if (Math.abs(numSteps - Math.round(numSteps)) > 1e-9)
+            throw new IllegalArgumentException("Step " + step + " does not divide range " + range);
+        return (int) Math.round(numSteps);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("IndicationInterner{grid=%sx%s, hits=%d, misses=%d, hitRate=%.3f}", valueStep,
+                confidenceStep, getHits(), getMisses(), getHitRate());
+    }
+}
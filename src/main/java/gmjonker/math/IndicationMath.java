@@ -7,8 +7,8 @@ import javax.annotation.Nullable;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
-import java.util.StringJoiner;
 
+import static gmjonker.math.CombineMetrics.Operation.*;
 import static gmjonker.math.GeneralMath.*;
 import static gmjonker.math.Indication.NA_INDICATION;
 import static gmjonker.math.NaType.NA;
@@ -65,6 +65,17 @@ public class IndicationMath
         return combine(indications.toArray(indicationArray), null, true);
     }
 
+    /**
+     * Like {@link #combineWithComments(Collection)}, but the comment is not rendered while combining: the result keeps
+     * a {@link Provenance}, which {@link Indication#getComment()} renders when it is first called. The public
+     * {@code comment} field of the result is "".
+     **/
+    public static Indication combineWithProvenance(Collection<Indication> indications)
+    {
+        Indication[] indicationArray = indications.toArray(new Indication[indications.size()]);
+        return withProvenance(combine(indicationArray, null, false), indicationArray);
+    }
+
     /**
      * Infers a new indication based on given indications.
      *
@@ -109,6 +120,28 @@ public class IndicationMath
      * <p>Indication values in range (-1,1). Weights have no constraints (will be normalized on the fly).
      **/
     public static Indication combine(Indication[] indications, @Nullable double[] weights, boolean combineComments)
+    {
+        return combine(indications, weights, combineComments, SigmoidStrategy.EXACT);
+    }
+
+    /**
+     * See {@link #combine(Indication[], double[], boolean)}, accumulating confidences with the sigmoid and logit of
+     * given strategy instead of the exact ones, for instance {@link SigmoidStrategy#TABLE_CUBIC}.
+     **/
+    public static Indication combine(Indication[] indications, @Nullable double[] weights, boolean combineComments,
+            SigmoidStrategy strategy)
+    {
+        if ( ! CombineMetrics.isEnabled())
+            return combineUninstrumented(indications, weights, combineComments, strategy);
+        long start = System.nanoTime();
+        Indication result = combineUninstrumented(indications, weights, combineComments, strategy);
+        CombineMetrics.record(INDICATION_COMBINE, indications == null ? 0 : indications.length,
+                System.nanoTime() - start);
+        return result;
+    }
+
+    private static Indication combineUninstrumented(Indication[] indications, @Nullable double[] weights,
+            boolean combineComments, SigmoidStrategy strategy)
     {
         if (isEmpty(indications) || allElementsSatisfy(indications, Indication::isNa))
             return NA_INDICATION;
@@ -130,20 +163,13 @@ public class IndicationMath
             adjustedWeights[i] = weights == null ? 1
                                                  : maxWeight > 1 ? weights[i] * 1 / maxWeight : weights[i];
             confidences[i] = indications[i].confidence * adjustedWeights[i];
-            logitConfidences[i] = logit(confidences[i], sigmoidRangeLow, sigmoidRangeHigh);
+            logitConfidences[i] = strategy.logit(confidences[i], sigmoidRangeLow, sigmoidRangeHigh);
         }
 
-        String comment = "";
-        if (combineComments) {
-            StringJoiner stringJoiner = new StringJoiner(",");
-            for (Indication indication : indications) {
-                stringJoiner.add(indication.comment);
-            }
-            comment = stringJoiner.toString();
-        }
+        Provenance provenance = combineComments ? Provenance.of(indications) : null;
 
         if (sum(confidences) == 0) {
-            return new Indication(mean(values), 0, comment);
+            return CombinedIndication.of(mean(values), 0, provenance);
         }
 
         double weightedMean = weightedMeanIgnoreNAs(values, confidences);
@@ -171,10 +197,10 @@ public class IndicationMath
             log.trace("      addtn: {}", () -> totalConfAddition);
         }
         log.trace("    lgttc: {}", totalConf);
-        totalConf = sigmoid(totalConf, sigmoidRangeLow, sigmoidRangeHigh);
+        totalConf = strategy.sigmoid(totalConf, sigmoidRangeLow, sigmoidRangeHigh);
         totalConf = limit(totalConf, 0, 1);
 
-        Indication result = new Indication(weightedMean, totalConf, comment);
+        Indication result = CombinedIndication.of(weightedMean, totalConf, provenance);
         log.trace("    totco: {}", totalConf);
         log.trace("    rs-11: {}", result);
 
@@ -216,6 +242,28 @@ public class IndicationMath
      * <p>Indication values in range (-1,1). Weights have no constraints (will be normalized on the fly).
      **/
     public static Indication combineNoDisagreementEffect(Indication[] indications, @Nullable double[] weights)
+    {
+        return combineNoDisagreementEffect(indications, weights, SigmoidStrategy.EXACT);
+    }
+
+    /**
+     * See {@link #combineNoDisagreementEffect(Indication[], double[])}, accumulating confidences with the sigmoid and
+     * logit of given strategy instead of the exact ones.
+     **/
+    public static Indication combineNoDisagreementEffect(Indication[] indications, @Nullable double[] weights,
+            SigmoidStrategy strategy)
+    {
+        if ( ! CombineMetrics.isEnabled())
+            return combineNoDisagreementEffectUninstrumented(indications, weights, strategy);
+        long start = System.nanoTime();
+        Indication result = combineNoDisagreementEffectUninstrumented(indications, weights, strategy);
+        CombineMetrics.record(INDICATION_COMBINE_NO_DISAGREEMENT_EFFECT, indications == null ? 0 : indications.length,
+                System.nanoTime() - start);
+        return result;
+    }
+
+    private static Indication combineNoDisagreementEffectUninstrumented(Indication[] indications,
+            @Nullable double[] weights, SigmoidStrategy strategy)
     {
         if (isEmpty(indications) || allElementsSatisfy(indications, Indication::isNa))
             return NA_INDICATION;
@@ -239,7 +287,7 @@ public class IndicationMath
             adjustedWeights[i] = weights == null ? 1
                                                  : maxWeight > 1 ? weights[i] * 1 / maxWeight : weights[i];
             confidences[i] = indications[i].confidence * adjustedWeights[i];
-            logitConfidences[i] = logit(confidences[i], sigmoidRangeLow, sigmoidRangeHigh);
+            logitConfidences[i] = strategy.logit(confidences[i], sigmoidRangeLow, sigmoidRangeHigh);
         }
 
         if (sum(confidences) == 0)
@@ -257,7 +305,7 @@ public class IndicationMath
             log.trace("      logtco:{}", logitConfidences[i]);
         }
         log.trace("    lgttc: {}", totalConf);
-        totalConf = sigmoid(totalConf, sigmoidRangeLow, sigmoidRangeHigh);
+        totalConf = strategy.sigmoid(totalConf, sigmoidRangeLow, sigmoidRangeHigh);
         totalConf = limit(totalConf, 0, 1);
         Indication result = new Indication(weightedMean, totalConf);
         log.trace("    totco: {}", totalConf);
@@ -279,6 +327,28 @@ public class IndicationMath
      * have relatively more effect on the end result, and the highest weighted indications relatively less.</p>
      **/
     public static Indication combineTightAndNoDisagreementEffect(Indication[] indications, @Nullable double[] weights)
+    {
+        return combineTightAndNoDisagreementEffect(indications, weights, SigmoidStrategy.EXACT);
+    }
+
+    /**
+     * See {@link #combineTightAndNoDisagreementEffect(Indication[], double[])}, accumulating confidences with the
+     * sigmoid and logit of given strategy instead of the exact ones.
+     **/
+    public static Indication combineTightAndNoDisagreementEffect(Indication[] indications, @Nullable double[] weights,
+            SigmoidStrategy strategy)
+    {
+        if ( ! CombineMetrics.isEnabled())
+            return combineTightAndNoDisagreementEffectUninstrumented(indications, weights, strategy);
+        long start = System.nanoTime();
+        Indication result = combineTightAndNoDisagreementEffectUninstrumented(indications, weights, strategy);
+        CombineMetrics.record(INDICATION_COMBINE_TIGHT_AND_NO_DISAGREEMENT_EFFECT,
+                indications == null ? 0 : indications.length, System.nanoTime() - start);
+        return result;
+    }
+
+    private static Indication combineTightAndNoDisagreementEffectUninstrumented(Indication[] indications,
+            @Nullable double[] weights, SigmoidStrategy strategy)
     {
         if (isEmpty(indications) || allElementsSatisfy(indications, Indication::isNa))
             return NA_INDICATION;
@@ -299,8 +369,8 @@ public class IndicationMath
             for (int i = 0; i < indications.length; i++) {
                 values[i] = indications[i].value;
                 adjustedConfidences[i] = indications[i].confidence;
-                logitConfidences[i] = logit(adjustedConfidences[i], sigmoidRangeLow, sigmoidRangeHigh);
-                maxLogitConfidences[i] = logit(1, sigmoidRangeLow, sigmoidRangeHigh);
+                logitConfidences[i] = strategy.logit(adjustedConfidences[i], sigmoidRangeLow, sigmoidRangeHigh);
+                maxLogitConfidences[i] = strategy.logit(1, sigmoidRangeLow, sigmoidRangeHigh);
                 log.trace("i = {}", i);
                 log.trace("adjustedConfidences[i] = {}", adjustedConfidences[i]);
                 log.trace("logitConfidences[i] = {}", logitConfidences[i]);
@@ -313,8 +383,9 @@ public class IndicationMath
             for (int i = 0; i < indications.length; i++) {
                 values[i] = indications[i].value;
                 adjustedConfidences[i] = indications[i].confidence * weights[i] * weightAdjustment;
-                logitConfidences[i] = logit(adjustedConfidences[i], sigmoidRangeLow, sigmoidRangeHigh);
-                maxLogitConfidences[i] = logit(weights[i] * weightAdjustment, sigmoidRangeLow, sigmoidRangeHigh);
+                logitConfidences[i] = strategy.logit(adjustedConfidences[i], sigmoidRangeLow, sigmoidRangeHigh);
+                maxLogitConfidences[i] =
+                        strategy.logit(weights[i] * weightAdjustment, sigmoidRangeLow, sigmoidRangeHigh);
                 log.trace("i = {}", i);
                 log.trace("adjustedConfidences[i] = {}", adjustedConfidences[i]);
                 log.trace("logitConfidences[i] = {}", logitConfidences[i]);
@@ -325,7 +396,7 @@ public class IndicationMath
         // The max total logit we can get is now sum(maxLogits). We want that to be logit(1), so that if all indications are
         // 1/1, the end result is 1/1.
         double sumMaxLogits = sum(maxLogitConfidences);
-        double logitAdjustment = logit(1, sigmoidRangeLow, sigmoidRangeHigh) / sumMaxLogits;
+        double logitAdjustment = strategy.logit(1, sigmoidRangeLow, sigmoidRangeHigh) / sumMaxLogits;
         log.trace("sumMaxLogits = {}", sumMaxLogits);
         for (int i = 0; i < logitConfidences.length; i++) {
             adjustedLogitConfidences[i] = logitAdjustment * logitConfidences[i];
@@ -347,7 +418,7 @@ public class IndicationMath
             log.trace("      adjcon:{}", adjustedConfidences[i]);
             log.trace("      logtco:{}", logitConfidences[i]);
         }
-        double totalConf = sigmoid(totalLogitConf, sigmoidRangeLow, sigmoidRangeHigh);
+        double totalConf = strategy.sigmoid(totalLogitConf, sigmoidRangeLow, sigmoidRangeHigh);
         totalConf = limit(totalConf, 0, 1);
         Indication result = new Indication(weightedMean, totalConf);
         log.trace("    lgttc: {}", totalLogitConf);
@@ -378,6 +449,20 @@ public class IndicationMath
         return combineStrict(indications.toArray(indicationArray), null, combineComments);
     }
 
+    /** Like {@link #combineStrict(Collection, boolean)}, with a lazy comment as in {@link #combineWithProvenance}. **/
+    public static Indication combineStrictWithProvenance(Collection<Indication> indications)
+    {
+        Indication[] indicationArray = indications.toArray(new Indication[indications.size()]);
+        return withProvenance(combineStrict(indicationArray, null, false), indicationArray);
+    }
+
+    private static Indication withProvenance(Indication result, Indication[] indications)
+    {
+        if (result == NA_INDICATION)
+            return result;
+        return CombinedIndication.lazy(result.value, result.confidence, Provenance.of(indications));
+    }
+
     /**
      * Infers a new indication based on given indications, where indications may be weighted to indicate that some indications should have
      * more weight in the outcome than others.
@@ -390,6 +475,17 @@ public class IndicationMath
      * <p>Indication values in range (-1,1). Weights have no constraints (will be normalized on the fly).
      **/
     public static Indication combineStrict(Indication[] indications, @Nullable double[] weights, boolean combineComments)
+    {
+        if ( ! CombineMetrics.isEnabled())
+            return combineStrictUninstrumented(indications, weights, combineComments);
+        long start = System.nanoTime();
+        Indication result = combineStrictUninstrumented(indications, weights, combineComments);
+        CombineMetrics.record(INDICATION_COMBINE_STRICT, indications == null ? 0 : indications.length,
+                System.nanoTime() - start);
+        return result;
+    }
+
+    private static Indication combineStrictUninstrumented(Indication[] indications, @Nullable double[] weights, boolean combineComments)
     {
         if (isEmpty(indications) || allElementsSatisfy(indications, Indication::isNa))
             return NA_INDICATION;
@@ -415,17 +511,10 @@ public class IndicationMath
         }
         log.trace("    logitConfidences = {}", logitConfidences);
 
-        String comment = "";
-        if (combineComments) {
-            StringJoiner stringJoiner = new StringJoiner(",");
-            for (Indication indication : indications) {
-                stringJoiner.add(indication.comment);
-            }
-            comment = stringJoiner.toString();
-        }
+        Provenance provenance = combineComments ? Provenance.of(indications) : null;
 
         if (sum(confidences) == 0) {
-            return new Indication(mean(values), 0, comment);
+            return CombinedIndication.of(mean(values), 0, provenance);
         }
 
         double weightedMean = weightedMeanIgnoreNAs(values, logitConfidences);
@@ -456,7 +545,7 @@ public class IndicationMath
         double totalConf = fastSigmoidAlternative(totalLogitConf, sigmoidRangeLow, sigmoidRangeHigh);
         totalConf = limit(totalConf, 0, 1);
 
-        Indication result = new Indication(weightedMean, totalConf, comment);
+        Indication result = CombinedIndication.of(weightedMean, totalConf, provenance);
         log.trace("    lgttc: {}", totalLogitConf);
         log.trace("    totco: {}", totalConf);
         log.trace("    rs-11: {}", result);
@@ -5,10 +5,9 @@ import gmjonker.util.LambdaLogger;
 import javax.annotation.Nullable;
 import java.util.Arrays;
 
+import static gmjonker.math.CombineMetrics.Operation.*;
 import static gmjonker.math.GeneralMath.*;
 import static gmjonker.math.NaType.NA;
-import static gmjonker.math.SigmoidMath.fastLogitAlternative;
-import static gmjonker.math.SigmoidMath.fastSigmoidAlternative;
 
 /**
  * Alternative to IndicationMath using faster math. The results are a bit different, so take care when switching from
@@ -41,6 +40,27 @@ public class IndicationMathFast
      * <p>Indication values in range (-1,1). Weights have no constraints (will be normalized on the fly).
      **/
     public static Indication combine(Indication[] indications, @Nullable double[] weights)
+    {
+        return combine(indications, weights, SigmoidStrategy.FAST_ALTERNATIVE);
+    }
+
+    /**
+     * See {@link #combine(Indication[], double[])}, accumulating confidences with the sigmoid and logit of given
+     * strategy instead of the fast alternatives.
+     **/
+    public static Indication combine(Indication[] indications, @Nullable double[] weights, SigmoidStrategy strategy)
+    {
+        if ( ! CombineMetrics.isEnabled())
+            return combineUninstrumented(indications, weights, strategy);
+        long start = System.nanoTime();
+        Indication result = combineUninstrumented(indications, weights, strategy);
+        CombineMetrics.record(INDICATION_FAST_COMBINE, indications == null ? 0 : indications.length,
+                System.nanoTime() - start);
+        return result;
+    }
+
+    private static Indication combineUninstrumented(Indication[] indications, @Nullable double[] weights,
+            SigmoidStrategy strategy)
     {
         log.trace("indications: {}", () -> Arrays.toString(indications));
         log.trace("weights:{}", () -> Arrays.toString(weights));
@@ -57,7 +77,7 @@ public class IndicationMathFast
             adjustedWeights[i] = weights == null ? 1
                                                  : maxWeight > 1 ? weights[i] * 1 / maxWeight : weights[i];
             confidences[i] = indications[i].confidence * adjustedWeights[i];
-            logitConfidences[i] = fastLogitAlternative(confidences[i], SIGMOID_RANGE_LOW, SIGMOID_RANGE_HIGH);
+            logitConfidences[i] = strategy.logit(confidences[i], SIGMOID_RANGE_LOW, SIGMOID_RANGE_HIGH);
         }
 
         if (sum(confidences) == 0)
@@ -84,7 +104,7 @@ public class IndicationMathFast
             log.trace("addtn: {}", totalConfAddition);
         }
         log.trace("lgttc: {}", totalConf);
-        totalConf = fastSigmoidAlternative(totalConf, SIGMOID_RANGE_LOW, SIGMOID_RANGE_HIGH);
+        totalConf = strategy.sigmoid(totalConf, SIGMOID_RANGE_LOW, SIGMOID_RANGE_HIGH);
         log.trace("totco: {}", totalConf);
         totalConf = limit(totalConf, 0, 1);
         return new Indication(weightedMean, totalConf);
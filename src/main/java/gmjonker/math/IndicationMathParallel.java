@@ -0,0 +1,184 @@
+package gmjonker.math;
+
+import gmjonker.util.LambdaLogger;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+import static gmjonker.math.GeneralMath.abs;
+import static gmjonker.math.GeneralMath.limit;
+import static gmjonker.math.Indication.NA_INDICATION;
+import static gmjonker.math.IndicationBatchMath.COMBINE_RANGE_HIGH;
+import static gmjonker.math.IndicationBatchMath.COMBINE_RANGE_LOW;
+import static gmjonker.math.IndicationBatchMath.finiteWeight;
+import static gmjonker.math.IndicationBatchMath.logit;
+import static gmjonker.math.IndicationBatchMath.sigmoid;
+import static gmjonker.math.IndicationBatchMath.weightedMean;
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.NaType.isValue;
+
+/**
+ * Parallel variant of {@link IndicationMath#combine(Indication[], double[], boolean)} for very large arrays of
+ * indications. Both the weighted mean pass and the agreement/logit confidence pass are split over a {@link ForkJoinPool}.
+ *
+ * <p>Below a size threshold the work is done sequentially by {@code IndicationMath} itself. Above it, the array is split
+ * in halves until chunks of at most {@link #CHUNK_SIZE} indications remain, and partial sums are added left to right.
+ * Because the split points only depend on the array size, the summation order, and therefore the result, does not depend
+ * on the number of threads. Results differ from those of {@code IndicationMath} only by floating-point rounding.
+ * Confidences are always accumulated with the exact sigmoid and logit; there is no variant that takes a
+ * {@link SigmoidStrategy}.
+ */
+@SuppressWarnings("WeakerAccess")
+public class IndicationMathParallel
+{
+    /** Arrays smaller than this are combined sequentially. **/
+    public static final int DEFAULT_THRESHOLD = 1 << 15;
+    /** Size of the chunks that are summed sequentially. **/
+    public static final int CHUNK_SIZE = 1 << 12;
+
+    protected static final LambdaLogger log = new LambdaLogger(IndicationMathParallel.class);
+
+    /**
+     * See {@link IndicationMath#combine(Indication[], double[])}.
+     **/
+    public static Indication combine(Indication[] indications, @Nullable double[] weights)
+    {
+        return combine(indications, weights, false);
+    }
+
+    /**
+     * See {@link IndicationMath#combine(Indication[], double[], boolean)}. Uses the common pool.
+     **/
+    public static Indication combine(Indication[] indications, @Nullable double[] weights, boolean combineComments)
+    {
+        return combine(indications, weights, combineComments, ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * See {@link IndicationMath#combine(Indication[], double[], boolean)}.
+     * @param threshold arrays smaller than this are combined sequentially
+     **/
+    public static Indication combine(Indication[] indications, @Nullable double[] weights, boolean combineComments,
+            ForkJoinPool pool, int threshold)
+    {
+        if (indications == null || indications.length < threshold)
+            return IndicationMath.combine(indications, weights, combineComments);
+
+        log.trace("combine({} indications) on pool with parallelism {}", indications.length, pool.getParallelism());
+        int n = indications.length;
+
+        double maxWeight = NA;
+        if (weights != null) {
+            maxWeight = pool.invoke(new SplitTask(0, n, (from, to) -> {
+                double max = NA;
+                for (int i = from; i < to; i++)
+                    if ( ! isValue(max) || weights[i] > max)
+                        max = weights[i];
+                return new double[] {max};
+            }, (left, right) -> ! isValue(left[0]) || right[0] > left[0] ? right : left))[0];
+        }
+        final double finalMaxWeight = maxWeight;
+
+        // Pass 1: sums needed for the weighted mean and the special cases
+        double[] sums = pool.invoke(new SplitTask(0, n, (from, to) -> {
+            double naCount = 0;
+            double sumConfidences = 0;
+            double sumValues = 0;
+            double weightedSum = 0;
+            double totalWeight = 0;
+            for (int i = from; i < to; i++) {
+                Indication indication = indications[i];
+                if (indication.isNa())
+                    naCount++;
+                double value = indication.value;
+                double confidence = indication.confidence * adjustedWeight(weights, i, finalMaxWeight);
+                sumConfidences += confidence;
+                sumValues += value;
+                if (isValue(value) && isValue(confidence)) {
+                    double weight = finiteWeight(confidence);
+                    weightedSum += weight * value;
+                    totalWeight += weight;
+                }
+            }
+            return new double[] {naCount, sumConfidences, sumValues, weightedSum, totalWeight};
+        }, IndicationMathParallel::add));
+
+        if (sums[0] == n)
+            return NA_INDICATION;
+
+        Provenance provenance = combineComments ? Provenance.of(indications) : null;
+
+        if (sums[1] == 0)
+            return CombinedIndication.of(sums[2] / n, 0, provenance);
+        double weightedMean = weightedMean(sums[3], sums[4]);
+
+        // Pass 2: agreement-weighted logit confidences
+        double totalConf = pool.invoke(new SplitTask(0, n, (from, to) -> {
+            double total = 0;
+            for (int i = from; i < to; i++) {
+                double value = indications[i].value;
+                double confidence = indications[i].confidence * adjustedWeight(weights, i, finalMaxWeight);
+                if ( ! isValue(value) || ! isValue(confidence))
+                    continue;
+                double agreement = 1 - abs(value - weightedMean);
+                total += logit(confidence, COMBINE_RANGE_LOW, COMBINE_RANGE_HIGH) * agreement * agreement;
+            }
+            return new double[] {total};
+        }, IndicationMathParallel::add))[0];
+
+        totalConf = limit(sigmoid(totalConf, COMBINE_RANGE_LOW, COMBINE_RANGE_HIGH), 0, 1);
+        return CombinedIndication.of(weightedMean, totalConf, provenance);
+    }
+
+    private static double adjustedWeight(@Nullable double[] weights, int i, double maxWeight)
+    {
+        if (weights == null)
+            return 1;
+        return maxWeight > 1 ? weights[i] * 1 / maxWeight : weights[i];
+    }
+
+    private static double[] add(double[] left, double[] right)
+    {
+        for (int i = 0; i < left.length; i++)
+            left[i] += right[i];
+        return left;
+    }
+
+    private interface Chunk
+    {
+        double[] compute(int from, int to);
+    }
+
+    /** Splits [from, to) in halves until chunks of at most CHUNK_SIZE remain, and combines results left to right. **/
+    private static class SplitTask extends RecursiveTask<double[]>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final Chunk chunk;
+        private final BinaryOperator<double[]> combiner;
+
+        SplitTask(int from, int to, Chunk chunk, BinaryOperator<double[]> combiner)
+        {
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected double[] compute()
+        {
+            if (to - from <= CHUNK_SIZE)
+                return chunk.compute(from, to);
+            int middle = (from + to) >>> 1;
+            SplitTask left = new SplitTask(from, middle, chunk, combiner);
+            left.fork();
+            double[] right = new SplitTask(middle, to, chunk, combiner).compute();
+            return combiner.apply(left.join(), right);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package gmjonker.math;
+
+import gmjonker.util.LambdaLogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static gmjonker.math.NaType.NA;
+
+/**
+ * Fixed-capacity store of indications keyed by int id, kept off-heap in a memory-mapped file: 16 bytes per indication,
+ * without object headers or comments.
+ *
+ * <p>The file has a small header, followed by a column of all values and a column of all confidences, as little-endian
+ * doubles. Ids that were never set hold NA/NA. Opening an existing file only maps it, so it is instant regardless of
+ * size, and the operating system pages data in as needed.
+ *
+ * <p>Columns are mapped in segments of {@link #DEFAULT_SEGMENT_SIZE} ids, because a single mapping can't exceed 2GB.
+ * {@link #values(int, int)} and {@link #confidences(int, int)} give zero-copy views on a range of ids within one segment,
+ * which can be passed to the DoubleBuffer kernels in {@link IndicationBatchMath}.
+ *
+ * <p>Concurrent access to different ids is safe; concurrent writes to the same id are not.
+ */
+@SuppressWarnings("WeakerAccess")
+public class IndicationStore implements Closeable
+{
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 27;
+
+    private static final long MAGIC = 0x496e645374723031L; // "IndStr01"
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_DATA_SIZE = 12; // magic and capacity
+
+    public interface IndicationConsumer
+    {
+        void accept(int id, double value, double confidence);
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int capacity;
+    private final int segmentSize;
+    private final DoubleBuffer[] valueSegments;
+    private final DoubleBuffer[] confidenceSegments;
+    private final MappedByteBuffer[] mappings;
+
+    protected static final LambdaLogger log = new LambdaLogger(IndicationStore.class);
+
+    private IndicationStore(Path path, FileChannel channel, int capacity, int segmentSize) throws IOException
+    {
+        this.path = path;
+        this.channel = channel;
+        this.capacity = capacity;
+        this.segmentSize = segmentSize;
+        int numSegments = (int) (((long) capacity + segmentSize - 1) / segmentSize);
+        valueSegments = new DoubleBuffer[numSegments];
+        confidenceSegments = new DoubleBuffer[numSegments];
+        mappings = new MappedByteBuffer[2 * numSegments];
+        for (int s = 0; s < numSegments; s++) {
+            int size = Math.min(segmentSize, capacity - s * segmentSize);
+            long offset = (long) s * segmentSize * 8;
+            valueSegments[s] = map(2 * s, HEADER_SIZE + offset, size);
+            confidenceSegments[s] = map(2 * s + 1, HEADER_SIZE + (long) capacity * 8 + offset, size);
+        }
+    }
+
+    /**
+     * Opens the store in the given file, or creates it with the given capacity if the file doesn't exist.
+     * @throws IOException if the file exists with another capacity, or is not a complete indication store
+     */
+    public static IndicationStore open(Path path, int capacity) throws IOException
+    {
+        return open(path, capacity, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /** Opens an existing store. **/
+    public static IndicationStore open(Path path) throws IOException
+    {
+        if ( ! Files.exists(path))
+            throw new IOException("No indication store at " + path);
+        return open(path, 0, DEFAULT_SEGMENT_SIZE);
+    }
+
+    static IndicationStore open(Path path, int capacity, int segmentSize) throws IOException
+    {
+        boolean exists = Files.exists(path) && Files.size(path) > 0;
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (exists) {
+                readFully(channel, header, path);
+                header.flip();
+                if (header.getLong() != MAGIC)
+                    throw new IOException(path + " is not an indication store");
+                int storedCapacity = header.getInt();
+                if (storedCapacity <= 0)
+                    throw new IOException(path + " has invalid capacity " + storedCapacity);
+                if (capacity > 0 && capacity != storedCapacity)
+                    throw new IOException(path + " has capacity " + storedCapacity + ", not " + capacity);
+                // Mapping read-write would silently grow a truncated file, with zeros instead of NAs
+                long expectedSize = HEADER_SIZE + 16L * storedCapacity;
+                if (channel.size() < expectedSize)
+                    throw new IOException(path + " is truncated: " + channel.size() + " bytes, expected "
+                            + expectedSize);
+                log.debug("Opened indication store {} with capacity {}", path, storedCapacity);
+                return new IndicationStore(path, channel, storedCapacity, segmentSize);
+            }
+            if (capacity <= 0)
+                throw new IllegalArgumentException("Capacity must be positive");
+            header.putLong(MAGIC).putInt(capacity).rewind();
+            channel.write(header, 0);
+            IndicationStore store = new IndicationStore(path, channel, capacity, segmentSize);
+            store.fill(NA, NA);
+            log.debug("Created indication store {} with capacity {}", path, capacity);
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Reads the header, or throws if the file is shorter. **/
+    private static void readFully(FileChannel channel, ByteBuffer header, Path path) throws IOException
+    {
+        header.limit(HEADER_DATA_SIZE);
+        while (header.hasRemaining())
+            if (channel.read(header, header.position()) < 0)
+                throw new IOException(path + " is truncated: no complete header");
+    }
+
+    public int capacity()
+    {
+        return capacity;
+    }
+
+    public Path getPath()
+    {
+        return path;
+    }
+
+    public Indication get(int id)
+    {
+        return new Indication(getValue(id), getConfidence(id));
+    }
+
+    public double getValue(int id)
+    {
+        checkId(id);
+        return valueSegments[id / segmentSize].get(id % segmentSize);
+    }
+
+    public double getConfidence(int id)
+    {
+        checkId(id);
+        return confidenceSegments[id / segmentSize].get(id % segmentSize);
+    }
+
+    /** The comment of the indication is not stored. **/
+    public void set(int id, Indication indication)
+    {
+        set(id, indication.value, indication.confidence);
+    }
+
+    public void set(int id, double value, double confidence)
+    {
+        checkId(id);
+        valueSegments[id / segmentSize].put(id % segmentSize, value);
+        confidenceSegments[id / segmentSize].put(id % segmentSize, confidence);
+    }
+
+    /** Calls the consumer for all ids in [from, to), in order. **/
+    public void scan(int from, int to, IndicationConsumer consumer)
+    {
+        if (from < 0 || to > capacity || from > to)
+            throw new IndexOutOfBoundsException("Range [" + from + "," + to + ") out of [0," + capacity + ")");
+        int id = from;
+        while (id < to) {
+            int s = id / segmentSize;
+            DoubleBuffer values = valueSegments[s];
+            DoubleBuffer confidences = confidenceSegments[s];
+            int segmentEnd = (int) Math.min(to, (long) (s + 1) * segmentSize);
+            for (; id < segmentEnd; id++)
+                consumer.accept(id, values.get(id % segmentSize), confidences.get(id % segmentSize));
+        }
+    }
+
+    /** Calls the consumer for all ids, in order. **/
+    public void forEach(IndicationConsumer consumer)
+    {
+        scan(0, capacity, consumer);
+    }
+
+    /**
+     * Zero-copy view on the values of ids [from, from + length), which must lie within one segment. Index 0 of the view
+     * is id {@code from}. Writes to the view go to the store.
+     */
+    public DoubleBuffer values(int from, int length)
+    {
+        return view(valueSegments, from, length);
+    }
+
+    /** Zero-copy view on confidences, see {@link #values(int, int)}. **/
+    public DoubleBuffer confidences(int from, int length)
+    {
+        return view(confidenceSegments, from, length);
+    }
+
+    public int getSegmentSize()
+    {
+        return segmentSize;
+    }
+
+    /** Writes changes to disk. **/
+    public void flush()
+    {
+        for (MappedByteBuffer mapping : mappings)
+            mapping.force();
+    }
+
+    /** Flushes and closes the file. The mappings stay valid until they are garbage collected. **/
+    @Override
+    public void close() throws IOException
+    {
+        flush();
+        channel.close();
+    }
+
+    private DoubleBuffer map(int mappingIndex, long position, int size) throws IOException
+    {
+        MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE, position, (long) size * 8);
+        mappings[mappingIndex] = mapping;
+        return mapping.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+
+    private void fill(double value, double confidence)
+    {
+        for (int s = 0; s < valueSegments.length; s++)
+            for (int i = 0; i < valueSegments[s].capacity(); i++) {
+                valueSegments[s].put(i, value);
+                confidenceSegments[s].put(i, confidence);
+            }
+    }
+
+    private DoubleBuffer view(DoubleBuffer[] segments, int from, int length)
+    {
+        if (from < 0 || length < 0 || (long) from + length > capacity)
+            throw new IndexOutOfBoundsException("Range [" + from + "," + (from + length) + ") out of [0," + capacity + ")");
+        int s = from / segmentSize;
+        int start = from % segmentSize;
+        if (start + length > segments[s].capacity())
+            throw new IllegalArgumentException("Range [" + from + "," + (from + length) + ") crosses a segment boundary");
+        DoubleBuffer view = segments[s].duplicate();
+        view.position(start).limit(start + length);
+        return view.slice();
+    }
+
+    private void checkId(int id)
+    {
+        if (id < 0 || id >= capacity)
+            throw new IndexOutOfBoundsException("Id " + id + " out of [0," + capacity + ")");
+    }
+
+    @Override
+    public String toString()
+    {
+        return "IndicationStore{" + path + ", capacity=" + capacity + "}";
+    }
+}
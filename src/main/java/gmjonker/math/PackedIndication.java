@@ -0,0 +1,169 @@
+package gmjonker.math;
+
+import static gmjonker.math.GeneralMath.abs;
+import static gmjonker.math.GeneralMath.limit;
+import static gmjonker.math.IndicationBatchMath.COMBINE_RANGE_HIGH;
+import static gmjonker.math.IndicationBatchMath.COMBINE_RANGE_LOW;
+import static gmjonker.math.IndicationBatchMath.finiteWeight;
+import static gmjonker.math.IndicationBatchMath.logit;
+import static gmjonker.math.IndicationBatchMath.sigmoid;
+import static gmjonker.math.IndicationBatchMath.weightedMean;
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.NaType.isValue;
+
+/**
+ * An indication packed in a primitive long: value and confidence as floats, in the high and low 32 bits. Provides
+ * static equivalents of the arithmetic of {@link Indication}, so that hot loops and {@code long[]} arrays of indications
+ * need no objects. Computations are done in double precision, results are rounded to float precision.
+ *
+ * <p>The floats are stored in a form in which signed long order is the order of value, then confidence. So sorting a
+ * {@code long[]} sorts by value first (this is not the order of {@link Indication#compareTo(Indication)}). All NaNs are
+ * encoded the same, so equal indications have equal longs, which can be used as hash keys.
+ */
+@SuppressWarnings("WeakerAccess")
+public class PackedIndication
+{
+    public static final long NA_INDICATION = pack(NA, NA);
+
+    private PackedIndication() {}
+
+    public static long pack(double value, double confidence)
+    {
+        // Adding 0 turns -0.0 into 0.0, which Indication considers equal
+        return ((long) toSortableBits((float) value + 0.0f) << 32)
+                | ((toSortableBits((float) confidence + 0.0f) ^ Integer.MIN_VALUE) & 0xffffffffL);
+    }
+
+    /** The comment of the indication is dropped. **/
+    public static long pack(Indication indication)
+    {
+        return pack(indication.value, indication.confidence);
+    }
+
+    public static double value(long packed)
+    {
+        return fromSortableBits((int) (packed >> 32));
+    }
+
+    public static double confidence(long packed)
+    {
+        return fromSortableBits((int) packed ^ Integer.MIN_VALUE);
+    }
+
+    public static Indication unpack(long packed)
+    {
+        return new Indication(value(packed), confidence(packed));
+    }
+
+    /** See {@link Indication#multiply(double, double)}. **/
+    public static long multiply(long packed, double valueFactor, double confidenceFactor)
+    {
+        return pack(value(packed) * valueFactor, confidence(packed) * confidenceFactor);
+    }
+
+    /** See {@link Indication#multiplyWith(Indication)}. **/
+    public static long multiplyWith(long packed1, long packed2)
+    {
+        return pack(value(packed1) * value(packed2), confidence(packed1) * confidence(packed2));
+    }
+
+    /** See {@link Indication#diffWith(Indication)}. **/
+    public static long diffWith(long packed1, long packed2)
+    {
+        return pack(value(packed1) - value(packed2), confidence(packed1) - confidence(packed2));
+    }
+
+    /** See {@link Indication#match(Indication)}. **/
+    public static long match(long packed1, long packed2)
+    {
+        return pack(1 - abs(value(packed1) - value(packed2)), confidence(packed1) * confidence(packed2));
+    }
+
+    /** See {@link Indication#cov(Indication)}. **/
+    public static long cov(long packed1, long packed2)
+    {
+        return multiplyWith(packed1, packed2);
+    }
+
+    /** See {@link Indication#deriveDouble()}. **/
+    public static double deriveDouble(long packed)
+    {
+        double value = value(packed);
+        double confidence = confidence(packed);
+        if (confidence == 0)
+            return 0;
+        if ( ! isValue(value) || ! isValue(confidence))
+            return NA;
+        return value * confidence;
+    }
+
+    /** See {@link Indication#deriveDouble01(double)}. **/
+    public static double deriveDouble01(long packed, double neutralPoint)
+    {
+        double value = value(packed);
+        double confidence = confidence(packed);
+        if ( ! isValue(value) || ! isValue(confidence))
+            return NA;
+        if (value > 0)
+            return neutralPoint + value * confidence * (1 - neutralPoint);
+        else
+            return neutralPoint + value * confidence * neutralPoint;
+    }
+
+    /** See {@link Indication#combineWith(Indication)}, which is {@link IndicationMath#combine(Indication...)} of two. **/
+    public static long combineWith(long packed1, long packed2)
+    {
+        double value1 = value(packed1);
+        double confidence1 = confidence(packed1);
+        double value2 = value(packed2);
+        double confidence2 = confidence(packed2);
+        if ( ! isValue(value1) && ! isValue(confidence1) && ! isValue(value2) && ! isValue(confidence2))
+            return NA_INDICATION;
+        if (confidence1 + confidence2 == 0)
+            return pack((value1 + value2) / 2, 0);
+
+        double weightedSum = 0;
+        double totalWeight = 0;
+        if (isValue(value1) && isValue(confidence1)) {
+            weightedSum += finiteWeight(confidence1) * value1;
+            totalWeight += finiteWeight(confidence1);
+        }
+        if (isValue(value2) && isValue(confidence2)) {
+            weightedSum += finiteWeight(confidence2) * value2;
+            totalWeight += finiteWeight(confidence2);
+        }
+        double mean = weightedMean(weightedSum, totalWeight);
+        double totalConf = agreementLogit(value1, confidence1, mean) + agreementLogit(value2, confidence2, mean);
+        return pack(mean, limit(sigmoid(totalConf, COMBINE_RANGE_LOW, COMBINE_RANGE_HIGH), 0, 1));
+    }
+
+    public static boolean isNa(long packed)
+    {
+        return ! isValue(value(packed)) && ! isValue(confidence(packed));
+    }
+
+    public static String toString(long packed)
+    {
+        return unpack(packed).toString();
+    }
+
+    private static double agreementLogit(double value, double confidence, double mean)
+    {
+        if ( ! isValue(value) || ! isValue(confidence))
+            return 0;
+        double agreement = 1 - abs(value - mean);
+        return logit(confidence, COMBINE_RANGE_LOW, COMBINE_RANGE_HIGH) * agreement * agreement;
+    }
+
+    /** Float bits, with the magnitude bits of negative numbers flipped, so that int order is float order. **/
+    private static int toSortableBits(float f)
+    {
+        int bits = Float.floatToIntBits(f);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+
+    private static double fromSortableBits(int sortable)
+    {
+        return Float.intBitsToFloat(sortable ^ ((sortable >> 31) & 0x7fffffff));
+    }
+}
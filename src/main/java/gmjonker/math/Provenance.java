@@ -0,0 +1,102 @@
+package gmjonker.math;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Explanation of an indication that was combined from other indications: a tree of the comments of its sources, which
+ * is only rendered into text when it is asked for. With {@link IndicationMath#combineWithProvenance}, combining costs
+ * one small object instead of string concatenation at every level.
+ *
+ * <p>Renders as the comments of the sources joined with ",", which is what combining with comments used to produce.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Provenance
+{
+    // Per source either its comment (a String or null), or its own Provenance
+    private final Object[] sources;
+    private volatile String rendered;
+
+    private Provenance(Object[] sources)
+    {
+        this.sources = sources;
+    }
+
+    /** Captures the explanations of the given indications as they are now. **/
+    public static Provenance of(Indication... indications)
+    {
+        Object[] sources = new Object[indications.length];
+        for (int i = 0; i < indications.length; i++) {
+            Provenance provenance = indications[i].getProvenance();
+            sources[i] = provenance != null ? provenance : indications[i].getComment();
+        }
+        return new Provenance(sources);
+    }
+
+    public int getNumSources()
+    {
+        return sources.length;
+    }
+
+    /** Sub-trees of sources that were combined themselves. **/
+    public List<Provenance> getChildren()
+    {
+        List<Provenance> children = new ArrayList<>();
+        for (Object source : sources)
+            if (source instanceof Provenance)
+                children.add((Provenance) source);
+        return Collections.unmodifiableList(children);
+    }
+
+    public String render()
+    {
+        String result = rendered;
+        if (result == null) {
+            StringBuilder stringBuilder = new StringBuilder();
+            renderTo(stringBuilder);
+            result = stringBuilder.toString();
+            rendered = result;
+        }
+        return result;
+    }
+
+    /** Renders depth-first with an explicit stack, so that long chains of combines don't overflow the call stack. **/
+    private void renderTo(StringBuilder stringBuilder)
+    {
+        // Comments still to append, separators, and provenances still to expand, next one on top
+        Deque<Object> stack = new ArrayDeque<>();
+        pushSources(stack, this);
+        while ( ! stack.isEmpty()) {
+            Object item = stack.pop();
+            if (item instanceof Provenance) {
+                Provenance provenance = (Provenance) item;
+                if (provenance.rendered != null)
+                    stringBuilder.append(provenance.rendered);
+                else
+                    pushSources(stack, provenance);
+            } else {
+                stringBuilder.append((String) item);
+            }
+        }
+    }
+
+    private static void pushSources(Deque<Object> stack, Provenance provenance)
+    {
+        Object[] sources = provenance.sources;
+        for (int i = sources.length - 1; i >= 0; i--) {
+            // ArrayDeque can't hold null; a null comment renders as "null", as StringBuilder does
+            stack.push(sources[i] != null ? sources[i] : "null");
+            if (i > 0)
+                stack.push(",");
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return render();
+    }
+}
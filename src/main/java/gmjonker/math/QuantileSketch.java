@@ -0,0 +1,251 @@
+package gmjonker.math;
+
+import gmjonker.util.DoubleList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static gmjonker.math.NaType.NA;
+
+/**
+ * KLL quantile sketch (Karnin, Lang, Liberty 2016): approximate percentiles of a stream of values in bounded memory.
+ *
+ * <p>Values are kept in a hierarchy of compactors. An item at level h stands for 2^h values. When a level is full, it is
+ * sorted and every other item (starting at a random offset) is promoted to the next level, the rest is dropped. Level
+ * capacities shrink geometrically towards the lower levels, so memory is about 3k items plus one small level per
+ * doubling of the sample count. Rank errors are around 1/k in practice. Count, min and max are exact.
+ *
+ * <p>Not thread-safe. For concurrent use, give every thread its own sketch and {@link #merge(QuantileSketch)} them.
+ */
+@SuppressWarnings("WeakerAccess")
+public class QuantileSketch
+{
+    public static final int DEFAULT_K = 200;
+    private static final double CAPACITY_DECAY = 2.0 / 3;
+
+    private final int k;
+    private final Random random;
+    private final List<DoubleList> levels = new ArrayList<>();
+    private int size = 0;
+    private int maxSize = 0;
+    private long n = 0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    // Sorted view of all items with their cumulative weights, built lazily for queries
+    private double[] sortedValues;
+    private long[] cumulativeWeights;
+
+    public QuantileSketch()
+    {
+        this(DEFAULT_K);
+    }
+
+    public QuantileSketch(int k)
+    {
+        this(k, new Random());
+    }
+
+    /** @param random source of the coin flips in compaction, for reproducible results **/
+    public QuantileSketch(int k, Random random)
+    {
+        if (k < 2)
+            throw new IllegalArgumentException("k must be at least 2");
+        this.k = k;
+        this.random = random;
+        grow();
+    }
+
+    /** NA values are ignored. **/
+    public void addValue(double value)
+    {
+        if ( ! NaType.isValue(value))
+            return;
+        levels.get(0).add(value);
+        size++;
+        n++;
+        if (value < min)
+            min = value;
+        if (value > max)
+            max = value;
+        sortedValues = null;
+        if (size >= maxSize)
+            compress();
+    }
+
+    /**
+     * Adds the values of the other sketch to this one. The other sketch is not changed.
+     * @return this
+     */
+    public QuantileSketch merge(QuantileSketch other)
+    {
+        while (levels.size() < other.levels.size())
+            grow();
+        for (int h = 0; h < other.levels.size(); h++)
+            levels.get(h).addAll(other.levels.get(h));
+        size += other.size;
+        n += other.n;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sortedValues = null;
+        while (size >= maxSize)
+            compress();
+        return this;
+    }
+
+    public long getN()
+    {
+        return n;
+    }
+
+    public double getMin()
+    {
+        return n == 0 ? NA : min;
+    }
+
+    public double getMax()
+    {
+        return n == 0 ? NA : max;
+    }
+
+    /** Number of items kept, which is bounded by about 3k + log2(n / k). **/
+    public int getRetainedItems()
+    {
+        return size;
+    }
+
+    /**
+     * @param quantile in [0,1]
+     * @return an estimate of the value below which the given fraction of values lies, or NA if empty
+     */
+    public double getQuantile(double quantile)
+    {
+        if (quantile < 0 || quantile > 1)
+            throw new IllegalArgumentException("Quantile must be in [0,1]: " + quantile);
+        if (n == 0)
+            return NA;
+        if (quantile == 0)
+            return min;
+        if (quantile == 1)
+            return max;
+        ensureSorted();
+        long rank = (long) Math.ceil(quantile * n);
+        int i = Arrays.binarySearch(cumulativeWeights, rank);
+        if (i < 0)
+            i = -i - 1;
+        return sortedValues[Math.min(i, sortedValues.length - 1)];
+    }
+
+    /** @param percentile in [0,100] **/
+    public double getPercentile(double percentile)
+    {
+        return getQuantile(percentile / 100);
+    }
+
+    /** Estimated number of values strictly smaller than x. **/
+    public long getCountBelow(double x)
+    {
+        if (n == 0 || x <= min)
+            return 0;
+        if (x > max)
+            return n;
+        ensureSorted();
+        int i = lowerBound(sortedValues, x);
+        return i == 0 ? 0 : cumulativeWeights[i - 1];
+    }
+
+    /** Estimated fraction of values strictly smaller than x. **/
+    public double getRank(double x)
+    {
+        return n == 0 ? NA : (double) getCountBelow(x) / n;
+    }
+
+    private void grow()
+    {
+        levels.add(new DoubleList());
+        maxSize = 0;
+        for (int h = 0; h < levels.size(); h++)
+            maxSize += capacity(h);
+    }
+
+    private int capacity(int level)
+    {
+        int depth = levels.size() - level - 1;
+        return Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    /** Compacts the lowest level that is at or over capacity. **/
+    private void compress()
+    {
+        for (int h = 0; h < levels.size(); h++) {
+            DoubleList level = levels.get(h);
+            if (level.size() < capacity(h))
+                continue;
+            if (h + 1 >= levels.size())
+                grow();
+            DoubleList next = levels.get(h + 1);
+            double[] items = level.elements();
+            int length = level.size();
+            Arrays.sort(items, 0, length);
+            // An odd item out stays at this level
+            int start = length % 2;
+            int offset = random.nextBoolean() ? 1 : 0;
+            for (int i = start + offset; i < length; i += 2)
+                next.add(items[i]);
+            int kept = start;
+            level.clear();
+            if (kept == 1)
+                level.add(items[0]);
+            size -= length - kept - (length - start) / 2;
+            return;
+        }
+    }
+
+    /** Sorts every level, and merges them into one sorted array with cumulative weights. **/
+    private void ensureSorted()
+    {
+        if (sortedValues != null)
+            return;
+        int numLevels = levels.size();
+        int[] positions = new int[numLevels];
+        for (DoubleList level : levels)
+            Arrays.sort(level.elements(), 0, level.size());
+        sortedValues = new double[size];
+        cumulativeWeights = new long[size];
+        long cumulative = 0;
+        for (int i = 0; i < size; i++) {
+            int minLevel = -1;
+            for (int h = 0; h < numLevels; h++)
+                if (positions[h] < levels.get(h).size() && (minLevel < 0
+                        || levels.get(h).get(positions[h]) < levels.get(minLevel).get(positions[minLevel])))
+                    minLevel = h;
+            sortedValues[i] = levels.get(minLevel).get(positions[minLevel]++);
+            cumulative += 1L << minLevel;
+            cumulativeWeights[i] = cumulative;
+        }
+    }
+
+    /** Index of the first element that is not smaller than x. **/
+    private static int lowerBound(double[] sorted, double x)
+    {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < x)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("QuantileSketch{n=%d, retained=%d, min=%s, p50=%s, max=%s}", n, size, getMin(),
+                getQuantile(.5), getMax());
+    }
+}
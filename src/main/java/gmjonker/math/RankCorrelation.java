@@ -0,0 +1,299 @@
+package gmjonker.math;
+
+import java.util.Arrays;
+
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.NaType.isValue;
+
+/**
+ * Rank correlations, next to the Pearson correlation of {@link Correlation}: Spearman's rho and Kendall's tau-b. Both
+ * run in O(n log n) on primitive arrays, so they can be used on series of millions of values.
+ *
+ * <p>Ties get average ranks in Spearman's rho, and are corrected for by tau-b. Pairs in which either value is NA are
+ * ignored. If fewer than two pairs remain, or one of the series is constant, the result is NA.
+ *
+ * <p>The {@link Indication} variants weigh every pair by the product of its two confidences. For Spearman, that is a
+ * weighted Pearson correlation of the ranks. For Kendall, every pair of pairs (i,j) counts with weight w_i * w_j; with
+ * equal weights, this gives the plain tau-b.
+ *
+ * <p>Kendall's tau-b uses Knight's algorithm: sort by the first series, then count the discordant pairs as the swaps
+ * made by a merge sort on the second series.
+ */
+@SuppressWarnings("WeakerAccess")
+public class RankCorrelation
+{
+    public static double spearman(double[] series1, double[] series2)
+    {
+        return spearman(series1, series2, null);
+    }
+
+    /** Weighted Spearman correlation, with weight c1 * c2 for each pair. Indications with an NA value are ignored. **/
+    public static double spearman(Indication[] series1, Indication[] series2)
+    {
+        checkLengths(series1.length, series2.length);
+        double[][] columns = toColumns(series1, series2);
+        return spearman(columns[0], columns[1], columns[2]);
+    }
+
+    public static double kendallTauB(double[] series1, double[] series2)
+    {
+        return kendallTauB(series1, series2, null);
+    }
+
+    /** Weighted Kendall tau-b, with weight c1 * c2 for each pair. Indications with an NA value are ignored. **/
+    public static double kendallTauB(Indication[] series1, Indication[] series2)
+    {
+        checkLengths(series1.length, series2.length);
+        double[][] columns = toColumns(series1, series2);
+        return kendallTauB(columns[0], columns[1], columns[2]);
+    }
+
+    /** @param weights null means all weights are 1 **/
+    private static double spearman(double[] series1, double[] series2, double[] weights)
+    {
+        checkLengths(series1.length, series2.length);
+        int[] kept = validPairs(series1, series2, weights);
+        int n = kept.length;
+        if (n < 2)
+            return NA;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            // Adding 0 turns -0.0 into 0.0, so that they are tied
+            x[i] = series1[kept[i]] + 0.0;
+            y[i] = series2[kept[i]] + 0.0;
+        }
+        double[] rankX = ranks(x);
+        double[] rankY = ranks(y);
+
+        double totalWeight = 0;
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < n; i++) {
+            double w = weights == null ? 1 : weights[kept[i]];
+            totalWeight += w;
+            meanX += w * rankX[i];
+            meanY += w * rankY[i];
+        }
+        meanX /= totalWeight;
+        meanY /= totalWeight;
+        double covariance = 0;
+        double varianceX = 0;
+        double varianceY = 0;
+        for (int i = 0; i < n; i++) {
+            double w = weights == null ? 1 : weights[kept[i]];
+            double dx = rankX[i] - meanX;
+            double dy = rankY[i] - meanY;
+            covariance += w * dx * dy;
+            varianceX += w * dx * dx;
+            varianceY += w * dy * dy;
+        }
+        if (varianceX == 0 || varianceY == 0)
+            return NA;
+        return covariance / Math.sqrt(varianceX * varianceY);
+    }
+
+    /** @param weights null means all weights are 1 **/
+    private static double kendallTauB(double[] series1, double[] series2, double[] weights)
+    {
+        checkLengths(series1.length, series2.length);
+        int[] order = validPairs(series1, series2, weights);
+        int n = order.length;
+        if (n < 2)
+            return NA;
+        sortByXThenY(order, series1, series2);
+
+        double[] ys = new double[n];
+        double[] ws = new double[n];
+        for (int i = 0; i < n; i++) {
+            ys[i] = series2[order[i]];
+            ws[i] = weights == null ? 1 : weights[order[i]];
+        }
+
+        // Weighted numbers of pairs: all, tied in x, and tied in both
+        double allPairs = pairWeight(ws, 0, n);
+        double xTies = 0;
+        double jointTies = 0;
+        for (int start = 0, end; start < n; start = end) {
+            double x = series1[order[start]];
+            end = start + 1;
+            while (end < n && series1[order[end]] == x)
+                end++;
+            xTies += pairWeight(ws, start, end);
+            // Within an x group, ys are sorted, so joint ties are consecutive
+            for (int jointStart = start, jointEnd; jointStart < end; jointStart = jointEnd) {
+                jointEnd = jointStart + 1;
+                while (jointEnd < end && ys[jointEnd] == ys[jointStart])
+                    jointEnd++;
+                jointTies += pairWeight(ws, jointStart, jointEnd);
+            }
+        }
+
+        double discordant = mergeSortCountingSwaps(ys, ws);
+
+        double yTies = 0;
+        for (int start = 0, end; start < n; start = end) {
+            end = start + 1;
+            while (end < n && ys[end] == ys[start])
+                end++;
+            yTies += pairWeight(ws, start, end);
+        }
+
+        double denominator = Math.sqrt((allPairs - xTies) * (allPairs - yTies));
+        if (denominator == 0)
+            return NA;
+        return (allPairs - xTies - yTies + jointTies - 2 * discordant) / denominator;
+    }
+
+    /** Average ranks, starting at 1, of the values: a value that is tied with others gets the mean of their ranks. **/
+    private static double[] ranks(double[] values)
+    {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        // Average rank of every run of equal values, stored at the start of the run
+        double[] runRanks = new double[sorted.length];
+        for (int start = 0, end; start < sorted.length; start = end) {
+            end = start + 1;
+            while (end < sorted.length && sorted[end] == sorted[start])
+                end++;
+            runRanks[start] = (start + end - 1) / 2.0 + 1;
+        }
+        double[] ranks = new double[values.length];
+        for (int i = 0; i < values.length; i++)
+            ranks[i] = runRanks[lowerBound(sorted, values[i])];
+        return ranks;
+    }
+
+    /** Sum of w_i * w_j over all pairs i < j in [from, to). **/
+    private static double pairWeight(double[] ws, int from, int to)
+    {
+        double sum = 0;
+        double sumOfSquares = 0;
+        for (int i = from; i < to; i++) {
+            sum += ws[i];
+            sumOfSquares += ws[i] * ws[i];
+        }
+        return (sum * sum - sumOfSquares) / 2;
+    }
+
+    /**
+     * Sorts ys ascending, keeping ws aligned, with a bottom-up merge sort. Returns the weighted number of swaps: the sum
+     * of w_i * w_j over all pairs that are out of order. Equal ys are not swapped.
+     */
+    private static double mergeSortCountingSwaps(double[] ys, double[] ws)
+    {
+        int n = ys.length;
+        double[] yBuffer = new double[n];
+        double[] wBuffer = new double[n];
+        double swaps = 0;
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n - width; lo += 2 * width) {
+                int mid = lo + width;
+                int hi = Math.min(lo + 2 * width, n);
+                double leftWeight = 0;
+                for (int i = lo; i < mid; i++)
+                    leftWeight += ws[i];
+                int l = lo;
+                int r = mid;
+                int k = lo;
+                while (l < mid && r < hi) {
+                    if (ys[r] < ys[l]) {
+                        // Every remaining left element is swapped with this right element
+                        swaps += ws[r] * leftWeight;
+                        yBuffer[k] = ys[r];
+                        wBuffer[k++] = ws[r++];
+                    } else {
+                        leftWeight -= ws[l];
+                        yBuffer[k] = ys[l];
+                        wBuffer[k++] = ws[l++];
+                    }
+                }
+                while (l < mid) {
+                    yBuffer[k] = ys[l];
+                    wBuffer[k++] = ws[l++];
+                }
+                while (r < hi) {
+                    yBuffer[k] = ys[r];
+                    wBuffer[k++] = ws[r++];
+                }
+                System.arraycopy(yBuffer, lo, ys, lo, hi - lo);
+                System.arraycopy(wBuffer, lo, ws, lo, hi - lo);
+            }
+        }
+        return swaps;
+    }
+
+    /** Sorts the indices by x, then by y, with a bottom-up merge sort. **/
+    private static void sortByXThenY(int[] order, double[] xs, double[] ys)
+    {
+        int n = order.length;
+        int[] buffer = new int[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n - width; lo += 2 * width) {
+                int mid = lo + width;
+                int hi = Math.min(lo + 2 * width, n);
+                int l = lo;
+                int r = mid;
+                int k = lo;
+                while (l < mid && r < hi) {
+                    int a = order[l];
+                    int b = order[r];
+                    boolean rightFirst = xs[b] < xs[a] || xs[b] == xs[a] && ys[b] < ys[a];
+                    buffer[k++] = rightFirst ? order[r++] : order[l++];
+                }
+                while (l < mid)
+                    buffer[k++] = order[l++];
+                while (r < hi)
+                    buffer[k++] = order[r++];
+                System.arraycopy(buffer, lo, order, lo, hi - lo);
+            }
+        }
+    }
+
+    /** Indices of the pairs in which both values, and the weight, are values. **/
+    private static int[] validPairs(double[] series1, double[] series2, double[] weights)
+    {
+        int[] kept = new int[series1.length];
+        int n = 0;
+        for (int i = 0; i < series1.length; i++)
+            if (isValue(series1[i]) && isValue(series2[i]) && (weights == null || isValue(weights[i])))
+                kept[n++] = i;
+        return n == kept.length ? kept : Arrays.copyOf(kept, n);
+    }
+
+    /** Values and weights of both series, where a weight is the product of the confidences. **/
+    private static double[][] toColumns(Indication[] series1, Indication[] series2)
+    {
+        int n = series1.length;
+        double[] values1 = new double[n];
+        double[] values2 = new double[n];
+        double[] weights = new double[n];
+        for (int i = 0; i < n; i++) {
+            values1[i] = series1[i].value;
+            values2[i] = series2[i].value;
+            weights[i] = series1[i].confidence * series2[i].confidence;
+        }
+        return new double[][] {values1, values2, weights};
+    }
+
+    /** Index of the first element >= x. **/
+    private static int lowerBound(double[] sorted, double x)
+    {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < x)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    private static void checkLengths(int length1, int length2)
+    {
+        if (length1 != length2)
+            throw new IllegalArgumentException("Series have different lengths: " + length1 + " != " + length2);
+    }
+}
@@ -7,6 +7,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
+import static gmjonker.math.CombineMetrics.Operation.*;
 import static gmjonker.math.GeneralMath.*;
 import static gmjonker.math.NaType.NA;
 import static gmjonker.math.NaType.isValue;
@@ -32,8 +33,6 @@ import static org.apache.commons.lang3.ArrayUtils.isEmpty;
 @Deprecated
 public class ScoreMath
 {
-    private static long totalTime = 0;
-
     protected static final LambdaLogger log = new LambdaLogger(ScoreMath.class);
 
     /**
@@ -53,11 +52,8 @@ public class ScoreMath
      **/
     public static Score combine01(Collection<Score> scores)
     {
-        long now = System.nanoTime();
         Score[] scoreArray = new Score[scores.size()];
-        Score score = combine01(scores.toArray(scoreArray), null);
-        totalTime += System.nanoTime() - now;
-        return score;
+        return combine01(scores.toArray(scoreArray), null);
     }
 
     /**
@@ -67,11 +63,8 @@ public class ScoreMath
      **/
     public static Score combine01TightAndNoDisagreementEffect(List<Score> scores)
     {
-        long now = System.nanoTime();
         Score[] scoreArray = new Score[scores.size()];
-        Score score = combine01TightAndNoDisagreementEffect(scores.toArray(scoreArray), null);
-        totalTime += System.nanoTime() - now;
-        return score;
+        return combine01TightAndNoDisagreementEffect(scores.toArray(scoreArray), null);
     }
 
     /**
@@ -81,6 +74,16 @@ public class ScoreMath
      * <p>Score values in range (0,1). Weights have no constraints (will be normalized on the fly).
      **/
     public static Score combine01(Score[] scores, @Nullable double[] weights)
+    {
+        if ( ! CombineMetrics.isEnabled())
+            return combine01Uninstrumented(scores, weights);
+        long start = System.nanoTime();
+        Score result = combine01Uninstrumented(scores, weights);
+        CombineMetrics.record(SCORE_COMBINE_01, scores == null ? 0 : scores.length, System.nanoTime() - start);
+        return result;
+    }
+
+    private static Score combine01Uninstrumented(Score[] scores, @Nullable double[] weights)
     {
         // Convert to (-1,1) range
         Score[] newScores = new Score[scores.length];
@@ -88,7 +91,7 @@ public class ScoreMath
             newScores[i] = new Score(from01toM11(scores[i].value, NEUTRAL_SCORE), scores[i].confidence);
         }
         // Combine
-        Score combinedScore = combineM11(newScores, weights);
+        Score combinedScore = combineM11Uninstrumented(newScores, weights);
         // Convert back
         return new Score(Range.fromM11to01(combinedScore.value, NEUTRAL_SCORE), combinedScore.confidence);
     }
@@ -100,6 +103,17 @@ public class ScoreMath
      * <p>Score values in range (0,1). Weights have no constraints (will be normalized on the fly).
      **/
     public static Score combine01TightAndNoDisagreementEffect(Score[] scores, @Nullable double[] weights)
+    {
+        if ( ! CombineMetrics.isEnabled())
+            return combine01TightAndNoDisagreementEffectUninstrumented(scores, weights);
+        long start = System.nanoTime();
+        Score result = combine01TightAndNoDisagreementEffectUninstrumented(scores, weights);
+        CombineMetrics.record(SCORE_COMBINE_01_TIGHT_AND_NO_DISAGREEMENT_EFFECT, scores == null ? 0 : scores.length,
+                System.nanoTime() - start);
+        return result;
+    }
+
+    private static Score combine01TightAndNoDisagreementEffectUninstrumented(Score[] scores, @Nullable double[] weights)
     {
         // Convert to (-1,1) range
         Score[] newScores = new Score[scores.length];
@@ -107,7 +121,7 @@ public class ScoreMath
             newScores[i] = new Score(from01toM11(scores[i].value, NEUTRAL_SCORE), scores[i].confidence);
         }
         // Combine
-        Score combinedScore = combineM11TightAndNoDisagreementEffect(newScores, weights);
+        Score combinedScore = combineM11TightAndNoDisagreementEffectUninstrumented(newScores, weights);
         // Convert back
         return new Score(Range.fromM11to01(combinedScore.value, NEUTRAL_SCORE), combinedScore.confidence);
     }
@@ -142,6 +156,16 @@ public class ScoreMath
      * <p>Score values in range (-1,1). Weights have no constraints (will be normalized on the fly).
      **/
     public static Score combineM11(Score[] scores, @Nullable double[] weights)
+    {
+        if ( ! CombineMetrics.isEnabled())
+            return combineM11Uninstrumented(scores, weights);
+        long start = System.nanoTime();
+        Score result = combineM11Uninstrumented(scores, weights);
+        CombineMetrics.record(SCORE_COMBINE_M11, scores == null ? 0 : scores.length, System.nanoTime() - start);
+        return result;
+    }
+
+    private static Score combineM11Uninstrumented(Score[] scores, @Nullable double[] weights)
     {
         if (isEmpty(scores) || allElementsSatisfy(scores, Score::isNa))
             return NA_SCORE;
@@ -227,6 +251,17 @@ public class ScoreMath
      * have relatively more effect on the end result, and the highest weighted scores relatively less.</p>
      **/
     public static Score combineM11TightAndNoDisagreementEffect(Score[] scores, @Nullable double[] weights)
+    {
+        if ( ! CombineMetrics.isEnabled())
+            return combineM11TightAndNoDisagreementEffectUninstrumented(scores, weights);
+        long start = System.nanoTime();
+        Score result = combineM11TightAndNoDisagreementEffectUninstrumented(scores, weights);
+        CombineMetrics.record(SCORE_COMBINE_M11_TIGHT_AND_NO_DISAGREEMENT_EFFECT, scores == null ? 0 : scores.length,
+                System.nanoTime() - start);
+        return result;
+    }
+
+    private static Score combineM11TightAndNoDisagreementEffectUninstrumented(Score[] scores, @Nullable double[] weights)
     {
         if (isEmpty(scores) || allElementsSatisfy(scores, Score::isNa))
             return NA_SCORE;
@@ -293,9 +328,13 @@ public class ScoreMath
         return result;
     }
 
+    /** Prints the {@link CombineMetrics} of the combines in this class, which are only recorded when enabled. **/
     public static void printPerformanceStats()
     {
-        System.out.println("Total time in s:" + totalTime * NANOS_TO_SECONDS);
+        for (CombineMetrics.Operation operation : new CombineMetrics.Operation[] {SCORE_COMBINE_01,
+                SCORE_COMBINE_01_TIGHT_AND_NO_DISAGREEMENT_EFFECT, SCORE_COMBINE_M11,
+                SCORE_COMBINE_M11_TIGHT_AND_NO_DISAGREEMENT_EFFECT})
+            System.out.println(operation + ": " + CombineMetrics.get(operation));
     }
 
     /**
@@ -1,12 +1,12 @@
 package gmjonker.math;
 
 import gmjonker.util.LambdaLogger;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 
 import javax.annotation.Nullable;
 import java.util.Arrays;
 import java.util.List;
 
+import static gmjonker.math.CombineMetrics.Operation.*;
 import static gmjonker.math.GeneralMath.*;
 import static gmjonker.math.NaType.NA;
 import static gmjonker.math.Score.NEUTRAL_SCORE;
@@ -25,10 +25,6 @@ public class ScoreMathFast
     private static final double SIGMOID_RANGE_LOW = -1.1;
     private static final double SIGMOID_RANGE_HIGH = 1.1;
 
-    // Some performance stats
-    private static final DescriptiveStatistics sizeStats = new DescriptiveStatistics();
-    private static long totalTime = 0;
-
     protected static final LambdaLogger log = new LambdaLogger(ScoreMath.class);
 
     /**
@@ -48,12 +44,8 @@ public class ScoreMathFast
      **/
     public static Score combine01(List<Score> scores)
     {
-        sizeStats.addValue(scores.size());
-        long now = System.nanoTime();
         Score[] scoreArray = new Score[scores.size()];
-        Score score = combine01(scores.toArray(scoreArray), null);
-        totalTime += System.nanoTime() - now;
-        return score;
+        return combine01(scores.toArray(scoreArray), null);
     }
 
     /**
@@ -63,6 +55,16 @@ public class ScoreMathFast
      * <p>Score values in range (0,1). Weights have no constraints (will be normalized on the fly).
      **/
     public static Score combine01(Score[] scores, double[] weights)
+    {
+        if ( ! CombineMetrics.isEnabled())
+            return combine01Uninstrumented(scores, weights);
+        long start = System.nanoTime();
+        Score result = combine01Uninstrumented(scores, weights);
+        CombineMetrics.record(SCORE_FAST_COMBINE_01, scores == null ? 0 : scores.length, System.nanoTime() - start);
+        return result;
+    }
+
+    private static Score combine01Uninstrumented(Score[] scores, double[] weights)
     {
         // Convert to (-1,1) range
         Score[] newScores = new Score[scores.length];
@@ -146,9 +148,9 @@ public class ScoreMathFast
         return new Score(weightedMean, totalConf);
     }
 
+    /** Prints the {@link CombineMetrics} of {@link #combine01(Score[], double[])}, which are only recorded when enabled. **/
     public static void printPerformanceStats()
     {
-        System.out.println("sizeStats = " + sizeStats);
-        System.out.println("Total time in s:" + totalTime * .001 * .001 * .001);
+        System.out.println(CombineMetrics.get(SCORE_FAST_COMBINE_01));
     }
 }
@@ -0,0 +1,106 @@
+package gmjonker.math;
+
+/**
+ * Implementation of the sigmoid and logit functions with an output/input range, as used to accumulate confidences in
+ * {@link IndicationMath} and {@link IndicationMathFast}. Pass one to the combine overloads that take a strategy; the
+ * other overloads use {@link #EXACT} (IndicationMath) or {@link #FAST_ALTERNATIVE} (IndicationMathFast).
+ *
+ * <p>{@link IndicationMathParallel}, {@link IndicationBatchMath}, {@link IndicationAccumulator} and
+ * {@link IndicationGroupCombiner} always use the exact functions.
+ */
+public interface SigmoidStrategy
+{
+    double sigmoid(double x, double rangeLow, double rangeHigh);
+
+    double logit(double x, double rangeLow, double rangeHigh);
+
+    /** {@link SigmoidMath#sigmoid(double, double, double)} and {@link SigmoidMath#logit(double, double, double)}. **/
+    SigmoidStrategy EXACT = new SigmoidStrategy()
+    {
+        @Override
+        public double sigmoid(double x, double rangeLow, double rangeHigh)
+        {
+            return SigmoidMath.sigmoid(x, rangeLow, rangeHigh);
+        }
+
+        @Override
+        public double logit(double x, double rangeLow, double rangeHigh)
+        {
+            return SigmoidMath.logit(x, rangeLow, rangeHigh);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "EXACT";
+        }
+    };
+
+    /**
+     * {@link SigmoidMath#fastSigmoidAlternative(double, double, double)} and
+     * {@link SigmoidMath#fastLogitAlternative(double, double, double)}, which have a different shape than the exact functions.
+     **/
+    SigmoidStrategy FAST_ALTERNATIVE = new SigmoidStrategy()
+    {
+        @Override
+        public double sigmoid(double x, double rangeLow, double rangeHigh)
+        {
+            return SigmoidMath.fastSigmoidAlternative(x, rangeLow, rangeHigh);
+        }
+
+        @Override
+        public double logit(double x, double rangeLow, double rangeHigh)
+        {
+            return SigmoidMath.fastLogitAlternative(x, rangeLow, rangeHigh);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "FAST_ALTERNATIVE";
+        }
+    };
+
+    /** The exact functions approximated with {@link SigmoidTable}s, see there for the errors. **/
+    SigmoidStrategy TABLE_LINEAR = table(SigmoidTable.Interpolation.LINEAR);
+
+    /** The exact functions approximated with {@link SigmoidTable}s, see there for the errors. **/
+    SigmoidStrategy TABLE_CUBIC = table(SigmoidTable.Interpolation.CUBIC);
+
+    static SigmoidStrategy table(SigmoidTable.Interpolation interpolation)
+    {
+        return new SigmoidStrategy()
+        {
+            // Callers use one or two fixed ranges, so remembering the last table mostly avoids the shared table lookup
+            private volatile SigmoidTable last;
+
+            @Override
+            public double sigmoid(double x, double rangeLow, double rangeHigh)
+            {
+                return table(rangeLow, rangeHigh).sigmoid(x);
+            }
+
+            @Override
+            public double logit(double x, double rangeLow, double rangeHigh)
+            {
+                return table(rangeLow, rangeHigh).logit(x);
+            }
+
+            private SigmoidTable table(double rangeLow, double rangeHigh)
+            {
+                SigmoidTable table = last;
+                if (table == null || table.rangeLow != rangeLow || table.rangeHigh != rangeHigh) {
+                    table = SigmoidTable.of(rangeLow, rangeHigh, interpolation);
+                    last = table;
+                }
+                return table;
+            }
+
+            @Override
+            public String toString()
+            {
+                return "TABLE_" + interpolation;
+            }
+        };
+    }
+}
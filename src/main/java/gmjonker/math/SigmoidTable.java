@@ -0,0 +1,230 @@
+package gmjonker.math;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Table-driven {@link SigmoidMath#sigmoid(double, double, double)} and {@link SigmoidMath#logit(double, double, double)}
+ * for one output range, to avoid calls to exp and log in inner loops.
+ *
+ * <p>The sigmoid is tabulated for inputs in [-{@link #SIGMOID_LIMIT}, {@link #SIGMOID_LIMIT}]; outside that it returns
+ * the bounds of the range, which are within 1e-14 * (rangeHigh - rangeLow) of the exact values. The logit is tabulated
+ * for inputs whose relative position p in the range lies in [{@link #LOGIT_MARGIN}, 1 - {@link #LOGIT_MARGIN}]; towards
+ * the infinities at the bounds, it is computed exactly. NaN gives NaN, and so does a logit input outside the range,
+ * where SigmoidMath throws.
+ *
+ * <p>Interpolation is linear, or cubic Hermite on the exact derivatives. {@link #getMaxSigmoidError()} and
+ * {@link #getMaxLogitError()} give the largest absolute errors, measured when the table is built. With the default
+ * number of points and a range of width about 2, they are below 1e-5 (sigmoid) and 3e-5 (logit) for linear
+ * interpolation, and below 1e-9 for cubic. The logit error does not depend on the range.
+ *
+ * <p>Tables are immutable; {@link #of(double, double, Interpolation)} shares them per range and interpolation.
+ */
+@SuppressWarnings("WeakerAccess")
+public class SigmoidTable
+{
+    public enum Interpolation
+    {
+        LINEAR, CUBIC
+    }
+
+    public static final int DEFAULT_SIZE = 4096;
+    public static final double SIGMOID_LIMIT = 32;
+    public static final double LOGIT_MARGIN = 1.0 / 64;
+    private static final int ERROR_SAMPLES_PER_INTERVAL = 7;
+
+    private static final Map<Key, SigmoidTable> sharedTables = new ConcurrentHashMap<>();
+
+    public final double rangeLow;
+    public final double rangeHigh;
+    public final Interpolation interpolation;
+
+    private final double sigmoidStep;
+    private final double[] sigmoidValues;
+    private final double[] sigmoidSlopes;
+    private final double logitStep;
+    private final double[] logitValues;
+    private final double[] logitSlopes;
+    private final double maxSigmoidError;
+    private final double maxLogitError;
+
+    /** @param size number of intervals of each table **/
+    public SigmoidTable(double rangeLow, double rangeHigh, Interpolation interpolation, int size)
+    {
+        if (size < 2)
+            throw new IllegalArgumentException("Size must be at least 2");
+        this.rangeLow = rangeLow;
+        this.rangeHigh = rangeHigh;
+        this.interpolation = interpolation;
+
+        double span = rangeHigh - rangeLow;
+        sigmoidStep = 2 * SIGMOID_LIMIT / size;
+        sigmoidValues = new double[size + 1];
+        sigmoidSlopes = new double[size + 1];
+        for (int i = 0; i <= size; i++) {
+            double x = -SIGMOID_LIMIT + i * sigmoidStep;
+            double s = 1 / (1 + Math.exp(-x));
+            sigmoidValues[i] = rangeLow + span * s;
+            sigmoidSlopes[i] = span * s * (1 - s) * sigmoidStep;
+        }
+
+        logitStep = (1 - 2 * LOGIT_MARGIN) / size;
+        logitValues = new double[size + 1];
+        logitSlopes = new double[size + 1];
+        for (int i = 0; i <= size; i++) {
+            double p = LOGIT_MARGIN + i * logitStep;
+            logitValues[i] = Math.log(p / (1 - p));
+            logitSlopes[i] = logitStep / (p * (1 - p));
+        }
+
+        double maxSigmoidError = 0;
+        double maxLogitError = 0;
+        for (int i = 0; i < size; i++)
+            for (int j = 1; j <= ERROR_SAMPLES_PER_INTERVAL; j++) {
+                double fraction = (double) j / (ERROR_SAMPLES_PER_INTERVAL + 1);
+                double x = -SIGMOID_LIMIT + (i + fraction) * sigmoidStep;
+                maxSigmoidError = Math.max(maxSigmoidError, Math.abs(sigmoid(x) - exactSigmoid(x)));
+                double p = LOGIT_MARGIN + (i + fraction) * logitStep;
+                double y = rangeLow + p * span;
+                maxLogitError = Math.max(maxLogitError, Math.abs(logit(y) - exactLogit(y)));
+            }
+        this.maxSigmoidError = maxSigmoidError;
+        this.maxLogitError = maxLogitError;
+    }
+
+    /** Shared table of {@link #DEFAULT_SIZE} for the given range and interpolation, built on first use. **/
+    public static SigmoidTable of(double rangeLow, double rangeHigh, Interpolation interpolation)
+    {
+        return sharedTables.computeIfAbsent(new Key(rangeLow, rangeHigh, interpolation),
+                key -> new SigmoidTable(rangeLow, rangeHigh, interpolation, DEFAULT_SIZE));
+    }
+
+    /** Approximation of {@link SigmoidMath#sigmoid(double, double, double)} with this table's range. **/
+    public double sigmoid(double x)
+    {
+        if (x != x)
+            return NaType.NA;
+        if (x <= -SIGMOID_LIMIT)
+            return rangeLow;
+        if (x >= SIGMOID_LIMIT)
+            return rangeHigh;
+        return interpolate((x + SIGMOID_LIMIT) / sigmoidStep, sigmoidValues, sigmoidSlopes);
+    }
+
+    /** Approximation of {@link SigmoidMath#logit(double, double, double)} with this table's range. **/
+    public double logit(double x)
+    {
+        double p = (x - rangeLow) / (rangeHigh - rangeLow);
+        if ( ! (p >= LOGIT_MARGIN && p <= 1 - LOGIT_MARGIN))
+            return exactLogit(x);
+        return interpolate((p - LOGIT_MARGIN) / logitStep, logitValues, logitSlopes);
+    }
+
+    /** Sigmoid of every element of xs, into out, which may be xs itself. **/
+    public void sigmoid(double[] xs, double[] out)
+    {
+        checkLengths(xs, out);
+        for (int i = 0; i < xs.length; i++)
+            out[i] = sigmoid(xs[i]);
+    }
+
+    public double[] sigmoid(double[] xs)
+    {
+        double[] out = new double[xs.length];
+        sigmoid(xs, out);
+        return out;
+    }
+
+    /** Logit of every element of xs, into out, which may be xs itself. **/
+    public void logit(double[] xs, double[] out)
+    {
+        checkLengths(xs, out);
+        for (int i = 0; i < xs.length; i++)
+            out[i] = logit(xs[i]);
+    }
+
+    public double[] logit(double[] xs)
+    {
+        double[] out = new double[xs.length];
+        logit(xs, out);
+        return out;
+    }
+
+    public double getMaxSigmoidError()
+    {
+        return maxSigmoidError;
+    }
+
+    /** Largest error within the tabulated part; outside it, the logit is exact. **/
+    public double getMaxLogitError()
+    {
+        return maxLogitError;
+    }
+
+    private double interpolate(double position, double[] values, double[] slopes)
+    {
+        int i = Math.min((int) position, values.length - 2);
+        double t = position - i;
+        if (interpolation == Interpolation.LINEAR)
+            return values[i] + t * (values[i + 1] - values[i]);
+        // Cubic Hermite; slopes are already scaled to the step
+        double t2 = t * t;
+        double t3 = t2 * t;
+        return (2 * t3 - 3 * t2 + 1) * values[i] + (t3 - 2 * t2 + t) * slopes[i]
+                + (-2 * t3 + 3 * t2) * values[i + 1] + (t3 - t2) * slopes[i + 1];
+    }
+
+    private double exactSigmoid(double x)
+    {
+        return rangeLow + (rangeHigh - rangeLow) / (1 + Math.exp(-x));
+    }
+
+    private double exactLogit(double x)
+    {
+        return Math.log((x - rangeLow) / (rangeHigh - x));
+    }
+
+    private static void checkLengths(double[] xs, double[] out)
+    {
+        if (out.length < xs.length)
+            throw new IllegalArgumentException("Output array is shorter than input array");
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("SigmoidTable{range=(%s,%s), %s, maxSigmoidError=%.2e, maxLogitError=%.2e}", rangeLow,
+                rangeHigh, interpolation, maxSigmoidError, maxLogitError);
+    }
+
+    private static class Key
+    {
+        final double rangeLow;
+        final double rangeHigh;
+        final Interpolation interpolation;
+
+        Key(double rangeLow, double rangeHigh, Interpolation interpolation)
+        {
+            this.rangeLow = rangeLow;
+            this.rangeHigh = rangeHigh;
+            this.interpolation = interpolation;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Double.compare(key.rangeLow, rangeLow) == 0 && Double.compare(key.rangeHigh, rangeHigh) == 0
+                    && interpolation == key.interpolation;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(rangeLow, rangeHigh, interpolation);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package gmjonker.math;
+
+import java.util.Arrays;
+
+/**
+ * Immutable sparse vector: sorted indices of the non-zero entries, and their values. Zeros are never stored.
+ *
+ * <p>Kernels only visit non-zero entries, so sparse-sparse operations cost O(nnz1 + nnz2), independent of the
+ * dimension. See also {@link CosineDistance#distance(SparseVector, SparseVector)},
+ * {@link Correlation#covariance0(SparseVector, SparseVector)} and
+ * {@link Correlation#profileCorrelation(SparseVector, SparseVector)}.
+ */
+@SuppressWarnings("WeakerAccess")
+public class SparseVector
+{
+    private final int dimension;
+    private final int[] indices;
+    private final double[] values;
+    private final double norm;
+    private final double absoluteSum;
+
+    /**
+     * Entries with value 0 are dropped, so that vectors with the same non-zero entries are equal.
+     * @param indices strictly increasing indices in [0, dimension). Copied.
+     * @param values values belonging to the indices. Copied.
+     */
+    public SparseVector(int dimension, int[] indices, double[] values)
+    {
+        this(dimension, indices, values, true);
+    }
+
+    /** @param copy whether the arrays still need to be checked and copied without zeros **/
+    private SparseVector(int dimension, int[] indices, double[] values, boolean copy)
+    {
+        if (copy) {
+            if (indices.length != values.length)
+                throw new IllegalArgumentException("indices and values must have the same length");
+            for (int i = 0; i < indices.length; i++)
+                if (indices[i] < 0 || indices[i] >= dimension || (i > 0 && indices[i] <= indices[i - 1]))
+                    throw new IllegalArgumentException("Indices must be strictly increasing and in [0," + dimension + ")");
+            int nnz = 0;
+            for (double value : values)
+                if (value != 0)
+                    nnz++;
+            int[] nonZeroIndices = new int[nnz];
+            double[] nonZeroValues = new double[nnz];
+            int j = 0;
+            for (int i = 0; i < values.length; i++)
+                if (values[i] != 0) {
+                    nonZeroIndices[j] = indices[i];
+                    nonZeroValues[j] = values[i];
+                    j++;
+                }
+            indices = nonZeroIndices;
+            values = nonZeroValues;
+        }
+        this.dimension = dimension;
+        this.indices = indices;
+        this.values = values;
+        double lengthSquared = 0;
+        double absoluteSum = 0;
+        for (double value : values) {
+            lengthSquared += value * value;
+            absoluteSum += Math.abs(value);
+        }
+        this.norm = Math.sqrt(lengthSquared);
+        this.absoluteSum = absoluteSum;
+    }
+
+    public static SparseVector fromDense(double[] dense)
+    {
+        int nnz = 0;
+        for (double value : dense)
+            if (value != 0)
+                nnz++;
+        int[] indices = new int[nnz];
+        double[] values = new double[nnz];
+        int j = 0;
+        for (int i = 0; i < dense.length; i++)
+            if (dense[i] != 0) {
+                indices[j] = i;
+                values[j] = dense[i];
+                j++;
+            }
+        return new SparseVector(dense.length, indices, values, false);
+    }
+
+    public double[] toDense()
+    {
+        double[] dense = new double[dimension];
+        for (int i = 0; i < indices.length; i++)
+            dense[indices[i]] = values[i];
+        return dense;
+    }
+
+    public int getDimension()
+    {
+        return dimension;
+    }
+
+    /** Number of stored entries, which are all non-zero. **/
+    public int nnz()
+    {
+        return indices.length;
+    }
+
+    public int getIndex(int i)
+    {
+        return indices[i];
+    }
+
+    public double getValue(int i)
+    {
+        return values[i];
+    }
+
+    /** Value at the given index of the vector, which is 0 if it isn't stored. O(log nnz). **/
+    public double get(int index)
+    {
+        int i = Arrays.binarySearch(indices, index);
+        return i >= 0 ? values[i] : 0;
+    }
+
+    /** Euclidean length, computed once. **/
+    public double norm()
+    {
+        return norm;
+    }
+
+    /** Sum of absolute values, computed once. **/
+    public double absoluteSum()
+    {
+        return absoluteSum;
+    }
+
+    public double dot(SparseVector other)
+    {
+        checkDimension(other.dimension);
+        double dotProduct = 0;
+        int i = 0;
+        int j = 0;
+        while (i < indices.length && j < other.indices.length) {
+            int index1 = indices[i];
+            int index2 = other.indices[j];
+            if (index1 == index2)
+                dotProduct += values[i++] * other.values[j++];
+            else if (index1 < index2)
+                i++;
+            else
+                j++;
+        }
+        return dotProduct;
+    }
+
+    public double dot(double[] dense)
+    {
+        checkDimension(dense.length);
+        double dotProduct = 0;
+        for (int i = 0; i < indices.length; i++)
+            dotProduct += values[i] * dense[indices[i]];
+        return dotProduct;
+    }
+
+    /**
+     * Sum of v1 * v2 * (|v1| + |v2|) / 2 over all pairs. Only pairs where both are non-zero contribute.
+     */
+    double infoWeightedDot(SparseVector other)
+    {
+        checkDimension(other.dimension);
+        double total = 0;
+        int i = 0;
+        int j = 0;
+        while (i < indices.length && j < other.indices.length) {
+            int index1 = indices[i];
+            int index2 = other.indices[j];
+            if (index1 == index2) {
+                double v1 = values[i++];
+                double v2 = other.values[j++];
+                total += v1 * v2 * (Math.abs(v1) + Math.abs(v2)) / 2;
+            } else if (index1 < index2) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return total;
+    }
+
+    /** See {@link #infoWeightedDot(SparseVector)}. **/
+    double infoWeightedDot(double[] dense)
+    {
+        checkDimension(dense.length);
+        double total = 0;
+        for (int i = 0; i < indices.length; i++) {
+            double v1 = values[i];
+            double v2 = dense[indices[i]];
+            total += v1 * v2 * (Math.abs(v1) + Math.abs(v2)) / 2;
+        }
+        return total;
+    }
+
+    private void checkDimension(int otherDimension)
+    {
+        if (otherDimension != dimension)
+            throw new IllegalArgumentException("Dimensions differ: " + dimension + " and " + otherDimension);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SparseVector that = (SparseVector) o;
+        return dimension == that.dimension && Arrays.equals(indices, that.indices) && Arrays.equals(values, that.values);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * (31 * dimension + Arrays.hashCode(indices)) + Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < indices.length; i++) {
+            if (i > 0)
+                sb.append(",");
+            sb.append(indices[i]).append(":").append(values[i]);
+        }
+        return sb.append("}/").append(dimension).toString();
+    }
+}
@@ -5,6 +5,7 @@ import gmjonker.util.LambdaLogger;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.math3.analysis.function.Min;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -15,10 +16,15 @@ import static java.util.Arrays.asList;
 
 /**
  * Prints a histogram in ASCII characters.
+ *
+ * <p>By default all values are kept. A histogram created with {@link #withSketch()} or from a {@link QuantileSketch}
+ * feeds values into the sketch instead, so memory stays bounded regardless of the number of values, and bin counts
+ * are estimates.
  */
 public class TextHistogram
 {
     private List<Double> values = new ArrayList<>();
+    @Nullable private QuantileSketch sketch = null;
     private double min = Double.MAX_VALUE;
     private double max = Double.MIN_VALUE;
 
@@ -40,8 +46,28 @@ public class TextHistogram
         this(asList(ArrayUtils.toObject(values)));
     }
 
+    /**
+     * Plots the values in the given sketch. Values added to this histogram are added to the sketch, and values added to
+     * the sketch directly (or merged into it) are plotted too.
+     */
+    public TextHistogram(QuantileSketch sketch)
+    {
+        this.values = null;
+        this.sketch = sketch;
+    }
+
+    /** A histogram that keeps its values in a new {@link QuantileSketch}, in bounded memory. **/
+    public static TextHistogram withSketch()
+    {
+        return new TextHistogram(new QuantileSketch());
+    }
+
     public void addValue(double value)
     {
+        if (sketch != null) {
+            sketch.addValue(value);
+            return;
+        }
         values.add(value);
         if (value < min)
             min = value;
@@ -51,8 +77,13 @@ public class TextHistogram
 
     public void plot(Integer numBins, Integer height)
     {
-        if (values.size() == 0)
+        if (sketch != null ? sketch.getN() == 0 : values.size() == 0)
             return;
+        // The sketch may have changed without this histogram seeing it
+        if (sketch != null) {
+            min = sketch.getMin();
+            max = sketch.getMax();
+        }
 
         if (numBins == 0) numBins = 40;
         if (height == 0) height = 20;
@@ -60,8 +91,11 @@ public class TextHistogram
         int[] counts = new int[numBins];
         // if we would simply divide by numBins, the max value would end up in bin numBins, which is one too high.
         double binSize = (max - min) / (numBins - 1);
-        for (double value : values)
-            counts[((int) ((value - min) / binSize))]++;
+        if (sketch != null)
+            countFromSketch(counts, binSize);
+        else
+            for (double value : values)
+                counts[((int) ((value - min) / binSize))]++;
 
         int maxBinCount = 0;
         int maxBinNr = -1;
@@ -117,4 +151,19 @@ public class TextHistogram
                 min + (maxBinNr + 1) * binSize);
         System.out.printf("A bar is %.2f wide\n", binSize);
     }
+
+    /** Bin b holds the values in [min + b * binSize, min + (b + 1) * binSize), like in the exact case. **/
+    private void countFromSketch(int[] counts, double binSize)
+    {
+        if (binSize == 0) {
+            counts[0] = (int) sketch.getN();
+            return;
+        }
+        long below = 0;
+        for (int b = 0; b < counts.length; b++) {
+            long belowNext = b == counts.length - 1 ? sketch.getN() : sketch.getCountBelow(min + (b + 1) * binSize);
+            counts[b] = (int) (belowNext - below);
+            below = belowNext;
+        }
+    }
 }
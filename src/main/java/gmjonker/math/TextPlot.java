@@ -1,10 +1,14 @@
 package gmjonker.math;
 
+import java.nio.DoubleBuffer;
 import java.util.Arrays;
+import java.util.PrimitiveIterator;
 import java.util.function.Function;
 
 public class TextPlot
 {
+    private static final int DEFAULT_WIDTH = 80;
+
     /**
      * Plots a function.
      *
@@ -37,10 +41,15 @@ public class TextPlot
     }
 
     /**
-     * Plots a number of y values next to each other.
+     * Plots a number of y values next to each other. Series of more than 80 values are downsampled to 80 columns, see
+     * {@link #plotValues(double[], Integer, Integer)}.
      */
     public static void plotValues(double[] yValues, Integer height)
     {
+        if (yValues.length > DEFAULT_WIDTH) {
+            plotValues(yValues, DEFAULT_WIDTH, height);
+            return;
+        }
         if (height == null)
             height = 30;
         int width = yValues.length;
@@ -78,6 +87,67 @@ public class TextPlot
         plotValues(yv, height);
     }
 
+    /**
+     * Plots a long series of y values, downsampled to the given width. See {@link #plot(Downsampler, Integer)}.
+     */
+    public static void plotValues(double[] yValues, Integer width, Integer height)
+    {
+        plot(Downsampler.of(yValues, width == null || width == 0 ? DEFAULT_WIDTH : width), height);
+    }
+
+    /**
+     * Plots a series of y values of any length, in one pass. See {@link #plot(Downsampler, Integer)}.
+     */
+    public static void plotValues(PrimitiveIterator.OfDouble yValues, Integer width, Integer height)
+    {
+        plot(Downsampler.of(yValues, width == null || width == 0 ? DEFAULT_WIDTH : width), height);
+    }
+
+    /**
+     * Plots the y values in a (possibly memory-mapped) buffer. See {@link #plot(Downsampler, Integer)}.
+     */
+    public static void plotValues(DoubleBuffer yValues, Integer width, Integer height)
+    {
+        plot(Downsampler.of(yValues, width == null || width == 0 ? DEFAULT_WIDTH : width), height);
+    }
+
+    /**
+     * Plots downsampled y values. Every column shows a bar from the min to the max of the values in it.
+     */
+    public static void plot(Downsampler downsampler, Integer height)
+    {
+        if (height == null || height == 0)
+            height = 30;
+        double[] mins = downsampler.getMins();
+        double[] maxs = downsampler.getMaxs();
+        int width = mins.length;
+        double ymin = Double.POSITIVE_INFINITY;
+        double ymax = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < width; v++) {
+            if (NaType.isValue(mins[v]))
+                ymin = Math.min(ymin, mins[v]);
+            if (NaType.isValue(maxs[v]))
+                ymax = Math.max(ymax, maxs[v]);
+        }
+        char[][] points = new char[width][height + 1];
+        for (int v = 0; v < width; v++) {
+            Arrays.fill(points[v], ' ');
+            if ( ! NaType.isValue(mins[v]))
+                continue;
+            int top = ymax == ymin ? 0 : height - (int) Math.round((maxs[v] - ymin) / (ymax - ymin) * height);
+            int bottom = ymax == ymin ? 0 : height - (int) Math.round((mins[v] - ymin) / (ymax - ymin) * height);
+            for (int w = top; w <= bottom; w++)
+                points[v][w] = '+';
+        }
+        for (int w = 0; w < height + 1; w++) {
+            for (int v = 0; v < width; v++) {
+                System.out.print(points[v][w]);
+            }
+            System.out.println();
+        }
+        System.out.printf("%d values, y in [%.2f,%.2f]%n", downsampler.getN(), ymin, ymax);
+    }
+
     /**
      * Plots a number of x/y points. Origin is top left corner.
      */
@@ -88,6 +158,9 @@ public class TextPlot
 
     /**
      * Plots a number of x/y points. Origin is top left corner.
+     *
+     * <p>If there are more points than cells in the plot, the points are downsampled by column of x: only the smallest
+     * and largest y of every column are kept, in O(width) memory, and drawn as a bar from one to the other.
      */
     public static void plotPoints(double[] xs, double[] ys, Integer width, Integer height, boolean flipX, boolean flipY)
     {
@@ -106,19 +179,31 @@ public class TextPlot
         char[][] points = new char[width + 1][height + 1];
         for (int v = 0; v < width + 1; v++)
             Arrays.fill(points[v], ' ');
-        for (int i = 0; i < xs.length; i++) {
-            double x = xs[i];
-            double y = ys[i];
-            int v = flipX ? (int) Math.round(width - ((x - xmin) / (xmax - xmin) * width))
-                          : (int) Math.round((x - xmin) / (xmax - xmin) * width);
-            int w = flipY ? (int) Math.round(height - ((y - ymin) / (ymax - ymin) * height))
-                          : (int) Math.round((y - ymin) / (ymax - ymin) * height);
-            switch (points[v][w]) {
-                case ' ': points[v][w] = '░'; break;
-                case '░': points[v][w] = '▒'; break;
-                case '▒': points[v][w] = '▓'; break;
-                case '▓': points[v][w] = '▓'; break;
-                default:  points[v][w] = '?'; break;
+        if ((long) xs.length > (long) (width + 1) * (height + 1)) {
+            int[] minWs = new int[width + 1];
+            int[] maxWs = new int[width + 1];
+            Arrays.fill(minWs, Integer.MAX_VALUE);
+            Arrays.fill(maxWs, Integer.MIN_VALUE);
+            for (int i = 0; i < xs.length; i++) {
+                int v = gridIndex(xs[i], xmin, xmax, width, flipX);
+                int w = gridIndex(ys[i], ymin, ymax, height, flipY);
+                minWs[v] = Math.min(minWs[v], w);
+                maxWs[v] = Math.max(maxWs[v], w);
+            }
+            for (int v = 0; v < width + 1; v++)
+                for (int w = minWs[v]; w <= maxWs[v]; w++)
+                    points[v][w] = '▓';
+        } else {
+            for (int i = 0; i < xs.length; i++) {
+                int v = gridIndex(xs[i], xmin, xmax, width, flipX);
+                int w = gridIndex(ys[i], ymin, ymax, height, flipY);
+                switch (points[v][w]) {
+                    case ' ': points[v][w] = '░'; break;
+                    case '░': points[v][w] = '▒'; break;
+                    case '▒': points[v][w] = '▓'; break;
+                    case '▓': points[v][w] = '▓'; break;
+                    default:  points[v][w] = '?'; break;
+                }
             }
         }
         for (int w = 0; w < height + 1; w++) {
@@ -129,4 +214,9 @@ public class TextPlot
         }
     }
 
+    private static int gridIndex(double x, double min, double max, int size, boolean flip)
+    {
+        return flip ? (int) Math.round(size - ((x - min) / (max - min) * size))
+                    : (int) Math.round((x - min) / (max - min) * size);
+    }
 }
@@ -0,0 +1,186 @@
+package gmjonker.math;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size mask of booleans packed into longs, one bit per element, like the validity bitmaps of Apache Arrow. Can be
+ * used instead of a {@code boolean[]}, which takes a byte per element, and lets kernels such as those of
+ * {@link DoubleColumn} skip 64 unset elements at a time.
+ *
+ * <p>Bit i is bit {@code i % 64} of word {@code i / 64}. Bits beyond the size are always unset. Not thread-safe.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ValidityMask
+{
+    private final int size;
+    final long[] words;
+
+    /** All unset. **/
+    public ValidityMask(int size)
+    {
+        if (size < 0)
+            throw new IllegalArgumentException("Size must be >= 0");
+        this.size = size;
+        words = new long[numWords(size)];
+    }
+
+    private ValidityMask(int size, long[] words)
+    {
+        this.size = size;
+        this.words = words;
+    }
+
+    public static ValidityMask of(boolean[] bits)
+    {
+        ValidityMask mask = new ValidityMask(bits.length);
+        for (int i = 0; i < bits.length; i++)
+            if (bits[i])
+                mask.words[i >>> 6] |= 1L << i;
+        return mask;
+    }
+
+    public static ValidityMask allSet(int size)
+    {
+        ValidityMask mask = new ValidityMask(size);
+        mask.setAll();
+        return mask;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean get(int i)
+    {
+        checkIndex(i);
+        return (words[i >>> 6] & 1L << i) != 0;
+    }
+
+    public void set(int i)
+    {
+        checkIndex(i);
+        words[i >>> 6] |= 1L << i;
+    }
+
+    public void set(int i, boolean bit)
+    {
+        if (bit)
+            set(i);
+        else
+            clear(i);
+    }
+
+    public void clear(int i)
+    {
+        checkIndex(i);
+        words[i >>> 6] &= ~(1L << i);
+    }
+
+    public void setAll()
+    {
+        Arrays.fill(words, -1L);
+        clearTail();
+    }
+
+    /** Number of set bits. **/
+    public int cardinality()
+    {
+        int count = 0;
+        for (long word : words)
+            count += Long.bitCount(word);
+        return count;
+    }
+
+    /** Index of the first set bit at or after {@code from}, or -1 if there is none. **/
+    public int nextSetBit(int from)
+    {
+        if (from >= size)
+            return -1;
+        int w = from >>> 6;
+        long word = words[w] & -1L << from;
+        while (word == 0) {
+            if (++w == words.length)
+                return -1;
+            word = words[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /** New mask with the bits that are set in both. **/
+    public ValidityMask and(ValidityMask other)
+    {
+        checkSize(other);
+        long[] result = new long[words.length];
+        for (int w = 0; w < words.length; w++)
+            result[w] = words[w] & other.words[w];
+        return new ValidityMask(size, result);
+    }
+
+    /** New mask with the bits that are set in either. **/
+    public ValidityMask or(ValidityMask other)
+    {
+        checkSize(other);
+        long[] result = new long[words.length];
+        for (int w = 0; w < words.length; w++)
+            result[w] = words[w] | other.words[w];
+        return new ValidityMask(size, result);
+    }
+
+    public ValidityMask copy()
+    {
+        return new ValidityMask(size, words.clone());
+    }
+
+    public boolean[] toBooleanArray()
+    {
+        boolean[] bits = new boolean[size];
+        for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1))
+            bits[i] = true;
+        return bits;
+    }
+
+    static int numWords(int size)
+    {
+        return (size + 63) >>> 6;
+    }
+
+    void checkSize(ValidityMask other)
+    {
+        if (other.size != size)
+            throw new IllegalArgumentException("Sizes differ: " + size + " != " + other.size);
+    }
+
+    private void clearTail()
+    {
+        if (size % 64 != 0)
+            words[words.length - 1] &= -1L >>> (64 - size % 64);
+    }
+
+    private void checkIndex(int i)
+    {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Index " + i + ", size " + size);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ValidityMask that = (ValidityMask) o;
+        return size == that.size && Arrays.equals(words, that.words);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * size + Arrays.hashCode(words);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ValidityMask{size=" + size + ", set=" + cardinality() + "}";
+    }
+}
@@ -0,0 +1,172 @@
+package gmjonker.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.DoubleConsumer;
+import java.util.stream.DoubleStream;
+
+/**
+ * Growable list of primitive doubles, to avoid the boxing of {@code List<Double>}. Not thread-safe.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DoubleList
+{
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private double[] elements;
+    private int size = 0;
+
+    public DoubleList()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public DoubleList(int capacity)
+    {
+        elements = new double[capacity];
+    }
+
+    public static DoubleList of(double... values)
+    {
+        DoubleList list = new DoubleList(values.length);
+        list.addAll(values);
+        return list;
+    }
+
+    public static DoubleList of(Collection<Double> values)
+    {
+        DoubleList list = new DoubleList(values.size());
+        for (Double value : values)
+            list.add(value);
+        return list;
+    }
+
+    /** Works for parallel streams too; the order of the stream is kept. **/
+    public static DoubleList of(DoubleStream stream)
+    {
+        return stream.collect(DoubleList::new, DoubleList::add, DoubleList::addAll);
+    }
+
+    public void add(double value)
+    {
+        if (size == elements.length)
+            grow(size + 1);
+        elements[size++] = value;
+    }
+
+    public void addAll(double[] values)
+    {
+        if (size + values.length > elements.length)
+            grow(size + values.length);
+        System.arraycopy(values, 0, elements, size, values.length);
+        size += values.length;
+    }
+
+    public void addAll(DoubleList other)
+    {
+        if (size + other.size > elements.length)
+            grow(size + other.size);
+        System.arraycopy(other.elements, 0, elements, size, other.size);
+        size += other.size;
+    }
+
+    public double get(int index)
+    {
+        checkIndex(index);
+        return elements[index];
+    }
+
+    public void set(int index, double value)
+    {
+        checkIndex(index);
+        elements[index] = value;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public void clear()
+    {
+        size = 0;
+    }
+
+    /**
+     * The backing array, without copying. Only the first {@link #size()} elements are valid, and the array is replaced
+     * when the list grows.
+     */
+    public double[] elements()
+    {
+        return elements;
+    }
+
+    public double[] toArray()
+    {
+        return Arrays.copyOf(elements, size);
+    }
+
+    public DoubleStream stream()
+    {
+        return Arrays.stream(elements, 0, size);
+    }
+
+    public void forEach(DoubleConsumer consumer)
+    {
+        for (int i = 0; i < size; i++)
+            consumer.accept(elements[i]);
+    }
+
+    private void grow(int minCapacity)
+    {
+        elements = Arrays.copyOf(elements, Math.max(minCapacity, Math.max(DEFAULT_CAPACITY, elements.length * 2)));
+    }
+
+    private void checkIndex(int index)
+    {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DoubleList that = (DoubleList) o;
+        if (size != that.size)
+            return false;
+        for (int i = 0; i < size; i++)
+            if (Double.compare(elements[i], that.elements[i]) != 0)
+                return false;
+        return true;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = 1;
+        for (int i = 0; i < size; i++) {
+            long bits = Double.doubleToLongBits(elements[i]);
+            result = 31 * result + (int) (bits ^ (bits >>> 32));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(elements[i]);
+        }
+        return sb.append("]").toString();
+    }
+}
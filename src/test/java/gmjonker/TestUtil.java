@@ -2,10 +2,27 @@ package gmjonker;
 
 import gmjonker.math.Indication;
 
+import java.util.Random;
+
 public class TestUtil
 {
     public static Indication ind(double value, double indication)
     {
         return new Indication(value, indication);
     }
+
+    /** Value uniform in [minValue,1), confidence uniform in [0,maxConfidence). **/
+    public static Indication randomIndication(Random random, double minValue, double maxConfidence)
+    {
+        return new Indication(minValue + random.nextDouble() * (1 - minValue), random.nextDouble() * maxConfidence);
+    }
+
+    /** See {@link #randomIndication(Random, double, double)}. **/
+    public static Indication[] randomIndications(int n, Random random, double minValue, double maxConfidence)
+    {
+        Indication[] indications = new Indication[n];
+        for (int i = 0; i < n; i++)
+            indications[i] = randomIndication(random, minValue, maxConfidence);
+        return indications;
+    }
 }
@@ -0,0 +1,130 @@
+package gmjonker.math;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static gmjonker.math.NaType.isValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class BatchMathTest
+{
+    @Test
+    public void elementWiseFunctionsMatchSigmoidMath()
+    {
+        Random random = new Random(1);
+        // Odd length, to cover the loop tails
+        double[] xs = new double[1001];
+        for (int i = 0; i < xs.length; i++)
+            xs[i] = random.nextGaussian() * 5;
+        xs[0] = Double.POSITIVE_INFINITY;
+        xs[1] = Double.NEGATIVE_INFINITY;
+        double[] out = new double[xs.length];
+
+        BatchMath.sigmoid(xs, -1.1, 1.1, out);
+        for (int i = 0; i < xs.length; i++)
+            assertThat(out[i], closeTo(SigmoidMath.sigmoid(xs[i], -1.1, 1.1), 1e-15));
+
+        BatchMath.fastSigmoidAlternative(xs, -1, 1, out);
+        for (int i = 0; i < xs.length; i++)
+            assertThat(out[i], closeTo(SigmoidMath.fastSigmoidAlternative(xs[i], -1, 1), 1e-15));
+
+        double[] cs = new double[1001];
+        for (int i = 0; i < cs.length; i++)
+            cs[i] = random.nextDouble() * 2 - 1;
+        BatchMath.logit(cs, -1.1, 1.1, out);
+        for (int i = 0; i < cs.length; i++)
+            assertThat(out[i], closeTo(SigmoidMath.logit(cs[i], -1.1, 1.1), 1e-12));
+
+        BatchMath.fastLogitAlternative(cs, -1, 1, out);
+        for (int i = 0; i < cs.length; i++)
+            assertThat(out[i], is(SigmoidMath.fastLogitAlternative(cs[i], -1, 1)));
+        BatchMath.fastLogitAlternative(cs, 1, -1, out);
+        for (int i = 0; i < cs.length; i++)
+            assertThat(out[i], is(SigmoidMath.fastLogitAlternative(cs[i], 1, -1)));
+    }
+
+    @Test
+    public void outputMayBeInput()
+    {
+        double[] xs = {-2, 0, 2};
+        BatchMath.sigmoid(xs, 0, 1, xs);
+        assertThat(xs[1], is(.5));
+        assertThat(xs[2], closeTo(SigmoidMath.sigmoid(2), 1e-15));
+    }
+
+    @Test
+    public void logitOutsideRangeIsNaN()
+    {
+        double[] out = new double[2];
+        BatchMath.logit(new double[] {-2, 2}, -1, 1, out);
+        assertThat(isValue(out[0]), is(false));
+        assertThat(isValue(out[1]), is(false));
+    }
+
+    @Test
+    public void reductionsMatchGeneralMath()
+    {
+        Random random = new Random(2);
+        for (int n = 1; n <= 40; n++) {
+            double[] values = new double[n];
+            double[] weights = new double[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = random.nextDouble() * 2 - 1;
+                weights[i] = random.nextDouble() * 3;
+            }
+            assertThat(BatchMath.weightedMean(values, weights),
+                    closeTo(GeneralMath.weightedMean(values, weights), 1e-12));
+            assertThat(BatchMath.weightedVariance(values, weights),
+                    closeTo(GeneralMath.weightedVariance(values, weights), 1e-12));
+            assertThat(BatchMath.rootWeightedMeanSquareError(values, weights),
+                    closeTo(GeneralMath.rootWeightedMeanSquareError(values, weights), 1e-12));
+
+            double[] positives = new double[n];
+            for (int i = 0; i < n; i++)
+                positives[i] = random.nextDouble();
+            for (double exponent : new double[] {1, 2, 3, .5, -1})
+                assertThat(BatchMath.powerMean(positives, exponent),
+                        closeTo(GeneralMath.powerMean(positives, exponent), 1e-12));
+        }
+    }
+
+    @Test
+    public void infiniteWeights()
+    {
+        double[] values = {.2, .4, .6, .8, 1};
+        double[] weights = {1, Double.POSITIVE_INFINITY, 1, 1, 1};
+        assertThat(BatchMath.weightedMean(values, weights), closeTo(.4, 1e-12));
+        assertThat(BatchMath.weightedMean(values, weights), is(GeneralMath.weightedMean(values, weights)));
+    }
+
+    @Test
+    public void weightedVarianceRejectsWeightsLikeGeneralMath()
+    {
+        double[] values = {.2, .4, .6};
+        for (double[] weights : new double[][] {{1, Double.POSITIVE_INFINITY, 1}, {1, -1, 1}, {1, Double.NaN, 1},
+                {0, 0, 0}}) {
+            assertThrowsIllegalArgument(() -> GeneralMath.weightedVariance(values, weights));
+            assertThrowsIllegalArgument(() -> BatchMath.weightedVariance(values, weights));
+        }
+    }
+
+    private static void assertThrowsIllegalArgument(Runnable runnable)
+    {
+        try {
+            runnable.run();
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shorterSecondArrayThrows()
+    {
+        BatchMath.weightedMean(new double[3], new double[2]);
+    }
+}
@@ -0,0 +1,105 @@
+package gmjonker.math;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static gmjonker.math.CombineMetrics.Operation.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+@SuppressWarnings("deprecation")
+public class CombineMetricsTest
+{
+    @Before
+    public void setUp()
+    {
+        CombineMetrics.reset();
+        CombineMetrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown()
+    {
+        CombineMetrics.setEnabled(false);
+        CombineMetrics.unregisterMBean();
+        CombineMetrics.reset();
+    }
+
+    @Test
+    public void recordsCombines()
+    {
+        IndicationMath.combine(new Indication(.5, .5), new Indication(.2, .8));
+        IndicationMath.combine(Arrays.asList(new Indication(.5, .5), new Indication(.2, .8), new Indication(0, 1)));
+        IndicationMath.combineStrict(new Indication[] {new Indication(.5, .5)}, false);
+        IndicationMathFast.combine(new Indication(.5, .5));
+        ScoreMath.combine01(new Score(.5, .5), new Score(.2, .8));
+        ScoreMathFast.combine01(new Score(.5, .5));
+
+        CombineMetrics.Stats stats = CombineMetrics.get(INDICATION_COMBINE);
+        assertThat(stats.getCalls(), is(2L));
+        assertThat(stats.getMeanSize(), closeTo(2.5, 1e-12));
+        assertThat(stats.getSizeHistogram()[2], is(2L));
+        assertThat(stats.getSizeQuantile(1), is(3L));
+        assertThat(stats.getTotalNanos(), greaterThan(0L));
+        assertThat(stats.getLatencyQuantileNanos(.99), greaterThan(0L));
+        assertThat(CombineMetrics.get(INDICATION_COMBINE_STRICT).getCalls(), is(1L));
+        assertThat(CombineMetrics.get(INDICATION_FAST_COMBINE).getCalls(), is(1L));
+        assertThat(CombineMetrics.get(SCORE_COMBINE_01).getCalls(), is(1L));
+        // combine01 delegates to combineM11 without counting it again
+        assertThat(CombineMetrics.get(SCORE_COMBINE_M11).getCalls(), is(0L));
+        assertThat(CombineMetrics.get(SCORE_FAST_COMBINE_01).getCalls(), is(1L));
+    }
+
+    @Test
+    public void recordsNothingWhenDisabled()
+    {
+        CombineMetrics.setEnabled(false);
+        IndicationMath.combine(new Indication(.5, .5), new Indication(.2, .8));
+        assertThat(CombineMetrics.get(INDICATION_COMBINE).getCalls(), is(0L));
+        assertThat(CombineMetrics.get(INDICATION_COMBINE).getLatencyQuantileNanos(.5), is(-1L));
+    }
+
+    @Test
+    public void nullArraysGiveNaLikeWithoutMetrics()
+    {
+        assertThat(IndicationMath.combine((Indication[]) null, null), is(Indication.NA_INDICATION));
+        assertThat(IndicationMath.combineNoDisagreementEffect((Indication[]) null, null), is(Indication.NA_INDICATION));
+        assertThat(IndicationMath.combineStrict((Indication[]) null, false), is(Indication.NA_INDICATION));
+        assertThat(ScoreMath.combineM11((Score[]) null, null).isNa(), is(true));
+        assertThat(CombineMetrics.get(INDICATION_COMBINE).getSizeHistogram()[0], is(1L));
+    }
+
+    @Test
+    public void buckets()
+    {
+        assertThat(CombineMetrics.bucket(0), is(0));
+        assertThat(CombineMetrics.bucket(1), is(1));
+        assertThat(CombineMetrics.bucket(3), is(2));
+        assertThat(CombineMetrics.bucket(4), is(3));
+        assertThat(CombineMetrics.bucket(Long.MAX_VALUE), is(63));
+        assertThat(CombineMetrics.bucketUpperBound(2), is(3L));
+    }
+
+    @Test
+    public void exposesViaJmx() throws Exception
+    {
+        CombineMetrics.registerMBean();
+        IndicationMath.combine(new Indication(.5, .5), new Indication(.2, .8));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(CombineMetrics.OBJECT_NAME);
+        assertThat(server.getAttribute(name, "Enabled"), is(true));
+        TabularData calls = (TabularData) server.getAttribute(name, "Calls");
+        assertThat(calls.get(new Object[] {INDICATION_COMBINE.name()}).get("value"), is(1L));
+        server.invoke(name, "reset", null, null);
+        assertThat(CombineMetrics.get(INDICATION_COMBINE).getCalls(), is(0L));
+    }
+}
@@ -0,0 +1,314 @@
+package gmjonker.math;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.NaType.isValue;
+
+/**
+ * Differential test of the fast combiners against the exact ones: {@link IndicationMathFast#combine(Indication[], double[])}
+ * against {@link IndicationMath#combine(Indication[], double[])}, and {@link ScoreMathFast#combine01(Score[], double[])}
+ * against {@link ScoreMath#combine01(Score[], double[])}. Both are run on the same randomized corpora, and the absolute
+ * differences of value and confidence are collected, next to the throughput of either side.
+ *
+ * <p>A case where exactly one side is NA (or NaN) counts as an NA mismatch instead of an error. A {@link Report} can be
+ * checked against an {@link ErrorBudget}; {@link #main(String[])} prints all reports and exits with status 1 if any
+ * exceeds the budget.
+ *
+ * <p>Throughput is measured by timing each side over the whole corpus after a warmup pass. It is meant for comparison
+ * next to the errors; use the JMH benchmarks for precise numbers.
+ *
+ * <p>This is a test tool, not part of the library. Run it with {@code ./gradlew accuracyHarness [-PharnessArgs='...']}
+ * or {@code mvn test-compile exec:java -Dexec.mainClass=gmjonker.math.CombinerAccuracyHarness
+ * -Dexec.classpathScope=test [-Dexec.args='...']}.
+ */
+@SuppressWarnings({"WeakerAccess", "deprecation"})
+public class CombinerAccuracyHarness
+{
+    public enum Corpus
+    {
+        /** Uniform values and confidences. **/
+        RANDOM,
+        /** Values close together, high confidences. **/
+        AGREEING,
+        /** Values at both ends of the range. **/
+        DISAGREEING,
+        /** Values and confidences at the edges of their ranges: -1, 0, 1, and confidences 0 and 1 within 1e-9. **/
+        EXTREME,
+        /** Uniform, with random weights. **/
+        WEIGHTED,
+        /** Uniform, with one in five values or confidences NA. **/
+        WITH_NA,
+    }
+
+    public enum Combiner
+    {
+        INDICATION, SCORE
+    }
+
+    /** Largest acceptable errors, for value and confidence alike. **/
+    public static class ErrorBudget
+    {
+        public final double maxError;
+        public final double p99Error;
+        public final double meanAbsoluteError;
+        public final long naMismatches;
+
+        public ErrorBudget(double maxError, double p99Error, double meanAbsoluteError, long naMismatches)
+        {
+            this.maxError = maxError;
+            this.p99Error = p99Error;
+            this.meanAbsoluteError = meanAbsoluteError;
+            this.naMismatches = naMismatches;
+        }
+    }
+
+    public static class Report
+    {
+        public final Combiner combiner;
+        public final Corpus corpus;
+        private final DoubleSummary valueErrors = new DoubleSummary();
+        private final DoubleSummary confidenceErrors = new DoubleSummary();
+        private final QuantileSketch valueErrorSketch = new QuantileSketch(QuantileSketch.DEFAULT_K, new Random(0));
+        private final QuantileSketch confidenceErrorSketch = new QuantileSketch(QuantileSketch.DEFAULT_K, new Random(0));
+        private long numCases = 0;
+        private long naMismatches = 0;
+        private long exactNanos;
+        private long fastNanos;
+
+        private Report(Combiner combiner, Corpus corpus)
+        {
+            this.combiner = combiner;
+            this.corpus = corpus;
+        }
+
+        private void add(double exactValue, double exactConfidence, double fastValue, double fastConfidence)
+        {
+            numCases++;
+            if (isValue(exactValue) != isValue(fastValue) || isValue(exactConfidence) != isValue(fastConfidence)) {
+                naMismatches++;
+                return;
+            }
+            addError(exactValue, fastValue, valueErrors, valueErrorSketch);
+            addError(exactConfidence, fastConfidence, confidenceErrors, confidenceErrorSketch);
+        }
+
+        private void addError(double exact, double fast, DoubleSummary errors, QuantileSketch sketch)
+        {
+            double error = isValue(exact) ? Math.abs(exact - fast) : 0;
+            errors.add(error);
+            sketch.addValue(error);
+        }
+
+        public long getNumCases()
+        {
+            return numCases;
+        }
+
+        public long getNaMismatches()
+        {
+            return naMismatches;
+        }
+
+        public double getMaxValueError()
+        {
+            return valueErrors.getMax();
+        }
+
+        public double getP99ValueError()
+        {
+            return valueErrorSketch.getQuantile(.99);
+        }
+
+        public double getMeanAbsoluteValueError()
+        {
+            return valueErrors.getMean();
+        }
+
+        public double getMaxConfidenceError()
+        {
+            return confidenceErrors.getMax();
+        }
+
+        public double getP99ConfidenceError()
+        {
+            return confidenceErrorSketch.getQuantile(.99);
+        }
+
+        public double getMeanAbsoluteConfidenceError()
+        {
+            return confidenceErrors.getMean();
+        }
+
+        /** Combines per second. **/
+        public double getExactThroughput()
+        {
+            return exactNanos == 0 ? NA : getNumCases() * 1e9 / exactNanos;
+        }
+
+        /** Combines per second. **/
+        public double getFastThroughput()
+        {
+            return fastNanos == 0 ? NA : getNumCases() * 1e9 / fastNanos;
+        }
+
+        /** Descriptions of everything that exceeds the budget, empty if within budget. **/
+        public List<String> getViolations(ErrorBudget budget)
+        {
+            List<String> violations = new ArrayList<>();
+            check(violations, "max value error", getMaxValueError(), budget.maxError);
+            check(violations, "p99 value error", getP99ValueError(), budget.p99Error);
+            check(violations, "mean absolute value error", getMeanAbsoluteValueError(), budget.meanAbsoluteError);
+            check(violations, "max confidence error", getMaxConfidenceError(), budget.maxError);
+            check(violations, "p99 confidence error", getP99ConfidenceError(), budget.p99Error);
+            check(violations, "mean absolute confidence error", getMeanAbsoluteConfidenceError(),
+                    budget.meanAbsoluteError);
+            check(violations, "NA mismatches", naMismatches, budget.naMismatches);
+            return violations;
+        }
+
+        public boolean isWithin(ErrorBudget budget)
+        {
+            return getViolations(budget).isEmpty();
+        }
+
+        private void check(List<String> violations, String name, double actual, double allowed)
+        {
+            if (actual > allowed)
+                violations.add(String.format("%s %s: %s %.6g > %.6g", combiner, corpus, name, actual, allowed));
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%-10s %-11s n=%-7d value max=%.2e p99=%.2e mae=%.2e | confidence max=%.2e p99=%.2e "
+                            + "mae=%.2e | na-mismatches=%d | exact %.0f/s fast %.0f/s",
+                    combiner, corpus, getNumCases(), getMaxValueError(), getP99ValueError(),
+                    getMeanAbsoluteValueError(), getMaxConfidenceError(), getP99ConfidenceError(),
+                    getMeanAbsoluteConfidenceError(), naMismatches, getExactThroughput(), getFastThroughput());
+        }
+    }
+
+    /**
+     * Runs both sides of the given combiner on a corpus of {@code numCases} combines of 1 to {@code maxSize} inputs.
+     */
+    public static Report compare(Combiner combiner, Corpus corpus, int numCases, int maxSize, long seed)
+    {
+        Random random = new Random(seed);
+        Indication[][] cases = new Indication[numCases][];
+        double[][] weights = new double[numCases][];
+        for (int c = 0; c < numCases; c++) {
+            int size = 1 + random.nextInt(maxSize);
+            cases[c] = new Indication[size];
+            for (int i = 0; i < size; i++)
+                cases[c][i] = generate(corpus, random);
+            if (corpus == Corpus.WEIGHTED) {
+                weights[c] = new double[size];
+                for (int i = 0; i < size; i++)
+                    weights[c][i] = random.nextDouble() * 3;
+            }
+        }
+
+        Report report = new Report(combiner, corpus);
+        if (combiner == Combiner.INDICATION) {
+            Indication[] exact = new Indication[numCases];
+            Indication[] fast = new Indication[numCases];
+            for (int pass = 0; pass < 2; pass++) {
+                long start = System.nanoTime();
+                for (int c = 0; c < numCases; c++)
+                    exact[c] = IndicationMath.combine(cases[c], weights[c]);
+                report.exactNanos = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int c = 0; c < numCases; c++)
+                    fast[c] = IndicationMathFast.combine(cases[c], weights[c]);
+                report.fastNanos = System.nanoTime() - start;
+            }
+            for (int c = 0; c < numCases; c++)
+                report.add(exact[c].value, exact[c].confidence, fast[c].value, fast[c].confidence);
+        } else {
+            Score[][] scoreCases = new Score[numCases][];
+            for (int c = 0; c < numCases; c++) {
+                scoreCases[c] = new Score[cases[c].length];
+                for (int i = 0; i < cases[c].length; i++)
+                    scoreCases[c][i] = new Score((cases[c][i].value + 1) / 2, cases[c][i].confidence);
+            }
+            Score[] exact = new Score[numCases];
+            Score[] fast = new Score[numCases];
+            for (int pass = 0; pass < 2; pass++) {
+                long start = System.nanoTime();
+                for (int c = 0; c < numCases; c++)
+                    exact[c] = ScoreMath.combine01(scoreCases[c], weights[c]);
+                report.exactNanos = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int c = 0; c < numCases; c++)
+                    fast[c] = ScoreMathFast.combine01(scoreCases[c], weights[c]);
+                report.fastNanos = System.nanoTime() - start;
+            }
+            for (int c = 0; c < numCases; c++)
+                report.add(exact[c].value, exact[c].confidence, fast[c].value, fast[c].confidence);
+        }
+        return report;
+    }
+
+    /** Compares both combiners on all corpora. **/
+    public static List<Report> compareAll(int numCases, int maxSize, long seed)
+    {
+        List<Report> reports = new ArrayList<>();
+        for (Combiner combiner : Combiner.values())
+            for (Corpus corpus : Corpus.values())
+                reports.add(compare(combiner, corpus, numCases, maxSize, seed));
+        return reports;
+    }
+
+    private static Indication generate(Corpus corpus, Random random)
+    {
+        switch (corpus) {
+            case AGREEING:
+                return new Indication(.6 + random.nextDouble() * .1, .8 + random.nextDouble() * .2);
+            case DISAGREEING:
+                return new Indication(random.nextBoolean() ? 1 - random.nextDouble() * .1 : -1 + random.nextDouble() * .1,
+                        random.nextDouble());
+            case EXTREME:
+                double[] values = {-1, 0, 1};
+                double[] confidences = {0, 1e-9, .5, 1 - 1e-9, 1};
+                return new Indication(values[random.nextInt(values.length)],
+                        confidences[random.nextInt(confidences.length)]);
+            case WITH_NA:
+                Indication indication = new Indication(random.nextDouble() * 2 - 1, random.nextDouble());
+                if (random.nextInt(5) == 0) {
+                    if (random.nextBoolean())
+                        indication.value = NA;
+                    else
+                        indication.confidence = NA;
+                }
+                return indication;
+            default:
+                return new Indication(random.nextDouble() * 2 - 1, random.nextDouble());
+        }
+    }
+
+    /**
+     * Usage: CombinerAccuracyHarness [numCases [maxSize [maxError p99Error meanAbsoluteError]]]. Without a budget, only
+     * reports.
+     */
+    public static void main(String[] args)
+    {
+        int numCases = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int maxSize = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        ErrorBudget budget = args.length > 4
+                ? new ErrorBudget(Double.parseDouble(args[2]), Double.parseDouble(args[3]), Double.parseDouble(args[4]), 0)
+                : null;
+        List<String> violations = new ArrayList<>();
+        for (Report report : compareAll(numCases, maxSize, 1)) {
+            System.out.println(report);
+            if (budget != null)
+                violations.addAll(report.getViolations(budget));
+        }
+        if ( ! violations.isEmpty()) {
+            violations.forEach(System.out::println);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package gmjonker.math;
+
+import gmjonker.math.CombinerAccuracyHarness.Combiner;
+import gmjonker.math.CombinerAccuracyHarness.Corpus;
+import gmjonker.math.CombinerAccuracyHarness.ErrorBudget;
+import gmjonker.math.CombinerAccuracyHarness.Report;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+
+public class CombinerAccuracyHarnessTest
+{
+    private static final ErrorBudget LOOSE = new ErrorBudget(1, 1, 1, 0);
+    private static final ErrorBudget EXACT = new ErrorBudget(1e-12, 1e-12, 1e-12, 0);
+
+    @Test
+    public void fastIndicationCombineKeepsValues()
+    {
+        Report report = CombinerAccuracyHarness.compare(Combiner.INDICATION, Corpus.RANDOM, 2000, 16, 1);
+        assertThat(report.getNumCases(), is(2000L));
+        assertThat(report.getMaxValueError(), lessThan(1e-12));
+        assertThat(report.getMaxConfidenceError(), greaterThan(0.0));
+        assertThat(report.getP99ConfidenceError(), lessThanOrEqualTo(report.getMaxConfidenceError()));
+        assertThat(report.getMeanAbsoluteConfidenceError(), lessThan(report.getP99ConfidenceError()));
+        assertThat(report.getExactThroughput(), greaterThan(0.0));
+        assertThat(report.getFastThroughput(), greaterThan(0.0));
+        assertThat(report.isWithin(LOOSE), is(true));
+        assertThat(report.isWithin(EXACT), is(false));
+    }
+
+    @Test
+    public void reportsViolations()
+    {
+        Report report = CombinerAccuracyHarness.compare(Combiner.SCORE, Corpus.DISAGREEING, 1000, 8, 1);
+        assertThat(report.getViolations(LOOSE), is(empty()));
+        List<String> violations = report.getViolations(EXACT);
+        assertThat(violations, is(not(empty())));
+        assertThat(violations.get(0).startsWith("SCORE DISAGREEING: max confidence error"), is(true));
+    }
+
+    @Test
+    public void countsNaMismatches()
+    {
+        Report report = CombinerAccuracyHarness.compare(Combiner.INDICATION, Corpus.WITH_NA, 1000, 8, 1);
+        assertThat(report.getNaMismatches(), greaterThan(0L));
+        assertThat(report.getNaMismatches(), lessThanOrEqualTo(1000L));
+        assertThat(report.isWithin(LOOSE), is(false));
+    }
+}
@@ -0,0 +1,123 @@
+package gmjonker.math;
+
+import gmjonker.math.CosineIndex.Neighbour;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+public class CosineIndexTest
+{
+    @Test
+    public void exactSearchMatchesCosineDistance()
+    {
+        Random random = new Random(1);
+        List<double[]> vectors = randomVectors(10000, 20, random);
+        CosineIndex index = new CosineIndex(20);
+        vectors.forEach(index::add);
+        index.add(new double[20]); // zero vector, never returned
+
+        for (int q = 0; q < 5; q++) {
+            double[] query = randomVectors(1, 20, random).get(0);
+            List<Neighbour> expected = bruteForce(vectors, query, 10);
+            assertThat(index.search(query, 10), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void batchSearchMatchesSingleSearch()
+    {
+        Random random = new Random(2);
+        CosineIndex index = new CosineIndex(8);
+        randomVectors(3000, 8, random).forEach(index::add);
+        double[][] queries = randomVectors(50, 8, random).toArray(new double[0][]);
+
+        List<List<Neighbour>> results = index.search(queries, 5);
+        assertThat(results.size(), is(50));
+        for (int q = 0; q < queries.length; q++)
+            assertThat(results.get(q), equalTo(index.search(queries[q], 5)));
+    }
+
+    @Test
+    public void smallBatchOverManyVectorsMatchesSingleSearch()
+    {
+        Random random = new Random(4);
+        CosineIndex index = new CosineIndex(4);
+        randomVectors(3 * CosineIndex.CHUNK_SIZE + 17, 4, random).forEach(index::add);
+        double[][] queries = randomVectors(3, 4, random).toArray(new double[0][]);
+
+        List<List<Neighbour>> results = index.search(queries, 7);
+        for (int q = 0; q < queries.length; q++)
+            assertThat(results.get(q), equalTo(index.search(queries[q], 7)));
+    }
+
+    @Test
+    public void approximateSearchRecallGrowsWithNumberOfTables()
+    {
+        Random random = new Random(3);
+        CosineIndex index = new CosineIndex(16);
+        randomVectors(5000, 16, random).forEach(index::add);
+        index.buildLsh(16, 8, 42);
+        double[][] queries = randomVectors(100, 16, random).toArray(new double[0][]);
+        List<List<Neighbour>> exact = index.search(queries, 10);
+
+        double recallFewTables = recall(exact, index.searchApproximate(queries, 10, 2));
+        double recallAllTables = recall(exact, index.searchApproximate(queries, 10, 16));
+        assertThat(recallAllTables, greaterThan(recallFewTables));
+        assertThat(recallAllTables, greaterThan(.8));
+        assertThat(index.searchApproximate(queries[0], 10, 16), equalTo(index.searchApproximate(queries, 10, 16).get(0)));
+    }
+
+    @Test
+    public void vectorsAddedAfterBuildingLshAreFound()
+    {
+        CosineIndex index = new CosineIndex(2);
+        index.buildLsh(4, 4, 1);
+        index.add(new double[] {1, 2});
+        index.add(new double[] {-1, -1});
+        List<Neighbour> neighbours = index.searchApproximate(new double[] {2, 4}, 1, 4);
+        assertThat(neighbours.size(), is(1));
+        assertThat(neighbours.get(0).id, is(0));
+    }
+
+    private static double recall(List<List<Neighbour>> exact, List<List<Neighbour>> approximate)
+    {
+        int found = 0;
+        int total = 0;
+        for (int q = 0; q < exact.size(); q++) {
+            total += exact.get(q).size();
+            for (Neighbour neighbour : exact.get(q))
+                if (approximate.get(q).contains(neighbour))
+                    found++;
+        }
+        return (double) found / total;
+    }
+
+    private static List<Neighbour> bruteForce(List<double[]> vectors, double[] query, int k)
+    {
+        List<Neighbour> neighbours = new ArrayList<>();
+        for (int i = 0; i < vectors.size(); i++)
+            neighbours.add(new Neighbour(i, CosineDistance.distance(vectors.get(i), query)));
+        neighbours.sort(Comparator.<Neighbour>comparingDouble(n -> n.distance).thenComparingInt(n -> n.id));
+        return neighbours.subList(0, k);
+    }
+
+    private static List<double[]> randomVectors(int n, int dimension, Random random)
+    {
+        List<double[]> vectors = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            double[] vector = new double[dimension];
+            for (int d = 0; d < dimension; d++)
+                vector[d] = random.nextGaussian();
+            vectors.add(vector);
+        }
+        return vectors;
+    }
+}
@@ -0,0 +1,74 @@
+package gmjonker.math;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static gmjonker.math.NaType.NA_L;
+import static gmjonker.math.NaType.isValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+public class DecayedStatisticsMapTest
+{
+    @Test
+    public void matchesDecayedStatisticsPerEntity()
+    {
+        Random random = new Random(1);
+        DecayedStatisticsMap map = new DecayedStatisticsMap(20, 0, 4);
+        Map<Long, DecayedStatistics> expected = new HashMap<>();
+        for (int i = 0; i < 50000; i++) {
+            long id = random.nextInt(3000) * 7919L - 1000000;
+            double time = i * .01 + random.nextDouble();
+            double value = random.nextGaussian();
+            map.add(id, time, value);
+            expected.computeIfAbsent(id, key -> new DecayedStatistics(20)).add(time, value);
+        }
+        assertThat(map.size(), is(expected.size()));
+        for (Map.Entry<Long, DecayedStatistics> entry : expected.entrySet()) {
+            long id = entry.getKey();
+            assertThat(map.contains(id), is(true));
+            assertThat(map.getMean(id), is(entry.getValue().getMean()));
+            assertThat(map.getVariance(id), is(entry.getValue().getVariance()));
+            assertThat(map.getWeight(id, 600), is(entry.getValue().getWeight(600)));
+        }
+        long[] ids = map.getIds();
+        Arrays.sort(ids);
+        assertThat(ids, is(expected.keySet().stream().mapToLong(Long::longValue).sorted().toArray()));
+        assertThat(isValue(map.getMean(42)), is(false));
+        assertThat(map.contains(42), is(false));
+    }
+
+    @Test
+    public void removeOlderThan()
+    {
+        DecayedStatisticsMap map = new DecayedStatisticsMap(1);
+        for (long id = 0; id < 1000; id++)
+            map.add(id, id, 1);
+        assertThat(map.removeOlderThan(600), is(600));
+        assertThat(map.size(), is(400));
+        assertThat(map.contains(599), is(false));
+        assertThat(map.getLatestTime(600), is(600.0));
+    }
+
+    @Test
+    public void concurrentUpdates()
+    {
+        DecayedStatisticsMap map = new DecayedStatisticsMap(1e15);
+        IntStream.range(0, 400000).parallel().forEach(i -> map.add(i % 1000, i, 1));
+        assertThat(map.size(), is(1000));
+        for (long id = 0; id < 1000; id++)
+            assertThat(map.getWeight(id, 400000), closeTo(400, 1e-6));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void naIdThrows()
+    {
+        new DecayedStatisticsMap(1).add(NA_L, 0, 1);
+    }
+}
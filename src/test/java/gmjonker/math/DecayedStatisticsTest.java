@@ -0,0 +1,120 @@
+package gmjonker.math;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.NaType.isValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+public class DecayedStatisticsTest
+{
+    @Test
+    public void matchesDirectComputation()
+    {
+        Random random = new Random(1);
+        double halfLife = 10;
+        DecayedStatistics statistics = new DecayedStatistics(halfLife);
+        double[] times = new double[200];
+        double[] values = new double[200];
+        double time = 0;
+        for (int i = 0; i < times.length; i++) {
+            time += random.nextDouble() * 3;
+            times[i] = time;
+            values[i] = random.nextGaussian();
+            statistics.add(times[i], values[i]);
+        }
+        assertDirect(statistics, times, values, halfLife, time);
+    }
+
+    @Test
+    public void orderDoesNotMatter()
+    {
+        Random random = new Random(2);
+        double halfLife = 5;
+        List<double[]> events = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            events.add(new double[] {random.nextDouble() * 50, random.nextDouble()});
+        Collections.shuffle(events, random);
+
+        DecayedStatistics statistics = new DecayedStatistics(halfLife);
+        double[] times = new double[events.size()];
+        double[] values = new double[events.size()];
+        double latest = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < events.size(); i++) {
+            times[i] = events.get(i)[0];
+            values[i] = events.get(i)[1];
+            latest = Math.max(latest, times[i]);
+            statistics.add(times[i], values[i]);
+        }
+        assertDirect(statistics, times, values, halfLife, latest);
+    }
+
+    @Test
+    public void emptyAndNa()
+    {
+        DecayedStatistics statistics = new DecayedStatistics(1);
+        assertThat(isValue(statistics.getMean()), is(false));
+        assertThat(isValue(statistics.getVariance()), is(false));
+        assertThat(statistics.getWeight(0), is(0.0));
+        statistics.add(0, NA);
+        assertThat(isValue(statistics.getMean()), is(false));
+        statistics.add(0, 3);
+        assertThat(statistics.getMean(), is(3.0));
+        assertThat(statistics.getVariance(), is(0.0));
+        assertThat(statistics.getWeight(1), closeTo(.5, 1e-12));
+    }
+
+    @Test
+    public void concurrentUpdatesAreNotLost()
+    throws InterruptedException
+    {
+        // With a huge half-life there is no decay, so the weight counts the values
+        DecayedStatistics statistics = new DecayedStatistics(1e15);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++)
+            executor.submit(() -> {
+                for (int i = 0; i < 10000; i++)
+                    statistics.add(i, i % 2);
+            });
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        assertThat(statistics.getWeight(10000), closeTo(40000, 1e-6));
+        assertThat(statistics.getMean(), closeTo(.5, 1e-9));
+        assertThat(statistics.getVariance(), closeTo(.25, 1e-9));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveHalfLifeThrows()
+    {
+        new DecayedStatistics(0);
+    }
+
+    static void assertDirect(DecayedStatistics statistics, double[] times, double[] values, double halfLife, double now)
+    {
+        double totalWeight = 0;
+        double weightedSum = 0;
+        for (int i = 0; i < times.length; i++) {
+            double weight = Math.pow(2, -(now - times[i]) / halfLife);
+            totalWeight += weight;
+            weightedSum += weight * values[i];
+        }
+        double mean = weightedSum / totalWeight;
+        double squares = 0;
+        for (int i = 0; i < times.length; i++)
+            squares += Math.pow(2, -(now - times[i]) / halfLife) * Math.pow(values[i] - mean, 2);
+        assertThat(statistics.getMean(), closeTo(mean, 1e-9));
+        assertThat(statistics.getVariance(), closeTo(squares / totalWeight, 1e-9));
+        assertThat(statistics.getWeight(now), closeTo(totalWeight, 1e-9));
+        assertThat(statistics.getWeight(now + halfLife), closeTo(totalWeight / 2, 1e-9));
+    }
+}
@@ -0,0 +1,94 @@
+package gmjonker.math;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.NaType.isValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+public class DoubleColumnTest
+{
+    @Test
+    public void kernelsMatchGeneralMath()
+    {
+        Random random = new Random(1);
+        // No NAs, sparse NAs, runs of NAs, mostly NAs
+        for (double naFraction : new double[] {0, .05, .5, .95}) {
+            for (int size : new int[] {1, 64, 1000}) {
+                double[] values = new double[size];
+                double[] weights = new double[size];
+                double[] defaults = new double[size];
+                boolean[] include = new boolean[size];
+                values[0] = .5;
+                weights[0] = 1;
+                for (int i = 1; i < size; i++) {
+                    boolean naRun = (i / 100) % 3 == 2;
+                    values[i] = naRun || random.nextDouble() < naFraction ? NA : random.nextDouble() * 2 - 1;
+                    weights[i] = random.nextDouble() < naFraction / 4 ? NA : random.nextDouble() * 3;
+                }
+                for (int i = 0; i < size; i++) {
+                    defaults[i] = random.nextDouble();
+                    include[i] = random.nextDouble() > naFraction / 2;
+                }
+                include[0] = true;
+                double[] finiteWeights = weights.clone();
+                for (int i = 0; i < size; i++)
+                    if ( ! isValue(finiteWeights[i]))
+                        finiteWeights[i] = 1;
+
+                DoubleColumn valueColumn = DoubleColumn.of(values);
+                DoubleColumn weightColumn = DoubleColumn.of(weights);
+                double expectedSum = 0;
+                int expectedCount = 0;
+                for (double value : values)
+                    if (isValue(value)) {
+                        expectedSum += value;
+                        expectedCount++;
+                    }
+                assertThat(valueColumn.getValueCount(), is(expectedCount));
+                assertThat(valueColumn.sum(), closeTo(expectedSum, 1e-9));
+                assertThat(valueColumn.weightedMean(weightColumn),
+                        closeTo(GeneralMath.weightedMeanIgnoreNAs(values, weights), 1e-12));
+                assertThat(valueColumn.rootWeightedMeanSquareError(weightColumn),
+                        closeTo(GeneralMath.rootWeightedMeanSquareErrorIgnoreNAs(values, weights), 1e-12));
+                assertThat(valueColumn.weightedMeanWithDefaults(finiteWeights, ValidityMask.of(include), defaults),
+                        closeTo(GeneralMath.weightedMeanWithDefaults(values, finiteWeights, include, defaults), 1e-12));
+                assertThat(GeneralMath.weightedMeanWithDefaults(values, finiteWeights, ValidityMask.of(include), defaults),
+                        closeTo(GeneralMath.weightedMeanWithDefaults(values, finiteWeights, include, defaults), 1e-12));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void generalMathChecksMaskSize()
+    {
+        GeneralMath.weightedMeanWithDefaults(new double[70], new double[70], ValidityMask.allSet(64), new double[70]);
+    }
+
+    @Test
+    public void naHandling()
+    {
+        DoubleColumn column = new DoubleColumn(3);
+        assertThat(isValue(column.get(0)), is(false));
+        assertThat(isValue(column.mean()), is(false));
+        column.set(1, .25);
+        column.set(2, .75);
+        assertThat(column.mean(), is(.5));
+        column.set(2, NA);
+        assertThat(column.getNaCount(), is(2));
+        assertThat(column.sum(), is(.25));
+        assertThat(isValue(column.toArray()[2]), is(false));
+    }
+
+    @Test
+    public void infiniteWeights()
+    {
+        DoubleColumn values = DoubleColumn.of(new double[] {.2, .4, NA});
+        DoubleColumn weights = DoubleColumn.of(new double[] {1, Double.POSITIVE_INFINITY, 1});
+        assertThat(values.weightedMean(weights), closeTo(.4, 1e-12));
+    }
+}
@@ -0,0 +1,90 @@
+package gmjonker.math;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.stream.DoubleStream;
+
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.NaType.isValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+public class DoubleSummaryTest
+{
+    private static final double EPS = 1e-10;
+
+    @Test
+    public void matchesGeneralMath()
+    {
+        Random random = new Random(1);
+        double[] values = new double[1000];
+        double[] weights = new double[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian() * 3 + 10;
+            weights[i] = random.nextDouble();
+        }
+
+        DoubleSummary summary = DoubleSummary.of(values);
+        assertThat(summary.getCount(), is(1000L));
+        assertThat(summary.getSum(), closeTo(GeneralMath.sum(values), EPS));
+        assertThat(summary.getMean(), closeTo(GeneralMath.mean(values), EPS));
+        assertThat(summary.getVariance(), closeTo(GeneralMath.variance(values), EPS));
+        assertThat(summary.getStandardDeviation(), closeTo(GeneralMath.standardDeviation(values), EPS));
+        assertThat(summary.getRootMeanSquare(), closeTo(GeneralMath.rootMeanSquare(values), EPS));
+        assertThat(summary.getMin(), is(GeneralMath.min(values)));
+        assertThat(summary.getMax(), is(GeneralMath.max(values)));
+
+        DoubleSummary weighted = DoubleSummary.of(values, weights);
+        assertThat(weighted.getMean(), closeTo(GeneralMath.weightedMean(values, weights), EPS));
+        assertThat(weighted.getVariance(), closeTo(GeneralMath.weightedVariance(values, weights), EPS));
+        assertThat(weighted.getStandardDeviation(), closeTo(GeneralMath.weightedStandardDeviation(values, weights), EPS));
+        assertThat(weighted.getRootMeanSquare(), closeTo(GeneralMath.rootWeightedMeanSquare(values, weights), EPS));
+    }
+
+    @Test
+    public void mergeGivesSameResultAsOnePass()
+    {
+        Random random = new Random(2);
+        double[] values = DoubleStream.generate(random::nextGaussian).limit(10000).toArray();
+        DoubleSummary whole = DoubleSummary.of(values);
+        DoubleSummary merged = DoubleSummary.of(DoubleStream.of(values).parallel());
+        assertThat(merged.getCount(), is(whole.getCount()));
+        assertThat(merged.getMean(), closeTo(whole.getMean(), EPS));
+        assertThat(merged.getVariance(), closeTo(whole.getVariance(), EPS));
+        assertThat(merged.getRootMeanSquare(), closeTo(whole.getRootMeanSquare(), EPS));
+        assertThat(merged.getMin(), is(whole.getMin()));
+        assertThat(merged.getMax(), is(whole.getMax()));
+
+        DoubleSummary withEmpty = new DoubleSummary().merge(whole).merge(new DoubleSummary());
+        assertThat(withEmpty.getVariance(), closeTo(whole.getVariance(), EPS));
+    }
+
+    @Test
+    public void sumsAreCompensated()
+    {
+        DoubleSummary summary = DoubleSummary.of(1, 1e100, 1, -1e100);
+        assertThat(summary.getSum(), is(2.0));
+        assertThat(summary.getMean(), is(.5));
+
+        // Large offset: naive sum of squares loses all precision, running deviations don't
+        DoubleSummary offset = DoubleSummary.of(1e9 + 4, 1e9 + 7, 1e9 + 13, 1e9 + 16);
+        assertThat(offset.getVariance(), closeTo(22.5, EPS));
+    }
+
+    @Test
+    public void skipsNas()
+    {
+        DoubleSummary summary = DoubleSummary.of(1, NA, 3);
+        summary.add(5, NA);
+        assertThat(summary.getCount(), is(2L));
+        assertThat(summary.getNaCount(), is(2L));
+        assertThat(summary.getMean(), is(2.0));
+
+        DoubleSummary empty = DoubleSummary.of();
+        assertThat(isValue(empty.getMean()), is(false));
+        assertThat(isValue(empty.getVariance()), is(false));
+        assertThat(isValue(empty.getMin()), is(false));
+    }
+}
@@ -0,0 +1,88 @@
+package gmjonker.math;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.NaType.isValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class DownsamplerTest
+{
+    @Test
+    public void knownLengthGivesExactBuckets()
+    {
+        double[] values = IntStream.range(0, 100).asDoubleStream().toArray();
+        Downsampler downsampler = Downsampler.of(values, 10);
+        assertThat(downsampler.getNumColumns(), is(10));
+        assertThat(downsampler.getMins()[3], is(30.0));
+        assertThat(downsampler.getMaxs()[3], is(39.0));
+        assertThat(downsampler.getMeans()[3], is(34.5));
+    }
+
+    @Test
+    public void unknownLengthKeepsBoundedMemoryAndExtremes()
+    {
+        int n = 1000003;
+        Downsampler downsampler = Downsampler.of(
+                IntStream.range(0, n).mapToDouble(i -> i == 500000 ? 1e6 : Math.sin(i / 1000.0)).iterator(), 80);
+        assertThat(downsampler.getN(), is((long) n));
+        assertThat(downsampler.getNumColumns(), lessThanOrEqualTo(80));
+        assertThat(downsampler.getNumColumns(), greaterThanOrEqualTo(60));
+        double max = DoubleStream.of(downsampler.getMaxs()).max().getAsDouble();
+        assertThat(max, is(1e6));
+        double min = DoubleStream.of(downsampler.getMins()).min().getAsDouble();
+        assertThat(min, closeTo(-1, 1e-6));
+    }
+
+    @Test
+    public void unknownLengthColumnsCoverEqualSpans()
+    {
+        for (int n : new int[] {81, 150, 1000, 12345, 100001}) {
+            Downsampler downsampler = Downsampler.of(IntStream.range(0, n).asDoubleStream().iterator(), 80);
+            double[] mins = downsampler.getMins();
+            double[] maxs = downsampler.getMaxs();
+            assertThat(mins.length, lessThanOrEqualTo(80));
+            double span = maxs[0] - mins[0] + 1;
+            for (int c = 0; c < mins.length - 1; c++) {
+                assertThat(mins[c], is(c * span));
+                assertThat(maxs[c] - mins[c] + 1, is(span));
+            }
+            assertThat(maxs[mins.length - 1], is(n - 1.0));
+        }
+    }
+
+    @Test
+    public void bufferAndArrayGiveSameResult()
+    {
+        double[] values = DoubleStream.iterate(0, x -> x + .37).limit(12345).map(Math::cos).toArray();
+        DoubleBuffer buffer = ByteBuffer.allocateDirect(values.length * 8).asDoubleBuffer();
+        buffer.put(values).flip();
+        assertThat(Downsampler.of(buffer, 50).getMeans(), equalTo(Downsampler.of(values, 50).getMeans()));
+        assertThat(buffer.position(), is(0));
+    }
+
+    @Test
+    public void nasAreSkippedAndShortSeriesAreNotStretched()
+    {
+        Downsampler downsampler = Downsampler.of(new double[] {1, NA, NA, 4}, 10);
+        assertThat(downsampler.getNumColumns(), is(4));
+        assertThat(isValue(downsampler.getMeans()[1]), is(false));
+        assertThat(downsampler.getMeans()[3], is(4.0));
+    }
+
+    @Test
+    public void plot()
+    {
+        TextPlot.plotValues(IntStream.range(0, 200000).mapToDouble(i -> Math.sin(i / 20000.0)).iterator(), 60, 10);
+    }
+}
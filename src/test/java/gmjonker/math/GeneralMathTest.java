@@ -2,12 +2,14 @@ package gmjonker.math;
 
 import cern.colt.list.DoubleArrayList;
 import cern.jet.stat.Descriptive;
+import gmjonker.util.DoubleList;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.math3.stat.descriptive.moment.Variance;
 import org.junit.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.stream.DoubleStream;
 
 import static com.google.common.primitives.Doubles.asList;
 import static gmjonker.matchers.IsValueMatcher.isValueMatch;
@@ -56,6 +58,38 @@ public class GeneralMathTest
         Assert.assertThat(mean(asList(1, 2, 3.3)), closeTo(6.3/3, .000001));
     }
 
+    @Test
+    public void primitiveOverloadsMatchBoxedVersions()
+    {
+        double eps = .000001;
+        DoubleList values = DoubleList.of(1, 2, 3.3, -.5);
+        DoubleList weights = DoubleList.of(.5, 1, 2, 1);
+        assertThat(sum(values), closeTo(sum(asList(1, 2, 3.3, -.5)), eps));
+        assertThat(sum(DoubleStream.of(1, 2, 3.3, -.5).parallel()), closeTo(5.8, eps));
+        assertThat(mean(values), closeTo(mean(asList(1, 2, 3.3, -.5)), eps));
+        assertThat(mean(DoubleStream.of(1, 2, 3.3, -.5)), closeTo(5.8 / 4, eps));
+        assertThat(standardDeviation(values), closeTo(standardDeviation(asList(1, 2, 3.3, -.5)), eps));
+        assertThat(standardDeviation(DoubleStream.of(1, 2, 3.3, -.5)), closeTo(standardDeviation(values), eps));
+        assertThat(rootWeightedMeanSquare(values, weights),
+                closeTo(rootWeightedMeanSquare(asList(1, 2, 3.3, -.5), asList(.5, 1, 2, 1)), eps));
+        assertThat(rootWeightedMeanSquare(values.toArray(), weights.toArray()),
+                closeTo(rootWeightedMeanSquare(values, weights), eps));
+        assertThat(sumByD(Arrays.asList("geert", "jonker"), String::length), closeTo(11, eps));
+        assertThat(maxByD(Arrays.asList("geert", "jonker"), String::length), closeTo(6, eps));
+        assertThat(minByD(Arrays.asList("geert", "jonker"), String::length), closeTo(5, eps));
+
+        assertThat(sum(new DoubleList()), not(isValueMatch()));
+        assertThat(mean(DoubleStream.empty()), not(isValueMatch()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rootWeightedMeanSquareOfDoubleListsChecksSizes()
+    {
+        DoubleList weights = new DoubleList(8);
+        weights.addAll(new double[] {.5, 1, 2});
+        rootWeightedMeanSquare(DoubleList.of(1, 2, 3.3, -.5), weights);
+    }
+
     @Test
     public void weightedMean()
     {
@@ -0,0 +1,113 @@
+package gmjonker.math;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static gmjonker.TestUtil.randomIndications;
+import static gmjonker.math.IndicationBatchMath.TOLERANCE;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class IndicationAccumulatorTest
+{
+    @Test
+    public void exactModeMatchesIndicationMath()
+    {
+        List<Indication> indications = Arrays.asList(randomIndications(500, new Random(1), -.6, .8));
+        IndicationAccumulator accumulator = new IndicationAccumulator(1000, 256);
+        indications.forEach(accumulator::add);
+
+        assertThat(accumulator.isExact(), is(true));
+        Indication expected = IndicationMath.combine(indications);
+        Indication actual = accumulator.getCombined();
+        assertThat(actual.value, closeTo(expected.value, TOLERANCE));
+        assertThat(actual.confidence, closeTo(expected.confidence, TOLERANCE));
+        assertThat(accumulator.getConfidenceErrorBound(), is(0.0));
+    }
+
+    @Test
+    public void approximateModeStaysWithinErrorBound()
+    {
+        Random random = new Random(2);
+        for (int n : new int[] {10, 100, 1000, 10000}) {
+            // Low confidences and lots of disagreement, so that the combined confidence doesn't saturate
+            List<Indication> indications = Arrays.asList(randomIndications(n, random, -1, 10.0 / n));
+            IndicationAccumulator accumulator = new IndicationAccumulator(0, 256);
+            indications.forEach(accumulator::add);
+
+            assertThat(accumulator.isExact(), is(false));
+            Indication expected = IndicationMath.combine(indications);
+            Indication actual = accumulator.getCombined();
+            double errorBound = accumulator.getConfidenceErrorBound();
+            System.out.printf("n=%d expected=%s actual=%s error=%.6f bound=%.6f%n", n, expected.toLongString(),
+                    actual.toLongString(), Math.abs(expected.confidence - actual.confidence), errorBound);
+            assertThat(actual.value, closeTo(expected.value, 1e-9));
+            assertThat(Math.abs(actual.confidence - expected.confidence), lessThanOrEqualTo(errorBound + TOLERANCE));
+            assertThat(errorBound, lessThan(.01));
+
+            Indication expectedNoDisagreement = IndicationMath.combineNoDisagreementEffect(indications);
+            Indication actualNoDisagreement = accumulator.getCombinedNoDisagreementEffect();
+            assertThat(actualNoDisagreement.value, closeTo(expectedNoDisagreement.value, 1e-9));
+            assertThat(actualNoDisagreement.confidence, closeTo(expectedNoDisagreement.confidence, 1e-9));
+        }
+    }
+
+    @Test
+    public void switchesToApproximateModeWhenBufferIsFull()
+    {
+        List<Indication> indications = Arrays.asList(randomIndications(100, new Random(3), -.6, .8));
+        IndicationAccumulator accumulator = new IndicationAccumulator(50, 256);
+        indications.forEach(accumulator::add);
+
+        assertThat(accumulator.isExact(), is(false));
+        assertThat(accumulator.getN(), is(100L));
+        Indication expected = IndicationMath.combine(indications);
+        assertThat(accumulator.getCombined().confidence,
+                closeTo(expected.confidence, accumulator.getConfidenceErrorBound() + TOLERANCE));
+    }
+
+    @Test
+    public void parallelStreamGivesSameResultAsSequentialCombine()
+    {
+        List<Indication> indications = Arrays.asList(randomIndications(20000, new Random(4), -.6, .8));
+        Indication expected = IndicationMath.combine(indications);
+        Indication actual = indications.parallelStream().collect(IndicationAccumulator.combining());
+        assertThat(actual.value, closeTo(expected.value, 1e-9));
+        assertThat(actual.confidence, closeTo(expected.confidence, .01));
+
+        List<Indication> few = indications.subList(0, 100);
+        Indication expectedFew = IndicationMath.combine(few);
+        Indication actualFew = few.parallelStream().collect(IndicationAccumulator.combining());
+        assertThat(actualFew.value, closeTo(expectedFew.value, TOLERANCE));
+        assertThat(actualFew.confidence, closeTo(expectedFew.confidence, TOLERANCE));
+    }
+
+    @Test
+    public void naAndZeroConfidence()
+    {
+        IndicationAccumulator empty = new IndicationAccumulator();
+        assertThat(empty.getCombined().isNa(), is(true));
+
+        IndicationAccumulator approximate = new IndicationAccumulator(0, 16);
+        approximate.add(Indication.NA_INDICATION);
+        assertThat(approximate.getCombined().isNa(), is(true));
+
+        IndicationAccumulator zero = new IndicationAccumulator(0, 16);
+        zero.add(.5, 0);
+        zero.add(1, 0);
+        assertThat(zero.getCombined().value, closeTo(.75, TOLERANCE));
+        assertThat(zero.getCombined().confidence, is(0.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nanWeightIsRejected()
+    {
+        new IndicationAccumulator().add(.5, .5, Double.NaN);
+    }
+}
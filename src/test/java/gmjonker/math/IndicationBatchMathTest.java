@@ -0,0 +1,173 @@
+package gmjonker.math;
+
+import org.junit.Test;
+
+import java.nio.DoubleBuffer;
+import java.util.Random;
+import java.util.function.BiFunction;
+
+import static gmjonker.math.IndicationBatchMath.TOLERANCE;
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.NaType.isValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class IndicationBatchMathTest
+{
+    private interface BatchKernel
+    {
+        void apply(IndicationBatch batch, double[] outValues, double[] outConfidences);
+    }
+
+    @Test
+    public void combineMatchesIndicationMath()
+    {
+        check(IndicationBatchMath::combine, IndicationMath::combine, true);
+        check(IndicationBatchMath::combine, IndicationMath::combine, false);
+    }
+
+    @Test
+    public void combineNoDisagreementEffectMatchesIndicationMath()
+    {
+        check(IndicationBatchMath::combineNoDisagreementEffect, IndicationMath::combineNoDisagreementEffect, true);
+        check(IndicationBatchMath::combineNoDisagreementEffect, IndicationMath::combineNoDisagreementEffect, false);
+    }
+
+    @Test
+    public void combineTightAndNoDisagreementEffectMatchesIndicationMath()
+    {
+        check(IndicationBatchMath::combineTightAndNoDisagreementEffect, IndicationMath::combineTightAndNoDisagreementEffect,
+                true);
+        check(IndicationBatchMath::combineTightAndNoDisagreementEffect, IndicationMath::combineTightAndNoDisagreementEffect,
+                false);
+    }
+
+    @Test
+    public void combineStrictMatchesIndicationMath()
+    {
+        check(IndicationBatchMath::combineStrict, (inds, ws) -> IndicationMath.combineStrict(inds, ws, false), true);
+        check(IndicationBatchMath::combineStrict, (inds, ws) -> IndicationMath.combineStrict(inds, ws, false), false);
+    }
+
+    @Test
+    public void combineFastMatchesIndicationMathFast()
+    {
+        check(IndicationBatchMath::combineFast, IndicationMathFast::combine, true);
+        check(IndicationBatchMath::combineFast, IndicationMathFast::combine, false);
+    }
+
+    @Test
+    public void bufferKernelsMatchArrayKernels()
+    {
+        Random random = new Random(3);
+        int n = 300;
+        double[] values = new double[n];
+        double[] confidences = new double[n];
+        double[] weights = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = random.nextDouble() * 2 - 1;
+            confidences[i] = random.nextDouble() * .9;
+            weights[i] = random.nextDouble() * 3;
+        }
+        double[] expectedValues = new double[4];
+        double[] expectedConfidences = new double[4];
+        IndicationBatchMath.combine(values, confidences, weights, 10, 200, expectedValues, expectedConfidences, 0);
+        IndicationBatchMath.combine(values, confidences, null, 50, 20, expectedValues, expectedConfidences, 1);
+        IndicationBatchMath.combineNoDisagreementEffect(values, confidences, weights, 10, 200, expectedValues,
+                expectedConfidences, 2);
+        IndicationBatchMath.combineNoDisagreementEffect(values, confidences, null, 50, 20, expectedValues,
+                expectedConfidences, 3);
+
+        DoubleBuffer valueBuffer = DoubleBuffer.wrap(values);
+        DoubleBuffer confidenceBuffer = DoubleBuffer.wrap(confidences);
+        DoubleBuffer weightBuffer = DoubleBuffer.wrap(weights);
+        double[] outValues = new double[4];
+        double[] outConfidences = new double[4];
+        IndicationBatchMath.combine(valueBuffer, confidenceBuffer, weightBuffer, 10, 200, outValues, outConfidences, 0);
+        IndicationBatchMath.combine(valueBuffer, confidenceBuffer, 50, 20, outValues, outConfidences, 1);
+        IndicationBatchMath.combineNoDisagreementEffect(valueBuffer, confidenceBuffer, weightBuffer, 10, 200, outValues,
+                outConfidences, 2);
+        IndicationBatchMath.combineNoDisagreementEffect(valueBuffer, confidenceBuffer, 50, 20, outValues,
+                outConfidences, 3);
+        for (int i = 0; i < 4; i++) {
+            assertThat(outValues[i], is(expectedValues[i]));
+            assertThat(outConfidences[i], is(expectedConfidences[i]));
+        }
+        assertThat(valueBuffer.position(), is(0));
+    }
+
+    @Test
+    public void naGroup()
+    {
+        IndicationBatch batch = new IndicationBatch();
+        batch.addGroup(new Indication[] {Indication.NA_INDICATION, Indication.NA_INDICATION}, null);
+        batch.newGroup();
+        double[] outValues = new double[2];
+        double[] outConfidences = new double[2];
+        IndicationBatchMath.combine(batch, outValues, outConfidences);
+        assertFalse(isValue(outValues[0]));
+        assertFalse(isValue(outConfidences[0]));
+        assertFalse(isValue(outValues[1]));
+        assertFalse(isValue(outConfidences[1]));
+    }
+
+    @Test
+    public void batchGrows()
+    {
+        IndicationBatch batch = new IndicationBatch(1, 1);
+        for (int g = 0; g < 10; g++) {
+            batch.newGroup();
+            for (int i = 0; i < g; i++)
+                batch.add(.1 * i, .05 * g);
+        }
+        assertThat(batch.getGroupCount(), is(10));
+        assertThat(batch.size(), is(45));
+        assertThat(batch.getOffset(9), is(36));
+        assertThat(batch.getLength(9), is(9));
+        batch.clear();
+        assertThat(batch.getGroupCount(), is(0));
+        assertThat(batch.size(), is(0));
+    }
+
+    private static void check(BatchKernel kernel, BiFunction<Indication[], double[], Indication> reference,
+            boolean useWeights)
+    {
+        Random random = new Random(1);
+        int numGroups = 500;
+        IndicationBatch batch = new IndicationBatch();
+        Indication[][] groups = new Indication[numGroups][];
+        double[][] groupWeights = new double[numGroups][];
+        for (int g = 0; g < numGroups; g++) {
+            int size = 1 + random.nextInt(12);
+            groups[g] = new Indication[size];
+            groupWeights[g] = new double[size];
+            boolean allZeroConfidence = random.nextInt(20) == 0;
+            for (int i = 0; i < size; i++) {
+                double value = random.nextInt(30) == 0 ? NA : random.nextDouble() * 2 - 1;
+                double confidence = allZeroConfidence ? 0 : random.nextDouble();
+                groups[g][i] = new Indication(value, confidence);
+                groupWeights[g][i] = random.nextDouble() * 3;
+            }
+            batch.addGroup(groups[g], useWeights ? groupWeights[g] : null);
+        }
+        double[] outValues = new double[numGroups];
+        double[] outConfidences = new double[numGroups];
+        kernel.apply(batch, outValues, outConfidences);
+        for (int g = 0; g < numGroups; g++) {
+            Indication expected = reference.apply(groups[g], useWeights ? groupWeights[g] : null);
+            assertClose(expected.value, outValues[g]);
+            assertClose(expected.confidence, outConfidences[g]);
+        }
+    }
+
+    private static void assertClose(double expected, double actual)
+    {
+        if (isValue(expected))
+            assertThat(actual, closeTo(expected, TOLERANCE));
+        else
+            assertEquals(expected, actual, 0);
+    }
+}
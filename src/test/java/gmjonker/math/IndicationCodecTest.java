@@ -0,0 +1,97 @@
+package gmjonker.math;
+
+import gmjonker.math.IndicationCodec.Layout;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static gmjonker.TestUtil.randomIndications;
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.NaType.isValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+@SuppressWarnings("deprecation")
+public class IndicationCodecTest
+{
+    @Test
+    public void roundTripsAgreeWithStringForm()
+    {
+        Indication[] indications = randomIndications(1000, new Random(1), -1, 1);
+        // Tolerance of the layout, plus rounding in the 5-decimal string form
+        double[] tolerances = {5e-6, 5e-6 + 1e-7, 5e-6 + 1.6e-5};
+        Layout[] layouts = Layout.values();
+        for (int l = 0; l < layouts.length; l++) {
+            IndicationCodec codec = new IndicationCodec(layouts[l]);
+            ByteBuffer buffer = ByteBuffer.allocate(indications.length * codec.getBytesPerItem());
+            codec.encode(indications, buffer);
+            assertThat(buffer.remaining(), is(0));
+            buffer.flip();
+            Indication[] decoded = codec.decodeIndications(buffer, indications.length);
+            for (int i = 0; i < indications.length; i++) {
+                Indication fromString = Indication.deserialize(indications[i].serialize());
+                assertThat(decoded[i].value, closeTo(fromString.value, tolerances[l]));
+                assertThat(decoded[i].confidence, closeTo(fromString.confidence, tolerances[l]));
+            }
+        }
+        IndicationCodec lossless = new IndicationCodec(Layout.DOUBLE);
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        lossless.encode(indications[0], buffer);
+        buffer.flip();
+        assertThat(lossless.decodeIndication(buffer), is(indications[0]));
+    }
+
+    @Test
+    public void dataStreamsAndScores() throws IOException
+    {
+        Indication[] indications = randomIndications(100, new Random(2), -1, 1);
+        for (Layout layout : Layout.values()) {
+            IndicationCodec codec = new IndicationCodec(layout);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            codec.write(indications, out);
+            codec.write(new Score(.25, .75), out);
+            assertThat(bytes.size(), is(101 * codec.getBytesPerItem()));
+
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            Indication[] read = codec.readIndications(in, 100);
+            for (int i = 0; i < 100; i++) {
+                Indication fromBuffer = codec.decodeIndication(buffer);
+                assertThat(read[i].value, is(fromBuffer.value));
+                assertThat(read[i].confidence, is(fromBuffer.confidence));
+                assertThat(read[i].value, closeTo(indications[i].value, 2e-5));
+            }
+            Score score = codec.readScore(in);
+            assertThat(score.value, closeTo(.25, 1e-5));
+            assertThat(score.confidence, closeTo(.75, 1e-5));
+            assertThat(codec.decodeScore(buffer).value, is(score.value));
+        }
+    }
+
+    @Test
+    public void quantizedLayoutKeepsNaAndClampsOutOfRange()
+    {
+        IndicationCodec codec = new IndicationCodec(Layout.QUANTIZED);
+        ByteBuffer buffer = ByteBuffer.allocate(12);
+        codec.encode(new Indication(NA, NA), buffer);
+        codec.encode(new Indication(-1.5, 2), buffer);
+        codec.encode(new Score(0, 1), buffer);
+        buffer.flip();
+        Indication na = codec.decodeIndication(buffer);
+        assertThat(isValue(na.value) || isValue(na.confidence), is(false));
+        Indication clamped = codec.decodeIndication(buffer);
+        assertThat(clamped.value, is(-1.0));
+        assertThat(clamped.confidence, is(1.0));
+        Score score = codec.decodeScore(buffer);
+        assertThat(score.value, is(0.0));
+        assertThat(score.confidence, is(1.0));
+    }
+}
@@ -0,0 +1,101 @@
+package gmjonker.math;
+
+import gmjonker.math.IndicationCorrelationMatrix.Measure;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static gmjonker.TestUtil.randomIndications;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+public class IndicationCorrelationMatrixTest
+{
+    @Test
+    public void matchesPairwiseComputations()
+    {
+        // More series than one tile and more data points than one block, to cover the tile edges
+        List<List<Indication>> series = randomSeries(70, 300, new Random(1));
+        IndicationCorrelationMatrix matrix = IndicationCorrelationMatrix.fromSeries(series);
+        double[][] covariances = matrix.computeMatrix(Measure.COVARIANCE0);
+        double[][] pearsons = matrix.computeMatrix(Measure.PEARSON);
+        double[][] profileCorrelations = matrix.computeMatrix(Measure.PROFILE_CORRELATION);
+
+        for (int i = 0; i < series.size(); i += 3) {
+            for (int j = 0; j < series.size(); j += 5) {
+                IndicationCorrelationOnline correlation = new IndicationCorrelationOnline(series.get(i), series.get(j));
+                assertThat(covariances[i][j], closeTo(correlation.getCovariance0(), 1e-10));
+                assertThat(pearsons[i][j], closeTo(correlation.getPearsonSimilarity(), 1e-9));
+                double profileCorrelation = Correlation.profileCorrelation(deriveDoubles(series.get(i)),
+                        deriveDoubles(series.get(j)));
+                assertThat(profileCorrelations[i][j], closeTo(profileCorrelation, 1e-10));
+                assertThat(matrix.compute(Measure.PROFILE_CORRELATION, i, j), closeTo(profileCorrelation, 1e-10));
+            }
+        }
+    }
+
+    @Test
+    public void streamsUpperTriangleRowByRow()
+    {
+        List<List<Indication>> series = randomSeries(150, 20, new Random(2));
+        IndicationCorrelationMatrix matrix = IndicationCorrelationMatrix.fromSeries(series);
+        double[][] full = matrix.computeMatrix(Measure.PEARSON);
+        int[] nextRow = {0};
+        matrix.forEachRow(Measure.PEARSON, (i, row) -> {
+            assertThat(i, is(nextRow[0]++));
+            assertThat(row.length, is(series.size() - i));
+            for (int k = 0; k < row.length; k++)
+                assertThat(row[k], is(full[i][i + k]));
+        });
+        assertThat(nextRow[0], is(series.size()));
+    }
+
+    @Test
+    public void resultDoesNotDependOnNumberOfThreads()
+    {
+        List<List<Indication>> series = randomSeries(130, 50, new Random(3));
+        double[] values = new double[130 * 50];
+        double[] confidences = new double[130 * 50];
+        for (int s = 0; s < 130; s++)
+            for (int t = 0; t < 50; t++) {
+                values[s * 50 + t] = series.get(s).get(t).value;
+                confidences[s * 50 + t] = series.get(s).get(t).confidence;
+            }
+        double[][] reference = computeOnNewPool(values, confidences, 1);
+        double[][] result = computeOnNewPool(values, confidences, 4);
+        for (int i = 0; i < 130; i++)
+            for (int j = 0; j < 130; j++)
+                assertThat(result[i][j], is(reference[i][j]));
+    }
+
+    private static double[][] computeOnNewPool(double[] values, double[] confidences, int parallelism)
+    {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return new IndicationCorrelationMatrix(130, 50, values, confidences, pool).computeMatrix(Measure.COVARIANCE0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static List<List<Indication>> randomSeries(int numSeries, int length, Random random)
+    {
+        List<List<Indication>> series = new ArrayList<>();
+        for (int s = 0; s < numSeries; s++)
+            series.add(Arrays.asList(randomIndications(length, random, -1, 1)));
+        return series;
+    }
+
+    private static List<Double> deriveDoubles(List<Indication> indications)
+    {
+        List<Double> doubles = new ArrayList<>();
+        for (Indication indication : indications)
+            doubles.add(indication.value * indication.confidence);
+        return doubles;
+    }
+}
@@ -2,8 +2,13 @@ package gmjonker.math;
 
 import org.junit.*;
 
+import java.util.Random;
+
 import static gmjonker.TestUtil.ind;
 import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
 
 public class IndicationCorrelationOnlineTest
 {
@@ -146,4 +151,34 @@ public class IndicationCorrelationOnlineTest
             System.out.println("cov.getPearsonSimilarity() = " + cov.getPearsonSimilarity());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void streamingMatchesListBased()
+    {
+        Random random = new Random(1);
+        IndicationCorrelationOnline listBased = new IndicationCorrelationOnline();
+        IndicationCorrelationOnline streaming = IndicationCorrelationOnline.streaming();
+        IndicationCorrelationOnline part1 = IndicationCorrelationOnline.streaming();
+        IndicationCorrelationOnline part2 = new IndicationCorrelationOnline();
+        IndicationCorrelationOnline part3 = IndicationCorrelationOnline.streaming();
+        for (int i = 0; i < 3000; i++) {
+            Indication indication1 = ind(random.nextDouble() * 2 - 1, random.nextDouble());
+            Indication indication2 = ind(indication1.value * .5 + random.nextDouble() - .5, random.nextDouble());
+            listBased.addDataPoint(indication1, indication2);
+            streaming.addDataPoint(indication1, indication2);
+            (i < 1000 ? part1 : i < 2000 ? part2 : part3).addDataPoint(indication1, indication2);
+        }
+        IndicationCorrelationOnline merged = part1.merge(part2).merge(part3);
+
+        for (IndicationCorrelationOnline cov : asList(streaming, merged)) {
+            assertThat(cov.isStreaming(), is(true));
+            assertThat(cov.getN(), is(listBased.getN()));
+            double eps = 1e-10;
+            assertThat(cov.getCovariance0(), closeTo(listBased.getCovariance0(), eps));
+            assertThat(cov.getCovariance0AsIndication().value, closeTo(listBased.getCovariance0AsIndication().value, eps));
+            assertThat(cov.getCovariance0AsIndication().confidence,
+                    closeTo(listBased.getCovariance0AsIndication().confidence, eps));
+            assertThat(cov.getPearsonSimilarity(), closeTo(listBased.getPearsonSimilarity(), eps));
+        }
+    }
+}
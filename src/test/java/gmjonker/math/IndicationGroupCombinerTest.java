@@ -0,0 +1,185 @@
+package gmjonker.math;
+
+import gmjonker.math.IndicationGroupCombiner.Strategy;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static gmjonker.math.IndicationBatchMath.TOLERANCE;
+import static gmjonker.math.IndicationGroupCombiner.combiningByKey;
+import static gmjonker.math.NaType.NA;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class IndicationGroupCombinerTest
+{
+    private static class Triple
+    {
+        final int key;
+        final Indication indication;
+        final double weight;
+
+        Triple(int key, Indication indication, double weight)
+        {
+            this.key = key;
+            this.indication = indication;
+            this.weight = weight;
+        }
+    }
+
+    @Test
+    public void matchesIndicationMathPerKey()
+    {
+        List<Triple> triples = randomTriples(20000, 500, new Random(1));
+        Map<Integer, List<Triple>> groups = groups(triples);
+
+        for (Strategy strategy : new Strategy[] {Strategy.COMBINE, Strategy.COMBINE_NO_DISAGREEMENT_EFFECT,
+                Strategy.COMBINE_STRICT}) {
+            IndicationGroupCombiner<Integer> combiner = new IndicationGroupCombiner<>(strategy, 4, Integer.MAX_VALUE);
+            for (Triple triple : triples)
+                combiner.add(triple.key, triple.indication, triple.weight);
+            assertThat(combiner.getNumKeys(), is(groups.size()));
+            assertThat(combiner.getSize(), is((long) triples.size()));
+
+            ForkJoinPool pool = new ForkJoinPool(4);
+            Map<Integer, Indication> parallel;
+            try {
+                parallel = combiner.combine(pool);
+            } finally {
+                pool.shutdown();
+            }
+            Map<Integer, Indication> sequential = combiner.combineSequentially();
+            assertThat(parallel.size(), is(groups.size()));
+            for (Map.Entry<Integer, List<Triple>> group : groups.entrySet()) {
+                Indication expected = expected(strategy, group.getValue());
+                assertEqual(parallel.get(group.getKey()), expected);
+                assertEqual(sequential.get(group.getKey()), expected);
+            }
+        }
+    }
+
+    @Test
+    public void parallelCollectorMatchesSequentialCollector()
+    {
+        List<Triple> triples = randomTriples(50000, 1000, new Random(2));
+        Map<Integer, Indication> sequential = triples.stream()
+                .collect(combiningByKey(t -> t.key, t -> t.indication, t -> t.weight, Strategy.COMBINE));
+        Map<Integer, Indication> parallel = triples.parallelStream()
+                .collect(combiningByKey(t -> t.key, t -> t.indication, t -> t.weight, Strategy.COMBINE));
+        assertThat(parallel.size(), is(sequential.size()));
+        for (Map.Entry<Integer, Indication> entry : sequential.entrySet())
+            assertEqual(parallel.get(entry.getKey()), entry.getValue());
+    }
+
+    @Test
+    public void mergeKeepsTriplesPerKeyInOrder()
+    {
+        List<Triple> triples = randomTriples(30000, 700, new Random(3));
+        Map<Integer, List<Triple>> groups = groups(triples);
+        for (int otherPartitions : new int[] {4, 3}) {
+            IndicationGroupCombiner<Integer> combiner = new IndicationGroupCombiner<>(Strategy.COMBINE, 4, 1000);
+            IndicationGroupCombiner<Integer> other1 = new IndicationGroupCombiner<>(Strategy.COMBINE, otherPartitions, 1000);
+            IndicationGroupCombiner<Integer> other2 = new IndicationGroupCombiner<>(Strategy.COMBINE, 4, 1000);
+            for (int i = 0; i < triples.size(); i++) {
+                Triple triple = triples.get(i);
+                IndicationGroupCombiner<Integer> target = i < 10000 ? combiner : i < 20000 ? other1 : other2;
+                target.add(triple.key, triple.indication, triple.weight);
+            }
+            combiner.merge(other1).merge(other2);
+            assertThat(combiner.getNumKeys(), is(groups.size()));
+            assertThat(combiner.getSize(), is((long) triples.size()));
+            assertThat(other1.getSize(), is(10000L));
+            Map<Integer, Indication> result = combiner.combineSequentially();
+            for (Map.Entry<Integer, List<Triple>> group : groups.entrySet())
+                assertEqual(result.get(group.getKey()), expected(Strategy.COMBINE, group.getValue()));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void mergeChecksMaxKeys()
+    {
+        IndicationGroupCombiner<Integer> combiner = new IndicationGroupCombiner<>(Strategy.COMBINE, 2, 2);
+        IndicationGroupCombiner<Integer> other = new IndicationGroupCombiner<>(Strategy.COMBINE, 2, 2);
+        combiner.add(0, new Indication(.1, .1));
+        combiner.add(1, new Indication(.1, .1));
+        other.add(2, new Indication(.1, .1));
+        combiner.merge(other);
+    }
+
+    @Test
+    public void naGroupGivesNaIndication()
+    {
+        IndicationGroupCombiner<String> combiner = new IndicationGroupCombiner<>(Strategy.COMBINE);
+        combiner.add("a", Indication.NA_INDICATION);
+        combiner.add("a", new Indication(NA, NA));
+        combiner.add("b", new Indication(.5, .5));
+        Map<String, Indication> result = combiner.combine();
+        assertThat(result.get("a"), sameInstance(Indication.NA_INDICATION));
+        assertThat(result.get("b").value, closeTo(.5, TOLERANCE));
+    }
+
+    @Test
+    public void nullKeyIsAGroup()
+    {
+        IndicationGroupCombiner<String> combiner = new IndicationGroupCombiner<>(Strategy.COMBINE);
+        combiner.add(null, new Indication(.5, .5));
+        assertThat(combiner.combine().get(null).value, closeTo(.5, TOLERANCE));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void tooManyKeysThrows()
+    {
+        IndicationGroupCombiner<Integer> combiner = new IndicationGroupCombiner<>(Strategy.COMBINE, 2, 3);
+        for (int key = 0; key < 3; key++) {
+            combiner.add(key, new Indication(.1, .1));
+            combiner.add(key, new Indication(.2, .2));
+        }
+        combiner.add(3, new Indication(.3, .3));
+    }
+
+    private static Indication expected(Strategy strategy, List<Triple> group)
+    {
+        Indication[] indications = new Indication[group.size()];
+        double[] weights = new double[group.size()];
+        for (int i = 0; i < group.size(); i++) {
+            indications[i] = group.get(i).indication;
+            weights[i] = group.get(i).weight;
+        }
+        if (strategy == Strategy.COMBINE)
+            return IndicationMath.combine(indications, weights);
+        if (strategy == Strategy.COMBINE_NO_DISAGREEMENT_EFFECT)
+            return IndicationMath.combineNoDisagreementEffect(indications, weights);
+        return IndicationMath.combineStrict(indications, weights, false);
+    }
+
+    private static void assertEqual(Indication actual, Indication expected)
+    {
+        assertThat(actual.value, closeTo(expected.value, TOLERANCE));
+        assertThat(actual.confidence, closeTo(expected.confidence, TOLERANCE));
+    }
+
+    private static Map<Integer, List<Triple>> groups(List<Triple> triples)
+    {
+        Map<Integer, List<Triple>> groups = new HashMap<>();
+        for (Triple triple : triples)
+            groups.computeIfAbsent(triple.key, key -> new ArrayList<>()).add(triple);
+        return groups;
+    }
+
+    private static List<Triple> randomTriples(int n, int numKeys, Random random)
+    {
+        List<Triple> triples = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            triples.add(new Triple(random.nextInt(numKeys),
+                    new Indication(random.nextDouble() * 1.8 - .9, random.nextDouble() * .9),
+                    random.nextDouble() * 2));
+        return triples;
+    }
+}
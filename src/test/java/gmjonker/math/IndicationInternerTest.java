@@ -0,0 +1,86 @@
+package gmjonker.math;
+
+import org.junit.Test;
+
+import static gmjonker.math.NaType.NA;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class IndicationInternerTest
+{
+    @Test
+    public void sharesIndicationsOnGrid()
+    {
+        IndicationInterner interner = new IndicationInterner(.1, .25);
+        Indication a = interner.intern(.3, .5);
+        Indication b = interner.intern(new Indication(.1 + .2, .5, "comment"));
+        assertThat(b, sameInstance(a));
+        assertThat(a.value, closeTo(.3, 1e-12));
+        assertThat(a.confidence, is(.5));
+        assertThat(a instanceof ImmutableIndication, is(true));
+        assertThat(interner.intern(-1, 0), sameInstance(interner.intern(-1, 0)));
+        assertThat(interner.intern(1, 1), sameInstance(interner.intern(1, 1)));
+        assertThat(interner.intern(-.7, .75), not(sameInstance(interner.intern(-.7, .5))));
+        assertThat(interner.getCachedCount(), is(5));
+    }
+
+    @Test
+    public void allocatesOffGrid()
+    {
+        IndicationInterner interner = new IndicationInterner(.1, .25);
+        Indication a = interner.intern(.35, .5);
+        assertThat(interner.intern(.35, .5), not(sameInstance(a)));
+        assertThat(interner.intern(.3, .3), not(sameInstance(interner.intern(.3, .3))));
+        assertThat(interner.intern(1.1, .5), not(sameInstance(interner.intern(1.1, .5))));
+        assertThat(interner.intern(.3, -.25).confidence, is(-.25));
+        assertThat(interner.getCachedCount(), is(0));
+    }
+
+    @Test
+    public void naConstants()
+    {
+        IndicationInterner interner = new IndicationInterner(.5, .5);
+        assertThat(interner.intern(NA, NA), sameInstance(Indication.NA_INDICATION));
+        assertThat(interner.intern(NA, 0), sameInstance(Indication.UNKNOWN));
+    }
+
+    @Test
+    public void naIsNotOnGrid()
+    {
+        IndicationInterner interner = new IndicationInterner(.5, .5);
+        Indication onGrid = interner.intern(-1, .5);
+        Indication naValue = interner.intern(NA, .5);
+        assertThat(naValue, not(sameInstance(onGrid)));
+        assertThat(Double.isNaN(naValue.value), is(true));
+        Indication zeroConfidence = interner.intern(.5, 0);
+        Indication naConfidence = interner.intern(.5, NA);
+        assertThat(naConfidence, not(sameInstance(zeroConfidence)));
+        assertThat(Double.isNaN(naConfidence.confidence), is(true));
+        assertThat(interner.intern(.5, NA), not(sameInstance(naConfidence)));
+        assertThat(interner.getCachedCount(), is(2));
+    }
+
+    @Test
+    public void statistics()
+    {
+        IndicationInterner interner = new IndicationInterner(.5, .5);
+        for (int i = 0; i < 10; i++)
+            interner.intern(.5, 1);
+        interner.intern(.25, 1);
+        assertThat(interner.getHits(), is(9L));
+        assertThat(interner.getMisses(), is(2L));
+        assertThat(interner.getHitRate(), closeTo(9.0 / 11, 1e-12));
+        assertThat(interner.getBytesSaved(), is(9L * IndicationInterner.INDICATION_BYTES));
+        interner.resetStatistics();
+        assertThat(interner.getHitRate(), is(0.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stepMustDivideRange()
+    {
+        new IndicationInterner(.3, .25);
+    }
+}
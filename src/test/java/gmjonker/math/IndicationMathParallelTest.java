@@ -0,0 +1,74 @@
+package gmjonker.math;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static gmjonker.TestUtil.randomIndication;
+import static gmjonker.TestUtil.randomIndications;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class IndicationMathParallelTest
+{
+    @Test
+    public void matchesSequentialCombine()
+    {
+        Random random = new Random(1);
+        int n = 200000;
+        Indication[] indications = new Indication[n];
+        double[] weights = new double[n];
+        for (int i = 0; i < n; i++) {
+            indications[i] = randomIndication(random, -1, 20.0 / n);
+            weights[i] = random.nextDouble() * 2;
+        }
+        for (double[] w : new double[][] {null, weights}) {
+            Indication expected = IndicationMath.combine(indications, w);
+            Indication actual = IndicationMathParallel.combine(indications, w, false, ForkJoinPool.commonPool(), 1000);
+            assertThat(actual.value, closeTo(expected.value, 1e-9));
+            assertThat(actual.confidence, closeTo(expected.confidence, 1e-9));
+        }
+    }
+
+    @Test
+    public void resultDoesNotDependOnNumberOfThreads()
+    {
+        Indication[] indications = randomIndications(100000, new Random(2), -1, .001);
+        Indication reference = combineOnNewPool(indications, 1);
+        for (int parallelism : new int[] {2, 3, 8}) {
+            Indication result = combineOnNewPool(indications, parallelism);
+            assertThat(Double.doubleToLongBits(result.value), is(Double.doubleToLongBits(reference.value)));
+            assertThat(Double.doubleToLongBits(result.confidence), is(Double.doubleToLongBits(reference.confidence)));
+        }
+    }
+
+    @Test
+    public void smallArraysAreCombinedSequentially()
+    {
+        Indication[] indications = {new Indication(1, .5), new Indication(.5, .5)};
+        assertThat(IndicationMathParallel.combine(indications, null), equalTo(IndicationMath.combine(indications)));
+    }
+
+    @Test
+    public void naIndications()
+    {
+        Indication[] indications = new Indication[10];
+        Arrays.fill(indications, Indication.NA_INDICATION);
+        Indication result = IndicationMathParallel.combine(indications, null, false, ForkJoinPool.commonPool(), 0);
+        assertThat(result.isNa(), is(true));
+    }
+
+    private static Indication combineOnNewPool(Indication[] indications, int parallelism)
+    {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return IndicationMathParallel.combine(indications, null, false, pool, 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
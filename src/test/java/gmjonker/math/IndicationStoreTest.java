@@ -0,0 +1,133 @@
+package gmjonker.math;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static gmjonker.TestUtil.randomIndications;
+import static gmjonker.math.IndicationBatchMath.TOLERANCE;
+import static gmjonker.math.NaType.isValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class IndicationStoreTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void survivesReopen() throws IOException
+    {
+        Path path = folder.getRoot().toPath().resolve("indications.bin");
+        try (IndicationStore store = IndicationStore.open(path, 1000)) {
+            assertThat(isValue(store.getValue(5)), is(false));
+            store.set(5, new Indication(.5, .25));
+            store.set(999, -1, 1);
+        }
+        try (IndicationStore store = IndicationStore.open(path)) {
+            assertThat(store.capacity(), is(1000));
+            assertThat(store.get(5), is(new Indication(.5, .25)));
+            assertThat(store.getValue(999), is(-1.0));
+            assertThat(isValue(store.getConfidence(6)), is(false));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherCapacity() throws IOException
+    {
+        Path path = folder.getRoot().toPath().resolve("capacity.bin");
+        IndicationStore.open(path, 1000).close();
+        IndicationStore.open(path, 2000).close();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedHeader() throws IOException
+    {
+        Path path = folder.getRoot().toPath().resolve("header.bin");
+        Files.write(path, new byte[] {0x31, 0x30, 0x72, 0x74, 0x53});
+        IndicationStore.open(path).close();
+    }
+
+    @Test
+    public void rejectsTruncatedColumns() throws IOException
+    {
+        Path path = folder.getRoot().toPath().resolve("columns.bin");
+        IndicationStore.open(path, 1000).close();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 8);
+        }
+        try {
+            IndicationStore.open(path).close();
+            fail("Truncated store was opened");
+        } catch (IOException expected) {
+            // File must not have been grown
+            assertThat(Files.size(path), is(64 + 16 * 1000 - 8L));
+        }
+    }
+
+    @Test
+    public void scansAndViewsAcrossSegments() throws IOException
+    {
+        Path path = folder.getRoot().toPath().resolve("segmented.bin");
+        try (IndicationStore store = IndicationStore.open(path, 250, 100)) {
+            for (int id = 0; id < 250; id++)
+                store.set(id, id / 250.0, .5);
+            int[] count = {0};
+            store.scan(50, 230, (id, value, confidence) -> {
+                assertThat(value, is(id / 250.0));
+                count[0]++;
+            });
+            assertThat(count[0], is(180));
+
+            DoubleBuffer view = store.values(120, 30);
+            assertThat(view.remaining(), is(30));
+            assertThat(view.get(0), is(120 / 250.0));
+            view.put(1, .9);
+            assertThat(store.getValue(121), is(.9));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void viewsCannotCrossSegments() throws IOException
+    {
+        Path path = folder.getRoot().toPath().resolve("crossing.bin");
+        try (IndicationStore store = IndicationStore.open(path, 250, 100)) {
+            store.values(90, 20);
+        }
+    }
+
+    @Test
+    public void viewsFeedBatchKernels() throws IOException
+    {
+        Path path = folder.getRoot().toPath().resolve("kernels.bin");
+        Indication[] indications = randomIndications(500, new Random(1), -1, .9);
+        try (IndicationStore store = IndicationStore.open(path, 1000)) {
+            for (int i = 0; i < indications.length; i++)
+                store.set(100 + i, indications[i]);
+            double[] outValues = new double[2];
+            double[] outConfidences = new double[2];
+            DoubleBuffer values = store.values(100, 500);
+            DoubleBuffer confidences = store.confidences(100, 500);
+            IndicationBatchMath.combine(values, confidences, 0, 500, outValues, outConfidences, 0);
+            IndicationBatchMath.combineNoDisagreementEffect(values, confidences, 0, 500, outValues, outConfidences, 1);
+
+            Indication expected = IndicationMath.combine(indications);
+            assertThat(outValues[0], closeTo(expected.value, TOLERANCE));
+            assertThat(outConfidences[0], closeTo(expected.confidence, TOLERANCE));
+            Indication expectedNoDisagreement = IndicationMath.combineNoDisagreementEffect(Arrays.asList(indications));
+            assertThat(outValues[1], closeTo(expectedNoDisagreement.value, TOLERANCE));
+            assertThat(outConfidences[1], closeTo(expectedNoDisagreement.confidence, TOLERANCE));
+        }
+    }
+}
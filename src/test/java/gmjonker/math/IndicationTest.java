@@ -12,6 +12,7 @@ import static gmjonker.math.NaType.NA;
 import static java.util.Arrays.asList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsSame.sameInstance;
 import static org.junit.Assert.*;
 
 public class IndicationTest
@@ -135,4 +136,68 @@ public class IndicationTest
         assertThat(ind(1  , 0  ).cov(ind(1   , 0  )), equalTo(ind(1    , 0   )));
         assertThat(ind(0  , 1  ).cov(ind(0.5 , 1  )), equalTo(ind(0    , 1   )));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void combinedCommentsKeepProvenance()
+    {
+        Indication a = new Indication(.5, .5, "a");
+        Indication b = new Indication(.2, .8, "b");
+        Indication ab = IndicationMath.combineWithComments(asList(a, b));
+        assertThat(ab.comment, equalTo("a,b"));
+        assertThat(ab.getComment(), equalTo("a,b"));
+        assertThat(ab.getProvenance().getNumSources(), equalTo(2));
+        assertThat(ab, equalTo(IndicationMath.combine(asList(a, b))));
+        assertThat(IndicationMath.combine(asList(a, b)), equalTo(ab));
+
+        Indication abc = IndicationMath.combineStrict(asList(ab, new Indication(.1, .1, "c")), true);
+        assertThat(abc.comment, equalTo("a,b,c"));
+        assertThat(abc.getProvenance().getChildren().size(), equalTo(1));
+        assertThat(abc.multiplyConfidence(.5).comment, equalTo("a,b,c"));
+
+        abc.setComment("d");
+        assertNull(abc.getProvenance());
+        assertThat(abc.getComment(), equalTo("d"));
+
+        Indication plain = IndicationMath.combine(asList(a, b));
+        assertNull(plain.getProvenance());
+        assertThat(plain.comment, equalTo(""));
+    }
+
+    @Test
+    public void combinedWithProvenanceRendersLazily()
+    {
+        Indication a = new Indication(.5, .5, "a");
+        Indication b = new Indication(.2, .8, "b");
+        Indication ab = IndicationMath.combineWithProvenance(asList(a, b));
+        assertThat(ab.comment, equalTo(""));
+        assertThat(ab.getComment(), equalTo("a,b"));
+        assertThat(ab, equalTo(IndicationMath.combine(asList(a, b))));
+        assertThat(ab.confidence, equalTo(IndicationMath.combine(asList(a, b)).confidence));
+
+        Indication abc = IndicationMath.combineStrictWithProvenance(asList(ab, new Indication(.1, .1, "c")));
+        assertThat(abc, equalTo(IndicationMath.combineStrict(asList(ab, new Indication(.1, .1, "c")), false)));
+        assertThat(abc.getProvenance().getChildren().size(), equalTo(1));
+        assertThat(abc.getComment(), equalTo("a,b,c"));
+        assertThat(abc.multiplyConfidence(.5).toShortStringWithComment(), CoreMatchers.endsWith("(a,b,c)"));
+        assertThat(abc.toMicroStringWithComment(), CoreMatchers.endsWith("(a,b,c)"));
+        assertThat(IndicationMath.combineWithComments(asList(abc, a)).comment, equalTo("a,b,c,a"));
+
+        abc.setComment("d");
+        assertNull(abc.getProvenance());
+        assertThat(abc.getComment(), equalTo("d"));
+
+        assertThat(IndicationMath.combineWithProvenance(asList(Indication.NA_INDICATION)),
+                sameInstance(Indication.NA_INDICATION));
+    }
+
+    @Test
+    public void longCombineChainsRenderWithoutRecursion()
+    {
+        Indication combined = new Indication(.5, .5, "0");
+        for (int i = 1; i < 100000; i++)
+            combined = IndicationMath.combineWithProvenance(asList(combined, new Indication(.5, .5, "" + i)));
+        String comment = combined.getComment();
+        assertThat(comment.substring(0, 6), equalTo("0,1,2,"));
+        assertTrue(comment.endsWith(",99999"));
+    }
+}
@@ -0,0 +1,76 @@
+package gmjonker.math;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.PackedIndication.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class PackedIndicationTest
+{
+    private static final double EPS = 1e-6;
+
+    @Test
+    public void packAndUnpack()
+    {
+        long packed = pack(-.3, .7);
+        assertThat(value(packed), closeTo(-.3, EPS));
+        assertThat(confidence(packed), closeTo(.7, EPS));
+        assertThat(value(pack(.25, .5)), is(.25));
+        assertThat(isNa(NA_INDICATION), is(true));
+        assertThat(isNa(pack(Indication.NA_INDICATION)), is(true));
+        assertThat(isNa(pack(NA, 0)), is(false));
+        assertThat(pack(NA, NA), is(pack(Double.longBitsToDouble(0x7ff8000000000123L), NA)));
+        assertThat(pack(-0.0, -0.0), is(pack(0, 0)));
+        assertThat(pack(-1e-50, .5), is(pack(0, .5)));
+    }
+
+    @Test
+    public void arithmeticMatchesIndication()
+    {
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            // Use float-representable inputs so that only the result rounding differs
+            Indication a = new Indication((float) (random.nextDouble() * 2 - 1), (float) random.nextDouble());
+            Indication b = new Indication((float) (random.nextDouble() * 2 - 1), (float) random.nextDouble());
+            long pa = pack(a);
+            long pb = pack(b);
+            assertClose(multiply(pa, .5, 2), a.multiply(.5, 2));
+            assertClose(multiplyWith(pa, pb), a.multiplyWith(b));
+            assertClose(diffWith(pa, pb), a.diffWith(b));
+            assertClose(match(pa, pb), a.match(b));
+            assertClose(cov(pa, pb), a.cov(b));
+            assertClose(combineWith(pa, pb), a.combineWith(b));
+            assertThat(deriveDouble(pa), closeTo(a.deriveDouble(), EPS));
+            assertThat(deriveDouble01(pa, .6), closeTo(a.deriveDouble01(.6), EPS));
+        }
+        assertClose(combineWith(pack(.5, 0), pack(-.1, 0)), IndicationMath.combine(new Indication(.5, 0), new Indication(-.1, 0)));
+        assertThat(isNa(combineWith(NA_INDICATION, NA_INDICATION)), is(true));
+    }
+
+    @Test
+    public void sortsByValueThenConfidence()
+    {
+        long[] packed = {pack(.5, .1), pack(-.5, .9), pack(-.5, -.1), pack(0, 0), pack(-1, 1), pack(.5, 0)};
+        Arrays.sort(packed);
+        for (int i = 1; i < packed.length; i++) {
+            assertThat(value(packed[i]), greaterThanOrEqualTo(value(packed[i - 1])));
+            if (value(packed[i]) == value(packed[i - 1]))
+                assertThat(confidence(packed[i]), greaterThan(confidence(packed[i - 1])));
+        }
+    }
+
+    private static void assertClose(long packed, Indication expected)
+    {
+        assertThat(Math.abs(value(packed) - expected.value), lessThanOrEqualTo(EPS));
+        assertThat(Math.abs(confidence(packed) - expected.confidence), lessThanOrEqualTo(EPS));
+    }
+}
@@ -0,0 +1,125 @@
+package gmjonker.math;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static gmjonker.math.NaType.isValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public class QuantileSketchTest
+{
+    @Test
+    public void quantilesAreWithinRankErrorAndMemoryIsBounded()
+    {
+        Random random = new Random(1);
+        int n = 1000000;
+        double[] values = new double[n];
+        QuantileSketch sketch = new QuantileSketch(200, new Random(2));
+        for (int i = 0; i < n; i++) {
+            values[i] = random.nextGaussian();
+            sketch.addValue(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertThat(sketch.getN(), is((long) n));
+        assertThat(sketch.getRetainedItems(), lessThan(1000));
+        assertThat(sketch.getMin(), is(values[0]));
+        assertThat(sketch.getMax(), is(values[n - 1]));
+        for (double q : new double[] {.01, .1, .25, .5, .75, .9, .99}) {
+            double estimate = sketch.getQuantile(q);
+            double actualRank = (double) lowerBound(values, estimate) / n;
+            assertThat(actualRank, closeTo(q, .02));
+            assertThat(sketch.getRank(values[(int) (q * n)]), closeTo(q, .02));
+        }
+        assertThat(sketch.getPercentile(50), is(sketch.getQuantile(.5)));
+    }
+
+    @Test
+    public void mergedPerThreadSketchesMatchSingleSketch()
+    {
+        Random random = new Random(3);
+        QuantileSketch merged = new QuantileSketch(200, new Random(4));
+        double[] all = new double[400000];
+        for (int part = 0; part < 4; part++) {
+            QuantileSketch partSketch = new QuantileSketch(200, new Random(part));
+            for (int i = 0; i < 100000; i++) {
+                double value = random.nextDouble() * (part + 1);
+                all[part * 100000 + i] = value;
+                partSketch.addValue(value);
+            }
+            merged.merge(partSketch);
+        }
+        Arrays.sort(all);
+        assertThat(merged.getN(), is(400000L));
+        assertThat(merged.getRetainedItems(), lessThan(1000));
+        for (double q : new double[] {.1, .5, .9})
+            assertThat((double) lowerBound(all, merged.getQuantile(q)) / all.length, closeTo(q, .02));
+    }
+
+    @Test
+    public void smallAndEmptySketches()
+    {
+        QuantileSketch sketch = new QuantileSketch();
+        assertThat(isValue(sketch.getQuantile(.5)), is(false));
+        sketch.addValue(3);
+        sketch.addValue(1);
+        sketch.addValue(NaType.NA);
+        sketch.addValue(2);
+        assertThat(sketch.getN(), is(3L));
+        assertThat(sketch.getQuantile(.5), is(2.0));
+        assertThat(sketch.getCountBelow(2.5), is(2L));
+    }
+
+    @Test
+    public void textHistogramPlotsFromSketch()
+    {
+        TextHistogram histogram = TextHistogram.withSketch();
+        Random random = new Random(5);
+        for (int i = 0; i < 100000; i++)
+            histogram.addValue(random.nextGaussian());
+        histogram.plot(40, 10);
+    }
+
+    @Test
+    public void textHistogramSeesValuesAddedToSketchLater()
+    {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.addValue(0);
+        sketch.addValue(1);
+        TextHistogram histogram = new TextHistogram(sketch);
+        QuantileSketch other = new QuantileSketch();
+        other.addValue(-5);
+        other.addValue(10);
+        sketch.merge(other);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(output));
+        try {
+            histogram.plot(30, 5);
+        } finally {
+            System.setOut(out);
+        }
+        String[] lines = output.toString().split("\n");
+        String axisLabels = lines[lines.length - 3];
+        assertThat(axisLabels.trim().startsWith("-5.0"), is(true));
+        assertThat(axisLabels.trim().endsWith("10.0"), is(true));
+    }
+
+    private static int lowerBound(double[] sorted, double x)
+    {
+        int i = Arrays.binarySearch(sorted, x);
+        if (i < 0)
+            return -i - 1;
+        while (i > 0 && sorted[i - 1] == x)
+            i--;
+        return i;
+    }
+}
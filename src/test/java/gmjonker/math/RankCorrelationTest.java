@@ -0,0 +1,121 @@
+package gmjonker.math;
+
+import org.apache.commons.math3.stat.correlation.KendallsCorrelation;
+import org.apache.commons.math3.stat.correlation.SpearmansCorrelation;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static gmjonker.math.NaType.NA;
+import static gmjonker.math.NaType.isValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+public class RankCorrelationTest
+{
+    @Test
+    public void matchesCommonsMath()
+    {
+        Random random = new Random(1);
+        for (int n : new int[] {2, 3, 10, 101, 1000}) {
+            for (int numDistinct : new int[] {3, 20, Integer.MAX_VALUE}) {
+                double[] x = new double[n];
+                double[] y = new double[n];
+                for (int i = 0; i < n; i++) {
+                    // Few distinct values give many ties
+                    x[i] = numDistinct == Integer.MAX_VALUE ? random.nextGaussian() : random.nextInt(numDistinct);
+                    y[i] = x[i] * .5 + (numDistinct == Integer.MAX_VALUE ? random.nextGaussian() : random.nextInt(numDistinct));
+                }
+                double expectedKendall = new KendallsCorrelation().correlation(x, y);
+                double expectedSpearman = new SpearmansCorrelation().correlation(x, y);
+                assertEqualOrBothNa(RankCorrelation.kendallTauB(x, y), expectedKendall);
+                assertEqualOrBothNa(RankCorrelation.spearman(x, y), expectedSpearman);
+            }
+        }
+    }
+
+    @Test
+    public void perfectAndInverse()
+    {
+        double[] x = {1, 2, 3, 4, 5};
+        double[] y = {10, 20, 30, 40, 1000};
+        double[] z = {5, 4, 3, 2, 1};
+        assertThat(RankCorrelation.kendallTauB(x, y), closeTo(1, 1e-12));
+        assertThat(RankCorrelation.spearman(x, y), closeTo(1, 1e-12));
+        assertThat(RankCorrelation.kendallTauB(x, z), closeTo(-1, 1e-12));
+        assertThat(RankCorrelation.spearman(x, z), closeTo(-1, 1e-12));
+    }
+
+    @Test
+    public void naPairsAreIgnored()
+    {
+        double[] x = {1, 2, NA, 3, 4};
+        double[] y = {1, 3, 2, NA, 2};
+        assertThat(RankCorrelation.kendallTauB(x, y),
+                closeTo(RankCorrelation.kendallTauB(new double[] {1, 2, 4}, new double[] {1, 3, 2}), 1e-12));
+        assertThat(RankCorrelation.spearman(x, y),
+                closeTo(RankCorrelation.spearman(new double[] {1, 2, 4}, new double[] {1, 3, 2}), 1e-12));
+        assertThat(isValue(RankCorrelation.kendallTauB(new double[] {1, 1}, new double[] {1, 2})), is(false));
+        assertThat(isValue(RankCorrelation.spearman(new double[] {1}, new double[] {1})), is(false));
+    }
+
+    @Test
+    public void weightedMatchesPairWeightedDefinition()
+    {
+        Random random = new Random(2);
+        int n = 300;
+        Indication[] a = new Indication[n];
+        Indication[] b = new Indication[n];
+        for (int i = 0; i < n; i++) {
+            double value = random.nextInt(10) / 10.0;
+            a[i] = new Indication(value, random.nextDouble());
+            b[i] = new Indication(value * .3 + random.nextInt(10) / 10.0, random.nextDouble());
+        }
+        double numerator = 0;
+        double xPairs = 0;
+        double yPairs = 0;
+        for (int i = 0; i < n; i++)
+            for (int j = i + 1; j < n; j++) {
+                double w = a[i].confidence * b[i].confidence * a[j].confidence * b[j].confidence;
+                double dx = Math.signum(a[i].value - a[j].value);
+                double dy = Math.signum(b[i].value - b[j].value);
+                numerator += w * dx * dy;
+                xPairs += w * dx * dx;
+                yPairs += w * dy * dy;
+            }
+        assertThat(RankCorrelation.kendallTauB(a, b), closeTo(numerator / Math.sqrt(xPairs * yPairs), 1e-9));
+    }
+
+    @Test
+    public void equalConfidencesGiveUnweighted()
+    {
+        Random random = new Random(3);
+        int n = 500;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        Indication[] a = new Indication[n];
+        Indication[] b = new Indication[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextInt(50);
+            y[i] = x[i] + random.nextInt(50);
+            a[i] = new Indication(x[i], .7);
+            b[i] = new Indication(y[i], .7);
+        }
+        assertThat(RankCorrelation.kendallTauB(a, b), closeTo(RankCorrelation.kendallTauB(x, y), 1e-12));
+        assertThat(RankCorrelation.spearman(a, b), closeTo(RankCorrelation.spearman(x, y), 1e-12));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void differentLengthsThrow()
+    {
+        RankCorrelation.spearman(new double[2], new double[3]);
+    }
+
+    private static void assertEqualOrBothNa(double actual, double expected)
+    {
+        assertThat(isValue(actual), is(isValue(expected)));
+        if (isValue(expected))
+            assertThat(actual, closeTo(expected, 1e-12));
+    }
+}
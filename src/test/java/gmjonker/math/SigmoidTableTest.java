@@ -0,0 +1,91 @@
+package gmjonker.math;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static gmjonker.math.SigmoidTable.Interpolation.CUBIC;
+import static gmjonker.math.SigmoidTable.Interpolation.LINEAR;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class SigmoidTableTest
+{
+    @Test
+    public void errorsAreWithinDocumentedBounds()
+    {
+        SigmoidTable linear = SigmoidTable.of(-1.1, 1.1, LINEAR);
+        SigmoidTable cubic = SigmoidTable.of(-1.1, 1.1, CUBIC);
+        assertThat(linear.getMaxSigmoidError(), lessThan(1e-5));
+        assertThat(linear.getMaxLogitError(), lessThan(4e-5));
+        assertThat(cubic.getMaxSigmoidError(), lessThan(1e-9));
+        assertThat(cubic.getMaxLogitError(), lessThan(1e-9));
+
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            double x = random.nextGaussian() * 10;
+            double exact = SigmoidMath.sigmoid(x, -1.1, 1.1);
+            assertThat(Math.abs(linear.sigmoid(x) - exact), lessThanOrEqualTo(linear.getMaxSigmoidError() + 1e-14));
+            assertThat(Math.abs(cubic.sigmoid(x) - exact), lessThanOrEqualTo(cubic.getMaxSigmoidError() + 1e-14));
+            double c = random.nextDouble();
+            double exactLogit = SigmoidMath.logit(c, -1.1, 1.1);
+            assertThat(Math.abs(linear.logit(c) - exactLogit), lessThanOrEqualTo(linear.getMaxLogitError()));
+            assertThat(Math.abs(cubic.logit(c) - exactLogit), lessThanOrEqualTo(cubic.getMaxLogitError()));
+        }
+    }
+
+    @Test
+    public void edges()
+    {
+        SigmoidTable table = SigmoidTable.of(-1, 1, CUBIC);
+        assertThat(table.sigmoid(100), is(1.0));
+        assertThat(table.sigmoid(Double.NEGATIVE_INFINITY), is(-1.0));
+        assertThat(Double.isNaN(table.sigmoid(Double.NaN)), is(true));
+        assertThat(table.logit(1), is(Double.POSITIVE_INFINITY));
+        assertThat(table.logit(-1), is(Double.NEGATIVE_INFINITY));
+        assertThat(table.logit(.999), closeTo(SigmoidMath.logit(.999, -1, 1), 1e-12));
+        assertThat(Double.isNaN(table.logit(2)), is(true));
+        assertThat(SigmoidTable.of(-1, 1, CUBIC), sameInstance(table));
+    }
+
+    @Test
+    public void batch()
+    {
+        SigmoidTable table = SigmoidTable.of(-1.1, 1.1, LINEAR);
+        double[] xs = {-2, 0, .5, 3};
+        double[] sigmoids = table.sigmoid(xs);
+        double[] logits = table.logit(sigmoids);
+        for (int i = 0; i < xs.length; i++) {
+            assertThat(sigmoids[i], is(table.sigmoid(xs[i])));
+            assertThat(logits[i], closeTo(xs[i], 1e-3));
+        }
+        table.sigmoid(xs, xs);
+        assertThat(xs[3], is(sigmoids[3]));
+    }
+
+    @Test
+    public void strategyInCombine()
+    {
+        Indication[] indications = {new Indication(.5, .6), new Indication(.3, .9), new Indication(-.2, .4)};
+        Indication exact = IndicationMath.combine(indications);
+        Indication table = IndicationMath.combine(indications, null, false, SigmoidStrategy.TABLE_CUBIC);
+        assertThat(table.value, is(exact.value));
+        assertThat(table.confidence, closeTo(exact.confidence, 1e-8));
+        Indication noDisagreement = IndicationMath.combineNoDisagreementEffect(indications, null);
+        assertThat(IndicationMath.combineNoDisagreementEffect(indications, null, SigmoidStrategy.TABLE_CUBIC)
+                .confidence, closeTo(noDisagreement.confidence, 1e-8));
+        Indication tight = IndicationMath.combineTightAndNoDisagreementEffect(indications, null);
+        assertThat(IndicationMath.combineTightAndNoDisagreementEffect(indications, null, SigmoidStrategy.TABLE_CUBIC)
+                .confidence, closeTo(tight.confidence, 1e-8));
+        assertThat(IndicationMath.combine(indications, null, false, SigmoidStrategy.EXACT), is(exact));
+
+        Indication fast = IndicationMathFast.combine(indications);
+        assertThat(IndicationMathFast.combine(indications, null, SigmoidStrategy.FAST_ALTERNATIVE), is(fast));
+        assertThat(Math.abs(IndicationMathFast.combine(indications, null, SigmoidStrategy.EXACT).confidence
+                - fast.confidence), lessThan(.5));
+    }
+}
@@ -0,0 +1,95 @@
+package gmjonker.math;
+
+import com.google.common.primitives.Doubles;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class SparseVectorTest
+{
+    private static final double EPS = 1e-12;
+
+    @Test
+    public void kernelsMatchDenseVersions()
+    {
+        Random random = new Random(1);
+        for (int run = 0; run < 20; run++) {
+            double[] dense1 = randomSparseArray(1000, .02, random);
+            double[] dense2 = randomSparseArray(1000, .05, random);
+            SparseVector sparse1 = SparseVector.fromDense(dense1);
+            SparseVector sparse2 = SparseVector.fromDense(dense2);
+
+            double dot = 0;
+            for (int i = 0; i < dense1.length; i++)
+                dot += dense1[i] * dense2[i];
+            assertThat(sparse1.dot(sparse2), closeTo(dot, EPS));
+            assertThat(sparse1.dot(dense2), closeTo(dot, EPS));
+
+            double cosineDistance = CosineDistance.distance(dense1, dense2);
+            assertThat(CosineDistance.distance(sparse1, sparse2), closeTo(cosineDistance, EPS));
+            assertThat(CosineDistance.distance(sparse1, dense2), closeTo(cosineDistance, EPS));
+
+            double covariance0 = Correlation.covariance0(Doubles.asList(dense1), Doubles.asList(dense2));
+            assertThat(Correlation.covariance0(sparse1, sparse2), closeTo(covariance0, EPS));
+            assertThat(Correlation.covariance0(sparse1, dense2), closeTo(covariance0, EPS));
+
+            double profileCorrelation = Correlation.profileCorrelation(Doubles.asList(dense1), Doubles.asList(dense2));
+            assertThat(Correlation.profileCorrelation(sparse1, sparse2), closeTo(profileCorrelation, EPS));
+            assertThat(Correlation.profileCorrelation(sparse1, dense2), closeTo(profileCorrelation, EPS));
+        }
+    }
+
+    @Test
+    public void conversionAndLookup()
+    {
+        double[] dense = {0, 1.5, 0, 0, -2, 0};
+        SparseVector sparse = SparseVector.fromDense(dense);
+        assertThat(sparse.nnz(), is(2));
+        assertThat(sparse.get(4), is(-2.0));
+        assertThat(sparse.get(3), is(0.0));
+        assertThat(sparse.toDense(), equalTo(dense));
+        assertThat(sparse.toString(), is("{1:1.5,4:-2.0}/6"));
+    }
+
+    @Test
+    public void zeroVectors()
+    {
+        SparseVector zero = new SparseVector(3, new int[0], new double[0]);
+        assertThat(NaType.isValue(CosineDistance.distance(zero, zero)), is(false));
+        assertThat(Correlation.profileCorrelation(zero, zero), is(0.0));
+    }
+
+    @Test
+    public void arraysAreCopiedAndZerosDropped()
+    {
+        int[] indices = {0, 2, 4};
+        double[] values = {1, 0, -0.0};
+        SparseVector vector = new SparseVector(5, indices, values);
+        values[0] = 7;
+        assertThat(vector.get(0), is(1.0));
+        assertThat(vector.nnz(), is(1));
+        SparseVector same = new SparseVector(5, new int[] {0}, new double[] {1});
+        assertThat(vector, equalTo(same));
+        assertThat(vector.hashCode(), is(same.hashCode()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsortedIndicesAreRejected()
+    {
+        new SparseVector(5, new int[] {3, 1}, new double[] {1, 1});
+    }
+
+    private static double[] randomSparseArray(int dimension, double density, Random random)
+    {
+        double[] array = new double[dimension];
+        for (int i = 0; i < dimension; i++)
+            if (random.nextDouble() < density)
+                array[i] = random.nextDouble() * 2 - 1;
+        return array;
+    }
+}
@@ -0,0 +1,66 @@
+package gmjonker.math;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.startsWith;
+
+public class TextPlotTest
+{
+    @Test
+    public void longSeriesAreDownsampledToDefaultWidth()
+    {
+        double[] values = IntStream.range(0, 1000).asDoubleStream().toArray();
+        String[] lines = capture(() -> TextPlot.plotValues(values, 10)).split("\n");
+        assertThat(lines.length, is(12));
+        assertThat(lines[0].length(), lessThanOrEqualTo(80));
+        assertThat(lines[0].length(), greaterThan(70));
+        assertThat(lines[11], startsWith("1000 values"));
+    }
+
+    @Test
+    public void manyPointsAreDownsampledByColumn()
+    {
+        // Every column of x has points at the bottom and the top, so every column becomes a full bar
+        int n = 10000;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = i % 100;
+            ys[i] = i % 2;
+        }
+        String[] lines = capture(() -> TextPlot.plotPoints(xs, ys, 20, 5)).split("\n");
+        assertThat(lines.length, is(6));
+        for (String line : lines)
+            assertThat(line, is("▓▓▓▓▓▓▓▓▓▓▓▓▓▓▓▓▓▓▓▓▓"));
+
+        // Few points keep their density shading
+        String[] sparse = capture(() -> TextPlot.plotPoints(new double[] {0, 1, 1}, new double[] {0, 1, 1}, 2, 2))
+                .split("\n");
+        assertThat(sparse[0], is("░  "));
+        assertThat(sparse[2], is("  ▒"));
+    }
+
+    private static String capture(Runnable plot)
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = System.out;
+        try {
+            System.setOut(new PrintStream(output, true, "UTF-8"));
+            plot.run();
+            return output.toString("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
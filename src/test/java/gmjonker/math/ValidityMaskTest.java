@@ -0,0 +1,64 @@
+package gmjonker.math;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ValidityMaskTest
+{
+    @Test
+    public void roundTripsBooleanArray()
+    {
+        Random random = new Random(1);
+        for (int size : new int[] {0, 1, 63, 64, 65, 200}) {
+            boolean[] bits = new boolean[size];
+            int count = 0;
+            for (int i = 0; i < size; i++)
+                if (bits[i] = random.nextBoolean())
+                    count++;
+            ValidityMask mask = ValidityMask.of(bits);
+            assertThat(mask.toBooleanArray(), is(bits));
+            assertThat(mask.cardinality(), is(count));
+            for (int i = 0; i < size; i++)
+                assertThat(mask.get(i), is(bits[i]));
+        }
+    }
+
+    @Test
+    public void allSetLeavesTailUnset()
+    {
+        ValidityMask mask = ValidityMask.allSet(70);
+        assertThat(mask.cardinality(), is(70));
+        assertThat(mask.and(ValidityMask.allSet(70)), is(mask));
+    }
+
+    @Test
+    public void nextSetBit()
+    {
+        ValidityMask mask = new ValidityMask(200);
+        mask.set(3);
+        mask.set(130);
+        assertThat(mask.nextSetBit(0), is(3));
+        assertThat(mask.nextSetBit(4), is(130));
+        assertThat(mask.nextSetBit(131), is(-1));
+        assertThat(mask.nextSetBit(200), is(-1));
+    }
+
+    @Test
+    public void andOr()
+    {
+        ValidityMask a = ValidityMask.of(new boolean[] {true, true, false, false});
+        ValidityMask b = ValidityMask.of(new boolean[] {true, false, true, false});
+        assertThat(a.and(b).toBooleanArray(), is(new boolean[] {true, false, false, false}));
+        assertThat(a.or(b).toBooleanArray(), is(new boolean[] {true, true, true, false}));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void outOfBoundsThrows()
+    {
+        new ValidityMask(64).get(64);
+    }
+}
@@ -0,0 +1,49 @@
+package gmjonker.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class DoubleListTest
+{
+    @Test
+    public void growsAndKeepsOrder()
+    {
+        DoubleList list = new DoubleList(2);
+        for (int i = 0; i < 100; i++)
+            list.add(i);
+        list.addAll(new double[] {-1, -2});
+        assertThat(list.size(), is(102));
+        assertThat(list.get(50), is(50.0));
+        assertThat(list.get(101), is(-2.0));
+        list.set(0, 7);
+        assertThat(list.toArray()[0], is(7.0));
+        assertThat(list.stream().count(), is(102L));
+        list.clear();
+        assertThat(list.isEmpty(), is(true));
+    }
+
+    @Test
+    public void conversions()
+    {
+        DoubleList list = DoubleList.of(Arrays.asList(1.0, 2.5));
+        assertThat(list, equalTo(DoubleList.of(1, 2.5)));
+        assertThat(list.toString(), is("[1.0, 2.5]"));
+
+        double[] expected = IntStream.range(0, 10000).asDoubleStream().toArray();
+        DoubleList collected = DoubleList.of(DoubleStream.of(expected).parallel());
+        assertThat(collected.toArray(), equalTo(expected));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getBeyondSize()
+    {
+        DoubleList.of(1, 2).get(2);
+    }
+}